@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// decoding a 'Transfer-Encoding: chunked' body of 64k, ChunkedInputStream is what the proxy uses,
+// HttpUtils the byte by byte reference
+@State(Scope.Thread)
+public class ChunkedBenchmark {
+
+  private static final int BODY_SIZE = 64 * 1024;
+
+  @Param({"256", "8192"})
+  public int chunkSize;
+
+  private byte[] encoded;
+
+  private HttpInputBuffer in;
+
+  private final byte[] buf = new byte[8192];
+
+  @Setup
+  public void setup() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[chunkSize];
+    for(int i=0;i<BODY_SIZE;i+=chunkSize) {
+      int n = Math.min(chunkSize, BODY_SIZE - i);
+      out.writeBytes((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+      out.write(chunk, 0, n);
+      out.writeBytes("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+    }
+    out.writeBytes("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+    encoded = out.toByteArray();
+    in = new HttpInputBuffer(new RepeatingInputStream(encoded), 64 * 1024);
+  }
+
+  @Benchmark
+  public long chunkedInputStream() throws IOException {
+    ChunkedInputStream chunked = new ChunkedInputStream(in);
+    long total = 0;
+    for(;;) {
+      int read = chunked.read(buf);
+      if(read == -1) {
+        return total;
+      }
+      total += read;
+    }
+  }
+
+  @Benchmark
+  public long httpUtils() {
+    ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
+    long total = 0;
+    for(;;) {
+      int size = Integer.parseInt(new String(HttpUtils.nextChunkSize(bin), StandardCharsets.ISO_8859_1), 16);
+      if(size == 0) {
+        // the empty line after the last chunk
+        HttpUtils.nextChunkSize(bin);
+        return total;
+      }
+      total += HttpUtils.nextChunk(bin, size).length;
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// a GET through ReverseProxy.forwardRequestStreamResult to an upstream server in the same process,
+// includes the pooled upstream connection but not the servlet container
+@State(Scope.Benchmark)
+public class ForwardBenchmark {
+
+  @State(Scope.Thread)
+  public static class Client {
+
+    final Servlets.Response response = new Servlets.Response();
+
+  }
+
+  private static final Map<String, List<String>> HEADERS = Map.of(
+      "Host", List.of("proxy.example.com"),
+      "Accept", List.of("*/*"),
+      "User-Agent", List.of("benchmark"));
+
+  @Param({"0", "1024", "65536", "1048576"})
+  public int bodySize;
+
+  @Param({"false", "true"})
+  public boolean chunked;
+
+  private LoopbackBackend backend;
+
+  private String baseUrl;
+
+  private String path;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    backend = new LoopbackBackend();
+    baseUrl = backend.getBaseUrl();
+    path = "/%s/%s".formatted(chunked ? "chunked" : "fixed", bodySize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    backend.stop();
+  }
+
+  @Benchmark
+  public long forward(Client client) {
+    Servlets.Response response = client.response;
+    response.reset();
+    ReverseProxy.forwardRequestStreamResult(
+        baseUrl,
+        Servlets.request("GET", path, HEADERS),
+        response.servlet,
+        null,
+        null,
+        response.out);
+    if(response.status != 200) {
+      throw new IllegalStateException("unexpected status '%s'".formatted(response.status));
+    }
+    return response.bytes;
+  }
+
+}
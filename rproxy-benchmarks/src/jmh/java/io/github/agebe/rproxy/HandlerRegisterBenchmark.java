@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// route lookup with a number of routes of the same match type
+@State(Scope.Benchmark)
+public class HandlerRegisterBenchmark {
+
+  public static class NoopHandler extends AbstractHttpRequestHandler {
+
+    @Override
+    public RequestStatus handle(HttpServletRequest request, HttpServletResponse response) {
+      return RequestStatus.COMPLETED;
+    }
+
+  }
+
+  @Param({"10", "100", "1000"})
+  public int routes;
+
+  @Param({"GLOB", "REGEX", "EQUALS"})
+  public MatchType type;
+
+  // the index HandlerRegister builds from the registered handlers
+  private HandlerIndex index;
+
+  private String hit;
+
+  @Setup
+  public void setup() {
+    List<Handler> handlers = new ArrayList<>();
+    for(int i=0;i<routes;i++) {
+      handlers.add(new Handler(type.createMatcher(pattern(i)), NoopHandler.class));
+    }
+    index = new HandlerIndex(handlers);
+    hit = "/service%s/resource".formatted(routes / 2);
+    if(index.match(hit).size() != 1) {
+      throw new IllegalStateException("expected exactly one match for '%s'".formatted(hit));
+    }
+  }
+
+  private String pattern(int i) {
+    return switch(type) {
+    case GLOB -> "/service%s/*".formatted(i);
+    case REGEX -> "/service%s/.*".formatted(i);
+    default -> "/service%s/resource".formatted(i);
+    };
+  }
+
+  @Benchmark
+  public List<Handler> hit() {
+    return index.match(hit);
+  }
+
+  @Benchmark
+  public List<Handler> miss() {
+    return index.match("/unknown/resource");
+  }
+
+}
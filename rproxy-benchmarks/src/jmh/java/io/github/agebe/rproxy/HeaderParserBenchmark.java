@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.nio.charset.StandardCharsets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// parsing upstream response headers, one response after the other as on a keep-alive connection
+@State(Scope.Thread)
+public class HeaderParserBenchmark {
+
+  // additional X- headers on top of the usual ones
+  @Param({"0", "10", "40"})
+  public int extraHeaders;
+
+  private HttpInputBuffer in;
+
+  @Setup
+  public void setup() {
+    StringBuilder b = new StringBuilder();
+    b.append("HTTP/1.1 200 OK\r\n");
+    b.append("Date: Sat, 17 Oct 2026 10:00:00 GMT\r\n");
+    b.append("Server: benchmark\r\n");
+    b.append("Content-Type: application/json; charset=utf-8\r\n");
+    b.append("Content-Length: 0\r\n");
+    b.append("Cache-Control: private, max-age=0\r\n");
+    b.append("ETag: \"5d8c72a5edda8d6a\"\r\n");
+    b.append("Vary: Accept-Encoding\r\n");
+    b.append("Set-Cookie: session=0123456789abcdef; Path=/; HttpOnly\r\n");
+    for(int i=0;i<extraHeaders;i++) {
+      b.append("X-Header-").append(i).append(": value-").append(i).append("\r\n");
+    }
+    b.append("\r\n");
+    in = new HttpInputBuffer(new RepeatingInputStream(b.toString().getBytes(StandardCharsets.ISO_8859_1)), 64 * 1024);
+  }
+
+  @Benchmark
+  public HttpHeaders parse() {
+    return new HeaderParser(in).parse().headers();
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// building the upstream request header from the client request and encoding it
+@State(Scope.Thread)
+public class HttpRequestHeaderBenchmark {
+
+  private HttpServletRequest request;
+
+  private HttpRequestHeader header;
+
+  @Setup
+  public void setup() {
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    headers.put("Host", List.of("proxy.example.com"));
+    headers.put("User-Agent", List.of("Mozilla/5.0 (X11; Linux x86_64; rv:131.0) Gecko/20100101 Firefox/131.0"));
+    headers.put("Accept", List.of("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+    headers.put("Accept-Language", List.of("en-US,en;q=0.5"));
+    headers.put("Accept-Encoding", List.of("gzip, deflate, br, zstd"));
+    headers.put("Connection", List.of("keep-alive"));
+    headers.put("Cookie", List.of("session=0123456789abcdef; theme=dark"));
+    headers.put("Upgrade-Insecure-Requests", List.of("1"));
+    headers.put("Sec-Fetch-Dest", List.of("document"));
+    headers.put("Sec-Fetch-Mode", List.of("navigate"));
+    headers.put("Sec-Fetch-Site", List.of("none"));
+    headers.put("Priority", List.of("u=0, i"));
+    request = Servlets.request("GET", "/api/v1/items/42", headers);
+    header = HttpRequestHeader.fromRequest(request, "127.0.0.1", 3000);
+  }
+
+  @Benchmark
+  public HttpRequestHeader fromRequest() {
+    return HttpRequestHeader.fromRequest(request, "127.0.0.1", 3000);
+  }
+
+  @Benchmark
+  public byte[] toBytes() {
+    return header.toBytes();
+  }
+
+  @Benchmark
+  public void writeTo() throws IOException {
+    header.writeTo(OutputStream.nullOutputStream());
+  }
+
+}
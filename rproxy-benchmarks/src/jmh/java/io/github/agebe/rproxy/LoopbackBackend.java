@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// in-process upstream server on the loopback interface for the end to end benchmark, like EchoServer but quiet.
+// /fixed/<n> responds with n bytes and a content-length, /chunked/<n> sends n bytes chunked in 8k pieces.
+class LoopbackBackend {
+
+  static {
+    // the jdk server writes headers and body separately, with nagle small responses wait for the delayed ack
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final HttpServer server;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+  private final Map<Integer, byte[]> bodies = new ConcurrentHashMap<>();
+
+  LoopbackBackend() throws IOException {
+    super();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.createContext("/fixed/", he -> respond(he, false));
+    server.createContext("/chunked/", he -> respond(he, true));
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  private void respond(HttpExchange he, boolean chunked) throws IOException {
+    he.getRequestBody().readAllBytes();
+    String path = he.getRequestURI().getPath();
+    int size = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+    byte[] body = bodies.computeIfAbsent(size, k -> new byte[k]);
+    he.getResponseHeaders().add("Content-Type", "application/octet-stream");
+    if(size == 0) {
+      he.sendResponseHeaders(200, -1);
+      he.close();
+      return;
+    }
+    he.sendResponseHeaders(200, chunked ? 0 : size);
+    try(OutputStream out = he.getResponseBody()) {
+      if(chunked) {
+        for(int i=0;i<size;i+=8192) {
+          out.write(body, i, Math.min(8192, size - i));
+          out.flush();
+        }
+      } else {
+        out.write(body);
+      }
+    }
+  }
+
+  String getBaseUrl() {
+    return "http://127.0.0.1:%s".formatted(server.getAddress().getPort());
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.InputStream;
+
+// returns the same bytes over and over, like a server sending the same response on a keep-alive connection.
+// lets the parsers run on a single long lived HttpInputBuffer instead of allocating one per invocation.
+class RepeatingInputStream extends InputStream {
+
+  private final byte[] bytes;
+
+  private int pos;
+
+  RepeatingInputStream(byte[] bytes) {
+    super();
+    this.bytes = bytes;
+  }
+
+  @Override
+  public int read() {
+    int i = bytes[pos] & 0xff;
+    pos = (pos + 1) % bytes.length;
+    return i;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    int n = Math.min(len, bytes.length - pos);
+    System.arraycopy(bytes, pos, b, off, n);
+    pos = (pos + n) % bytes.length;
+    return n;
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// just enough of a servlet request and response to drive the proxy without a servlet container.
+// methods the proxy does not call return the default value of their return type.
+class Servlets {
+
+  static class Response {
+
+    int status;
+
+    final HeaderMap headers = new HeaderMap();
+
+    long bytes;
+
+    final HttpServletResponse servlet = proxy(HttpServletResponse.class, this::invoke);
+
+    final ServletOutputStream out = new ServletOutputStream() {
+
+      @Override
+      public void write(int b) throws IOException {
+        bytes++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        bytes += len;
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+      }
+    };
+
+    private Object invoke(String method, Object[] args) {
+      return switch(method) {
+      case "setStatus" -> {
+        status = (Integer)args[0];
+        yield null;
+      }
+      case "getStatus" -> status;
+      case "addHeader" -> {
+        headers.add((String)args[0], (String)args[1]);
+        yield null;
+      }
+      case "setHeader" -> headers.put((String)args[0], List.of((String)args[1]));
+      case "getHeader" -> headers.getFirst((String)args[0]);
+      case "getOutputStream" -> out;
+      default -> null;
+      };
+    }
+
+    void reset() {
+      status = 0;
+      headers.clear();
+      bytes = 0;
+    }
+
+  }
+
+  static HttpServletRequest request(String method, String uri, Map<String, List<String>> headers) {
+    HeaderMap h = HeaderMap.of(headers);
+    Map<String, Object> attributes = new HashMap<>();
+    return proxy(HttpServletRequest.class, (name, args) -> switch(name) {
+    case "getMethod" -> method;
+    case "getRequestURI" -> uri;
+    case "getScheme" -> "http";
+    case "getLocalAddr", "getRemoteAddr" -> "127.0.0.1";
+    case "getLocalPort" -> 8080;
+    case "getContentLengthLong" -> -1L;
+    case "getHeaderNames" -> Collections.enumeration(h.keySet());
+    case "getHeaders" -> Collections.enumeration(h.getOrDefault(args[0], List.of()));
+    case "getHeader" -> h.getFirst((String)args[0]);
+    case "getAttribute" -> attributes.get(args[0]);
+    case "setAttribute" -> attributes.put((String)args[0], args[1]);
+    default -> null;
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> cls, BiFunction<String, Object[], Object> handler) {
+    return (T)Proxy.newProxyInstance(Servlets.class.getClassLoader(), new Class<?>[] {cls}, (p, m, args) -> {
+      if(m.getDeclaringClass() == Object.class) {
+        return switch(m.getName()) {
+        case "hashCode" -> System.identityHashCode(p);
+        case "equals" -> p == args[0];
+        default -> cls.getSimpleName();
+        };
+      }
+      Object result = handler.apply(m.getName(), args);
+      Class<?> type = m.getReturnType();
+      if(type == void.class) {
+        return null;
+      } else if((result == null) && (type == boolean.class)) {
+        return false;
+      } else if((result == null) && (type == long.class)) {
+        return 0L;
+      } else if((result == null) && type.isPrimitive()) {
+        return 0;
+      }
+      return result;
+    });
+  }
+
+}
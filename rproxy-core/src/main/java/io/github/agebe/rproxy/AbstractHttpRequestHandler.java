@@ -13,7 +13,6 @@
  */
 package io.github.agebe.rproxy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.function.Function;
@@ -65,6 +64,24 @@ public abstract class AbstractHttpRequestHandler implements HttpRequestHandler {
       RequestHeaderModifier requestHeaderModifier,
       ResponseHeaderModifier responseHeaderModifier,
       OutputStream responseOutputStream) {
+    return forwardStreamResult(
+        baseUrl,
+        request,
+        response,
+        requestHeaderModifier,
+        responseHeaderModifier,
+        null,
+        responseOutputStream);
+  }
+
+  public RequestStatus forwardStreamResult(
+      String baseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier,
+      ResponseContentPipeline contentPipeline,
+      OutputStream responseOutputStream) {
     try {
       ReverseProxy.forwardRequestStreamResult(
           baseUrl,
@@ -72,6 +89,7 @@ public abstract class AbstractHttpRequestHandler implements HttpRequestHandler {
           response,
           requestHeaderModifier,
           responseHeaderModifier,
+          contentPipeline,
           responseOutputStream);
       return RequestStatus.COMPLETED;
     } catch(ReverseProxyException e) {
@@ -81,6 +99,8 @@ public abstract class AbstractHttpRequestHandler implements HttpRequestHandler {
     }
   }
 
+  // the response content modifier gets the whole response body,
+  // use forwardTransformResult to modify the body while it is streamed to the client
   public RequestStatus forwardModifyResult(
       String baseUrl,
       HttpServletRequest request,
@@ -89,29 +109,125 @@ public abstract class AbstractHttpRequestHandler implements HttpRequestHandler {
       ResponseHeaderModifier responseHeaderModifier,
       Function<byte[], byte[]> responseContentModifier) {
     if(responseContentModifier != null) {
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      forwardStreamResult(
+      return forwardTransformResult(
           baseUrl,
           request,
           response,
           requestHeaderModifier,
           responseHeaderModifier,
-          out);
-      byte[] modified = responseContentModifier.apply(out.toByteArray());
-      if(modified != null) {
-        response.setHeader("Content-Length", Integer.toString(modified.length));
-        try(OutputStream o = getResponseOutputStream(response)) {
-          o.write(modified);
-        } catch(ReverseProxyException e) {
-          throw e;
-        } catch (IOException e) {
-          throw new ReverseProxyException("failed on forward", e);
-        }
-      }
-      return RequestStatus.COMPLETED;
+          ResponseContentStage.buffered((headers, body) -> responseContentModifier.apply(body)));
     } else {
       return forwardStreamResult(baseUrl, request, response, requestHeaderModifier, responseHeaderModifier);
     }
   }
 
+  // the response body is passed through the content stages while it is streamed to the client
+  public RequestStatus forwardTransformResult(
+      String baseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier,
+      ResponseContentStage... contentStages) {
+    return forwardStreamResult(
+        baseUrl,
+        request,
+        response,
+        requestHeaderModifier,
+        responseHeaderModifier,
+        ResponseContentPipeline.of(contentStages),
+        getResponseOutputStream(response));
+  }
+
+  // forwards to an upstream of the group picked by the group's load balancer
+  public RequestStatus forwardStreamResult(
+      UpstreamGroup group,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+    return forwardStreamResult(group, request, response, null, null);
+  }
+
+  public RequestStatus forwardStreamResult(
+      UpstreamGroup group,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier) {
+    return forwardStreamResult(
+        group,
+        request,
+        response,
+        requestHeaderModifier,
+        responseHeaderModifier,
+        null,
+        getResponseOutputStream(response));
+  }
+
+  public RequestStatus forwardStreamResult(
+      UpstreamGroup group,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier,
+      ResponseContentPipeline contentPipeline,
+      OutputStream responseOutputStream) {
+    Upstream upstream = group.select(request);
+    long start = upstream.start();
+    boolean success = false;
+    try {
+      RequestStatus status = forwardStreamResult(
+          upstream.getBaseUrl(),
+          request,
+          response,
+          requestHeaderModifier,
+          responseHeaderModifier,
+          contentPipeline,
+          responseOutputStream);
+      // the upstream's response status
+      success = response.getStatus() < 500;
+      return status;
+    } catch(BadGatewayException e) {
+      throw e;
+    } catch(RuntimeException e) {
+      // not the upstream's fault
+      success = true;
+      throw e;
+    } finally {
+      upstream.end(start, success);
+      group.report(upstream, !success);
+    }
+  }
+
+  // forwards without blocking a servlet container thread while waiting on the upstream server,
+  // the response is completed asynchronously after this method has returned.
+  // only plain http upstreams are forwarded non blocking, https upstreams hold a thread of the bounded
+  // BlockingForwardExecutorSupport executor for the whole request.
+  public RequestStatus forwardAsync(
+      String baseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+    return forwardAsync(baseUrl, request, response, null, null);
+  }
+
+  public RequestStatus forwardAsync(
+      String baseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier) {
+    try {
+      AsyncReverseProxy.forward(
+          baseUrl,
+          request,
+          response,
+          requestHeaderModifier,
+          responseHeaderModifier);
+      return RequestStatus.COMPLETED;
+    } catch(ReverseProxyException e) {
+      throw e;
+    } catch(Exception e) {
+      throw new ReverseProxyException("failed on forward", e);
+    }
+  }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// writes one json line per request to a file. Request threads only put the record into a ring buffer,
+// a background thread takes them out and writes them in batches. If the writer can't keep up and the buffer
+// is full records are dropped (and counted) rather than slowing down requests.
+public class AccessLog implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(AccessLog.class);
+
+  private final AccessLogConfig config;
+
+  private final RingBuffer<AccessLogRecord> buffer;
+
+  private final Writer out;
+
+  private final Thread writer;
+
+  private final LongAdder dropped = new LongAdder();
+
+  private volatile boolean closed;
+
+  public AccessLog(AccessLogConfig config) {
+    super();
+    this.config = config;
+    this.buffer = new RingBuffer<>(config.capacity());
+    try {
+      this.out = Files.newBufferedWriter(config.path(), StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch(IOException e) {
+      throw new ReverseProxyException("failed to open access log '{}'", config.path(), e);
+    }
+    writer = new Thread(this::run, "rproxy-access-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  public AccessLogConfig getConfig() {
+    return config;
+  }
+
+  public void log(AccessLogRecord record) {
+    if(closed || !buffer.offer(record)) {
+      dropped.increment();
+    }
+  }
+
+  // records not written because the buffer was full or the log closed
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  private void run() {
+    StringBuilder b = new StringBuilder(64 * 1024);
+    long flushIntervalNanos = config.flushInterval().toNanos();
+    while(!closed) {
+      if(write(b) == 0) {
+        LockSupport.parkNanos(this, flushIntervalNanos);
+      }
+    }
+    // whatever made it into the buffer before close
+    while(write(b) > 0);
+    try {
+      out.close();
+    } catch(IOException e) {
+      log.warn("failed to close access log '{}'", config.path(), e);
+    }
+  }
+
+  private int write(StringBuilder b) {
+    b.setLength(0);
+    int count = buffer.drain(r -> r.appendTo(b), config.batchSize());
+    if(count > 0) {
+      try {
+        out.append(b);
+        out.flush();
+      } catch(IOException e) {
+        log.warn("failed to write '{}' records to access log '{}'", count, config.path(), e);
+      }
+    }
+    return count;
+  }
+
+  // writes the buffered records and closes the file
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// access log settings, see AccessLog.
+// - path: the file records are appended to
+// - capacity: records buffered for the writer, more are dropped
+// - batchSize: max records written (and flushed) at once
+// - flushInterval: how long the writer waits for more records when the buffer is empty
+public record AccessLogConfig(
+    Path path,
+    int capacity,
+    int batchSize,
+    Duration flushInterval) {
+
+  public static AccessLogConfig of(Path path) {
+    return new AccessLogConfig(path, 64 * 1024, 1024, Duration.ofMillis(100));
+  }
+
+  public AccessLogConfig withCapacity(int capacity) {
+    return new AccessLogConfig(path, capacity, batchSize, flushInterval);
+  }
+
+  public AccessLogConfig withBatchSize(int batchSize) {
+    return new AccessLogConfig(path, capacity, batchSize, flushInterval);
+  }
+
+  public AccessLogConfig withFlushInterval(Duration flushInterval) {
+    return new AccessLogConfig(path, capacity, batchSize, flushInterval);
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.Instant;
+
+// one access log line, see AccessLog
+// - timestamp: request start, epoch milliseconds
+// - upstream: the origin the request has been forwarded to, null if it has not been forwarded
+// - firstByteNanos: upstream time to first byte, -1 if not forwarded
+// - bytesIn, bytesOut: request body bytes sent upstream, response body bytes received from upstream
+public record AccessLogRecord(
+    long timestamp,
+    String requestId,
+    String method,
+    String uri,
+    String route,
+    String upstream,
+    int status,
+    long durationNanos,
+    long firstByteNanos,
+    long bytesIn,
+    long bytesOut) {
+
+  // appends the record as json line
+  public void appendTo(StringBuilder b) {
+    b.append("{\"time\":\"").append(Instant.ofEpochMilli(timestamp)).append('"');
+    Json.field(b, "id", requestId);
+    Json.field(b, "method", method);
+    Json.field(b, "uri", uri);
+    Json.field(b, "route", route);
+    Json.field(b, "upstream", upstream);
+    b.append(",\"status\":").append(status);
+    b.append(",\"duration_us\":").append(durationNanos / 1000);
+    b.append(",\"first_byte_us\":").append(firstByteNanos >= 0 ? firstByteNanos / 1000 : -1);
+    b.append(",\"bytes_in\":").append(bytesIn);
+    b.append(",\"bytes_out\":").append(bytesOut);
+    b.append("}\n");
+  }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// the access log GatewayFilter writes to, null (the default) disables the access log
+public class AccessLogSupport {
+
+  private static volatile AccessLog accessLog;
+
+  public static AccessLog getAccessLog() {
+    return accessLog;
+  }
+
+  // replaces the access log, the previous one is closed
+  public static void setAccessLog(AccessLog accessLog) {
+    AccessLog previous = AccessLogSupport.accessLog;
+    AccessLogSupport.accessLog = accessLog;
+    if((previous != null) && (previous != accessLog)) {
+      previous.close();
+    }
+  }
+
+  public static void configure(AccessLogConfig config) {
+    setAccessLog(config != null ? new AccessLog(config) : null);
+  }
+
+}
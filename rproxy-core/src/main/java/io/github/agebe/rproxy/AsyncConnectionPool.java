@@ -0,0 +1,370 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// keeps idle non blocking connections per origin (LIFO), see ConnectionPool for the blocking counterpart.
+// like the blocking pool maxTotalPerOrigin limits the connections in use. A non blocking caller can't wait
+// for a free connection so it is queued instead and gets the next connection released, or fails once the
+// acquire timeout is over.
+public class AsyncConnectionPool implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncConnectionPool.class);
+
+  private final ConnectionPoolConfig config;
+
+  private final Map<Origin, OriginPool> pools = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService evictor;
+
+  private volatile boolean closed;
+
+  // an acquire waiting for a connection to be released
+  private record Waiter(
+      Duration connectTimeout,
+      Consumer<AsyncUpstreamConnection> connected,
+      Consumer<Throwable> failed,
+      AtomicBoolean done) {}
+
+  private class OriginPool {
+
+    private final Origin origin;
+
+    private final String upstream;
+
+    // most recently used connection first, older connections are more likely to be stale
+    private final Deque<AsyncUpstreamConnection> idle = new ArrayDeque<>();
+
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    // connections in use, including the ones being opened
+    private int leased;
+
+    private OriginPool(Origin origin) {
+      super();
+      this.origin = origin;
+      this.upstream = origin.toString();
+    }
+
+    private boolean isLimited() {
+      return config.maxTotalPerOrigin() > 0;
+    }
+
+    // true if the caller may use a connection, queues the waiter otherwise
+    private synchronized boolean tryLease(Waiter waiter) {
+      if(isLimited() && (leased >= config.maxTotalPerOrigin())) {
+        waiters.offerLast(waiter);
+        return false;
+      }
+      leased(1);
+      return true;
+    }
+
+    // hands the lease to the next waiter or gives it up, returns the waiter
+    private synchronized Waiter unlease() {
+      for(;;) {
+        Waiter waiter = waiters.pollFirst();
+        if(waiter == null) {
+          leased(-1);
+          return null;
+        }
+        if(waiter.done().compareAndSet(false, true)) {
+          return waiter;
+        }
+        // timed out in the meantime
+      }
+    }
+
+    private synchronized boolean removeWaiter(Waiter waiter) {
+      return waiters.remove(waiter);
+    }
+
+    private synchronized AsyncUpstreamConnection pollIdle() {
+      AsyncUpstreamConnection c = idle.pollFirst();
+      if(c != null) {
+        idleChanged();
+      }
+      return c;
+    }
+
+    private synchronized boolean offerIdle(AsyncUpstreamConnection connection) {
+      if(closed || (idle.size() >= config.maxIdlePerOrigin())) {
+        return false;
+      }
+      connection.touch();
+      idle.offerFirst(connection);
+      idleChanged();
+      return true;
+    }
+
+    private synchronized List<AsyncUpstreamConnection> removeExpired(long now, long idleTimeoutNanos) {
+      List<AsyncUpstreamConnection> expired = new ArrayList<>();
+      Iterator<AsyncUpstreamConnection> iter = idle.iterator();
+      while(iter.hasNext()) {
+        AsyncUpstreamConnection c = iter.next();
+        if(!c.isOpen() || c.isExpired(now, idleTimeoutNanos)) {
+          iter.remove();
+          expired.add(c);
+        }
+      }
+      if(!expired.isEmpty()) {
+        idleChanged();
+      }
+      return expired;
+    }
+
+    private synchronized List<AsyncUpstreamConnection> removeAll() {
+      List<AsyncUpstreamConnection> all = new ArrayList<>(idle);
+      idle.clear();
+      idleChanged();
+      return all;
+    }
+
+    private synchronized List<Waiter> removeWaiters() {
+      List<Waiter> all = new ArrayList<>(waiters);
+      waiters.clear();
+      return all;
+    }
+
+    private synchronized int idleCount() {
+      return idle.size();
+    }
+
+    private synchronized int leasedCount() {
+      return leased;
+    }
+
+    // called with the lock held
+    private void idleChanged() {
+      MetricsSupport.getMetrics().gauge(Metrics.POOL_IDLE, "upstream", upstream, "pool", "async").set(idle.size());
+    }
+
+    // called with the lock held
+    private void leased(int delta) {
+      leased += delta;
+      MetricsSupport.getMetrics().gauge(Metrics.POOL_LEASED, "upstream", upstream, "pool", "async").add(delta);
+    }
+
+  }
+
+  public AsyncConnectionPool(ConnectionPoolConfig config) {
+    super();
+    this.config = config;
+    if(config.isPoolingEnabled()) {
+      evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rproxy-async-connection-evictor");
+        t.setDaemon(true);
+        return t;
+      });
+      long period = Math.max(1000, config.idleTimeout().toMillis() / 2);
+      evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    } else {
+      evictor = null;
+    }
+  }
+
+  public ConnectionPoolConfig getConfig() {
+    return config;
+  }
+
+  private OriginPool pool(Origin origin) {
+    return pools.computeIfAbsent(origin, OriginPool::new);
+  }
+
+  private AsyncUpstreamConnection pollIdle(OriginPool pool) {
+    long idleTimeoutNanos = config.idleTimeout().toNanos();
+    for(;;) {
+      AsyncUpstreamConnection c = pool.pollIdle();
+      if(c == null) {
+        return null;
+      }
+      if(!c.isOpen() || c.isExpired(System.nanoTime(), idleTimeoutNanos)) {
+        log.debug("closing expired idle connection '{}'", c);
+        c.close();
+      } else {
+        return c;
+      }
+    }
+  }
+
+  // completes with an idle connection for the origin or a new one
+  public void acquire(
+      Origin origin,
+      Duration connectTimeout,
+      Consumer<AsyncUpstreamConnection> connected,
+      Consumer<Throwable> failed) {
+    if(closed) {
+      failed.accept(new ReverseProxyException("connection pool is closed"));
+      return;
+    }
+    OriginPool pool = pool(origin);
+    Waiter waiter = new Waiter(connectTimeout, connected, failed, new AtomicBoolean());
+    if(pool.tryLease(waiter)) {
+      waiter.done().set(true);
+      open(pool, waiter);
+      return;
+    }
+    log.debug("connection pool for '{}' exhausted, waiting for a connection", origin);
+    Deadline.schedule(config.acquireTimeout(), () -> {
+      if(waiter.done().compareAndSet(false, true)) {
+        pool.removeWaiter(waiter);
+        failed.accept(new BadGatewayException("connection pool for '{}' exhausted, max '{}' connections",
+            origin, config.maxTotalPerOrigin()));
+      }
+    });
+  }
+
+  // the caller holds a lease
+  private void open(OriginPool pool, Waiter waiter) {
+    Origin origin = pool.origin;
+    AsyncUpstreamConnection idle = pollIdle(pool);
+    if(idle != null) {
+      idle.lease();
+      log.debug("reusing connection '{}'", idle);
+      waiter.connected().accept(idle);
+      return;
+    }
+    AsynchronousSocketChannel channel;
+    try {
+      channel = AsynchronousSocketChannel.open();
+    } catch(IOException e) {
+      unlease(pool);
+      waiter.failed().accept(e);
+      return;
+    }
+    Duration connectTimeout = waiter.connectTimeout();
+    // there is no timeout on a non blocking connect, close the channel instead
+    AtomicBoolean timedOut = new AtomicBoolean();
+    ScheduledFuture<?> timeout = connectTimeout.isZero() ? null : Deadline.schedule(connectTimeout, () -> {
+      timedOut.set(true);
+      try {
+        channel.close();
+      } catch(IOException e) {
+        log.debug("failed to close channel", e);
+      }
+    });
+    long start = System.nanoTime();
+    channel.connect(new InetSocketAddress(origin.host(), origin.port()), null, AsyncUpstreamConnection.handler(v -> {
+      if(timeout != null) {
+        timeout.cancel(false);
+      }
+      Metrics metrics = MetricsSupport.getMetrics();
+      AsyncUpstreamConnection c = new AsyncUpstreamConnection(origin, channel, start);
+      metrics.timer(Metrics.UPSTREAM_CONNECT, "upstream", pool.upstream).record(c.getConnectedNanos() - start);
+      metrics.counter(Metrics.POOL_CREATED, "upstream", pool.upstream, "pool", "async").increment();
+      c.lease();
+      log.debug("opened new connection to '{}'", origin);
+      waiter.connected().accept(c);
+    }, e -> {
+      if(timeout != null) {
+        timeout.cancel(false);
+      }
+      try {
+        channel.close();
+      } catch(IOException closeException) {
+        e.addSuppressed(closeException);
+      }
+      unlease(pool);
+      if(timedOut.get()) {
+        waiter.failed().accept(new GatewayTimeoutException("timeout on connecting to '{}' ('{}')", origin, connectTimeout, e));
+      } else {
+        waiter.failed().accept(new BadGatewayException("failed to connect to '{}'", origin, e));
+      }
+    }));
+  }
+
+  private void unlease(OriginPool pool) {
+    Waiter next = pool.unlease();
+    if(next != null) {
+      if(closed) {
+        unlease(pool);
+        next.failed().accept(new ReverseProxyException("connection pool is closed"));
+      } else {
+        open(pool, next);
+      }
+    }
+  }
+
+  // returns the connection to the pool if it can be reused, closes it otherwise
+  public void release(AsyncUpstreamConnection connection, boolean reusable) {
+    if(!connection.unlease()) {
+      log.warn("connection '{}' released but not leased", connection);
+      return;
+    }
+    OriginPool pool = pool(connection.getOrigin());
+    if(!(reusable && config.isPoolingEnabled() && connection.isOpen() && pool.offerIdle(connection))) {
+      log.debug("closing connection '{}'", connection);
+      connection.close();
+    }
+    unlease(pool);
+  }
+
+  // closes idle connections that timed out, otherwise they would only be closed when polled next
+  public void evictIdle() {
+    long now = System.nanoTime();
+    long idleTimeoutNanos = config.idleTimeout().toNanos();
+    pools.values().forEach(pool -> pool.removeExpired(now, idleTimeoutNanos).forEach(c -> {
+      log.debug("evicting idle connection '{}'", c);
+      c.close();
+    }));
+  }
+
+  public int getIdleCount(Origin origin) {
+    OriginPool pool = pools.get(origin);
+    return pool != null ? pool.idleCount() : 0;
+  }
+
+  public int getLeasedCount(Origin origin) {
+    OriginPool pool = pools.get(origin);
+    return pool != null ? pool.leasedCount() : 0;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if(evictor != null) {
+      evictor.shutdownNow();
+    }
+    pools.values().forEach(pool -> {
+      pool.removeAll().forEach(AsyncUpstreamConnection::close);
+      pool.removeWaiters().forEach(waiter -> {
+        if(waiter.done().compareAndSet(false, true)) {
+          waiter.failed().accept(new ReverseProxyException("connection pool is closed"));
+        }
+      });
+    });
+  }
+
+}
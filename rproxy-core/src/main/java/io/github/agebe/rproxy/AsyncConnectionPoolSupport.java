@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+public class AsyncConnectionPoolSupport {
+
+  private static volatile AsyncConnectionPool connectionPool = new AsyncConnectionPool(ConnectionPoolConfig.DEFAULT);
+
+  public static AsyncConnectionPool getConnectionPool() {
+    return connectionPool;
+  }
+
+  // replaces the pool, idle connections of the previous pool are closed
+  public static void setConnectionPool(AsyncConnectionPool connectionPool) {
+    AsyncConnectionPool previous = AsyncConnectionPoolSupport.connectionPool;
+    AsyncConnectionPoolSupport.connectionPool = connectionPool;
+    if(previous != connectionPool) {
+      previous.close();
+    }
+  }
+
+  public static void configure(ConnectionPoolConfig config) {
+    setConnectionPool(new AsyncConnectionPool(config));
+  }
+
+}
@@ -0,0 +1,756 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// forwards requests without holding on to a servlet container thread while waiting on the upstream server.
+// the client side uses the servlet async api with ReadListener/WriteListener, the upstream side non blocking
+// socket channels. the exchange is driven by whatever event arrives next (data from the client, data from
+// the server or the client connection ready for more).
+// https upstreams are not forwarded non blocking, there is no non blocking tls (yet). They fall back to the
+// blocking ReverseProxy run on the bounded BlockingForwardExecutorSupport threads, a thread per request.
+// response content stages are not supported, use the blocking forward for those.
+public class AsyncReverseProxy {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncReverseProxy.class);
+
+  private static final int BUF_SIZE = 64 * 1024;
+
+  // upload chunks, leaves room for the chunk framing in the upload buffer
+  private static final int UPLOAD_SIZE = 8 * 1024;
+
+  private static final int MAX_ATTEMPTS = 2;
+
+  private static final byte[] CRLF = HttpRequestHeader.CRLF.getBytes(ISO_8859_1);
+
+  private static final byte[] LAST_CHUNK = ("0" + HttpRequestHeader.CRLF + HttpRequestHeader.CRLF).getBytes(ISO_8859_1);
+
+  public static void forward(
+      String remoteBaseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier) {
+    URL remote = ReverseProxy.toUrl(remoteBaseUrl);
+    Origin origin = Origin.of(remote);
+    if(!request.isAsyncSupported()) {
+      log.debug("async not supported on request '{}', forward blocking", request.getRequestURI());
+      ReverseProxy.forwardRequestStreamResult(
+          remoteBaseUrl,
+          request,
+          response,
+          requestHeaderModifier,
+          responseHeaderModifier,
+          getOutputStream(response));
+      return;
+    }
+    // reserve the thread before going async so a 503 can still be sent the usual way
+    BlockingForwardExecutor.Reservation blocking = origin.isSecure()
+        ? BlockingForwardExecutorSupport.getExecutor().reserve() : null;
+    AsyncContext ctx;
+    try {
+      ctx = request.startAsync(request, response);
+    } catch(RuntimeException e) {
+      if(blocking != null) {
+        blocking.close();
+      }
+      throw e;
+    }
+    // upstream reads have their own timeout
+    ctx.setTimeout(0);
+    if(blocking != null) {
+      forwardBlocking(blocking, ctx, remoteBaseUrl, request, response, requestHeaderModifier, responseHeaderModifier);
+    } else {
+      new Exchange(ctx, remote, origin, request, response, requestHeaderModifier, responseHeaderModifier).start();
+    }
+  }
+
+  private static ServletOutputStream getOutputStream(HttpServletResponse response) {
+    try {
+      return response.getOutputStream();
+    } catch(IOException e) {
+      throw new ReverseProxyException("failed on get response output stream", e);
+    }
+  }
+
+  // no non blocking tls on the upstream side (yet), run the blocking forward off the container thread
+  private static void forwardBlocking(
+      BlockingForwardExecutor.Reservation blocking,
+      AsyncContext ctx,
+      String remoteBaseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier) {
+    blocking.execute(() -> {
+      try {
+        ReverseProxy.forwardRequestStreamResult(
+            remoteBaseUrl,
+            request,
+            response,
+            requestHeaderModifier,
+            responseHeaderModifier,
+            getOutputStream(response));
+      } catch(GatewayTimeoutException e) {
+        log.warn("gateway timeout", e);
+        sendError(response, HttpServletResponse.SC_GATEWAY_TIMEOUT);
+      } catch(BadGatewayException e) {
+        log.warn("bad gateway", e);
+        sendError(response, HttpServletResponse.SC_BAD_GATEWAY);
+      } catch(ServiceUnavailableException e) {
+        log.warn("service unavailable", e);
+        sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      } catch(Exception e) {
+        log.error("failed to process request", e);
+        sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      } finally {
+        ctx.complete();
+      }
+    });
+  }
+
+  private static void sendError(HttpServletResponse response, int sc) {
+    if(!response.isCommitted()) {
+      try {
+        response.sendError(sc);
+      } catch(Exception e) {
+        log.debug("failed to send error '{}'", sc, e);
+      }
+    }
+  }
+
+  // NONE: no response body, LENGTH: content-length delimited, CHUNKED: transfer-encoding chunked
+  private enum Body {
+    NONE,
+    LENGTH,
+    CHUNKED,
+  }
+
+  private static class Exchange implements ReadListener, WriteListener, AsyncListener {
+
+    private final String requestId;
+
+    private final AsyncContext ctx;
+
+    private final URL remote;
+
+    private final Origin origin;
+
+    private final HttpServletRequest request;
+
+    private final HttpServletResponse response;
+
+    private final RequestHeaderModifier requestHeaderModifier;
+
+    private final ResponseHeaderModifier responseHeaderModifier;
+
+    private final AsyncConnectionPool pool = AsyncConnectionPoolSupport.getConnectionPool();
+
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private final ForwardTimeouts timeouts;
+
+    private final Deadline deadline;
+
+    private final RequestContext context;
+
+    private final Metrics metrics = MetricsSupport.getMetrics();
+
+    private final String upstreamTag;
+
+    private final Trace trace;
+
+    private long upstreamStart;
+
+    private long relayStart;
+
+    private HttpRequestHeader requestHeader;
+
+    private boolean requestBody;
+
+    private int attempt;
+
+    private volatile AsyncUpstreamConnection connection;
+
+    // request body upload, guarded by uploadLock
+    private final Object uploadLock = new Object();
+
+    private ServletInputStream in;
+
+    private byte[] upload;
+
+    private ByteBuffer uploadFrame;
+
+    private boolean headerSent;
+
+    private boolean uploading;
+
+    private boolean uploadEof;
+
+    private volatile boolean uploadComplete;
+
+    // response, guarded by this
+    private final ByteBuffer readBuf = ByteBuffer.allocate(BUF_SIZE).flip();
+
+    private ByteBuffer pending = ByteBuffer.allocate(0);
+
+    private ByteBuffer chunkBuf;
+
+    private ServletOutputStream out;
+
+    private HttpHeaders headers;
+
+    private Body body = Body.NONE;
+
+    private long remaining;
+
+    private ChunkedDecoder decoder;
+
+    private boolean bodyComplete;
+
+    private boolean reading;
+
+    private boolean eof;
+
+    private long received;
+
+    private long total;
+
+    private Exchange(
+        AsyncContext ctx,
+        URL remote,
+        Origin origin,
+        HttpServletRequest request,
+        HttpServletResponse response,
+        RequestHeaderModifier requestHeaderModifier,
+        ResponseHeaderModifier responseHeaderModifier) {
+      super();
+      this.context = RequestContext.get(request);
+      this.requestId = context != null ? context.getRequestId() : RequestIds.next();
+      this.upstreamTag = origin.toString();
+      this.trace = Trace.get(request);
+      if(context != null) {
+        context.setUpstream(upstreamTag);
+      }
+      this.ctx = ctx;
+      this.remote = remote;
+      this.origin = origin;
+      this.request = request;
+      this.response = response;
+      this.requestHeaderModifier = requestHeaderModifier;
+      this.responseHeaderModifier = responseHeaderModifier;
+      this.timeouts = ForwardTimeouts.get(request);
+      this.deadline = Deadline.start(timeouts.deadline());
+    }
+
+    private void start() {
+      try {
+        log.debug("forwarding '{} {}' to '{}' (async), request id '{}'",
+            request.getMethod(), request.getRequestURI(), remote, requestId);
+        upstreamStart = System.nanoTime();
+        ctx.addListener(this);
+        deadline.watch(() -> fail(new GatewayTimeoutException(
+            "request deadline '{}' exceeded on '{}'", timeouts.deadline(), origin)));
+        requestHeader = RequestHeaderModifier.fromRequest(
+            request,
+            remote.getHost(),
+            remote.getPort(),
+            requestHeaderModifier);
+        requestBody = ReverseProxy.hasRequestBody(request);
+        uploadComplete = !requestBody;
+        if(requestBody) {
+          synchronized(uploadLock) {
+            upload = new byte[UPLOAD_SIZE];
+            uploadFrame = ByteBuffer.allocate(UPLOAD_SIZE + 16);
+            in = request.getInputStream();
+          }
+          // the upload starts once the request header has been sent
+          in.setReadListener(this);
+        }
+        connect();
+      } catch(Exception e) {
+        fail(e);
+      }
+    }
+
+    private void connect() {
+      attempt++;
+      pool.acquire(origin, deadline.cap(timeouts.connectTimeout()), c -> {
+        connection = c;
+        if(done.get()) {
+          pool.release(c, false);
+          return;
+        }
+        if((trace != null) && !c.isReused()) {
+          trace.upstreamSpan("connect", c.getConnectStartNanos(), c.getConnectedNanos(), "upstream", upstreamTag);
+        }
+        long writeStart = System.nanoTime();
+        c.write(ByteBuffer.wrap(requestHeader.toBytes()), writeTimeout(), () -> {
+          if(trace != null) {
+            long written = System.nanoTime();
+            trace.upstreamSpan("write_header", writeStart, written, "attempt", String.valueOf(attempt));
+            trace.setHeaderSentNanos(written);
+          }
+          requestHeaderSent();
+        }, this::retryOrFail);
+      }, this::fail);
+    }
+
+    // a server that does not take the request within the idle timeout is treated like one that does not send
+    private Duration writeTimeout() {
+      return deadline.cap(timeouts.idleTimeout());
+    }
+
+    // a pooled connection might have been closed by the server while it was idle. like the blocking
+    // ReverseProxy retry once on a new connection if nothing has been received yet and there is no request body.
+    private void retryOrFail(Throwable t) {
+      AsyncUpstreamConnection c = connection;
+      boolean retry;
+      synchronized(this) {
+        retry = (c != null) && c.isReused() && !requestBody && (attempt < MAX_ATTEMPTS) && (received == 0)
+            && !(t instanceof InterruptedByTimeoutException) && !done.get();
+        if(retry) {
+          eof = false;
+          readBuf.clear().flip();
+        }
+      }
+      if(retry) {
+        log.debug("pooled connection to '{}' failed, retry on new connection", origin, t);
+        pool.release(c, false);
+        connect();
+      } else {
+        fail(t);
+      }
+    }
+
+    private void requestHeaderSent() {
+      try {
+        if(requestBody) {
+          synchronized(uploadLock) {
+            headerSent = true;
+          }
+          upload();
+        }
+        readHeaders();
+      } catch(Exception e) {
+        fail(e);
+      }
+    }
+
+    // request body
+
+    @Override
+    public void onDataAvailable() {
+      upload();
+    }
+
+    @Override
+    public void onAllDataRead() {
+      synchronized(uploadLock) {
+        uploadEof = true;
+      }
+      upload();
+    }
+
+    private void upload() {
+      synchronized(uploadLock) {
+        if(!headerSent || uploading || uploadComplete || done.get()) {
+          return;
+        }
+        try {
+          boolean chunked = requestHeader.isTransferEncodingChunked();
+          while(!uploadEof && in.isReady()) {
+            int read = in.read(upload);
+            if(read == -1) {
+              uploadEof = true;
+            } else if(read > 0) {
+              ByteBuffer buf;
+              if(chunked) {
+                uploadFrame.clear();
+                uploadFrame.put(Integer.toHexString(read).getBytes(ISO_8859_1)).put(CRLF);
+                uploadFrame.put(upload, 0, read).put(CRLF);
+                buf = uploadFrame.flip();
+              } else {
+                buf = ByteBuffer.wrap(upload, 0, read);
+              }
+              metrics.counter(Metrics.UPSTREAM_BYTES_SENT, "upstream", upstreamTag).increment(read);
+              if(context != null) {
+                context.setBytesIn(context.getBytesIn() + read);
+              }
+              uploading = true;
+              connection.write(buf, writeTimeout(), this::uploaded, this::uploadFailed);
+              return;
+            }
+          }
+          if(uploadEof || in.isFinished()) {
+            uploadEof = true;
+            if(chunked) {
+              uploading = true;
+              connection.write(ByteBuffer.wrap(LAST_CHUNK), writeTimeout(), () -> {
+                synchronized(uploadLock) {
+                  uploading = false;
+                  uploadComplete = true;
+                }
+                log.debug("reached end of request body '{}'", requestId);
+              }, this::uploadFailed);
+            } else {
+              uploadComplete = true;
+              log.debug("reached end of request body '{}'", requestId);
+            }
+          }
+        } catch(Exception e) {
+          uploadFailed(e);
+        }
+      }
+    }
+
+    private void uploaded() {
+      synchronized(uploadLock) {
+        uploading = false;
+      }
+      // if the client has no more data right now the container calls onDataAvailable later
+      upload();
+    }
+
+    private void uploadFailed(Throwable t) {
+      // the server might have answered without reading the whole body, the response still goes through
+      // but the connection is not reused
+      log.debug("failed to send request body '{}' to upstream", requestId, t);
+      synchronized(uploadLock) {
+        uploading = false;
+      }
+    }
+
+    // response
+
+    private void readHeaders() {
+      synchronized(this) {
+        reading = true;
+        readBuf.compact();
+      }
+      connection.read(readBuf, deadline.cap(timeouts.firstByteTimeout()), read -> {
+        int end;
+        synchronized(this) {
+          reading = false;
+          readBuf.flip();
+          if(read == -1) {
+            eof = true;
+          } else {
+            received += read;
+          }
+          end = headerEnd(readBuf);
+        }
+        if(end != -1) {
+          responseHeaders(end);
+        } else if(read == -1) {
+          retryOrFail(new BadGatewayException("server '{}' closed connection before sending response headers", origin));
+        } else if(readBuf.limit() == readBuf.capacity()) {
+          fail(new ReverseProxyException("response headers to large (> '{}')", readBuf.capacity()));
+        } else {
+          readHeaders();
+        }
+      }, t -> {
+        if((t instanceof InterruptedByTimeoutException) && !uploadComplete && !done.get()) {
+          // the server might only answer once it has the whole request body
+          log.debug("no response yet, request body upload still running");
+          synchronized(this) {
+            reading = false;
+            readBuf.flip();
+          }
+          readHeaders();
+        } else {
+          retryOrFail(t);
+        }
+      });
+    }
+
+    // returns the index after the empty line that terminates the headers, -1 if not yet received
+    private static int headerEnd(ByteBuffer buf) {
+      byte[] b = buf.array();
+      for(int i=buf.position();i<buf.limit();i++) {
+        if(b[i] == '\n') {
+          if((i + 1 < buf.limit()) && (b[i + 1] == '\n')) {
+            return i + 2;
+          }
+          if((i + 2 < buf.limit()) && (b[i + 1] == '\r') && (b[i + 2] == '\n')) {
+            return i + 3;
+          }
+        }
+      }
+      return -1;
+    }
+
+    private void responseHeaders(int end) {
+      try {
+        synchronized(this) {
+          int start = readBuf.position();
+          HttpInputBuffer headerBytes = new HttpInputBuffer(
+              new ByteArrayInputStream(readBuf.array(), start, end - start), end - start + 1);
+          headers = new HeaderParser(headerBytes).parse().headers();
+          readBuf.position(end);
+          long firstByte = System.nanoTime() - upstreamStart;
+          metrics.timer(Metrics.UPSTREAM_FIRST_BYTE, "upstream", upstreamTag).record(firstByte);
+          if(context != null) {
+            context.setFirstByteNanos(firstByte);
+          }
+          relayStart = System.nanoTime();
+          if(trace != null) {
+            trace.upstreamSpan("first_byte", trace.getHeaderSentNanos(), relayStart);
+          }
+          log.debug("received http headers from server '{}'", headers);
+          HttpHeaders clientHeaders = ReverseProxy.applyReponseHeaderModifiers(responseHeaderModifier, headers, request);
+          if(!ReverseProxy.hasResponseBody(request.getMethod(), headers)) {
+            log.debug("not sending response body, based on method or http response code from downstream server");
+            bodyComplete = true;
+          } else {
+            Long contentLength = ObjectUtils.asLong(headers.getHeader("Content-Length"));
+            if((contentLength != null) && (contentLength > 0)) {
+              body = Body.LENGTH;
+              remaining = contentLength;
+            } else if(ReverseProxy.isTransferEncodingChunked(headers)) {
+              body = Body.CHUNKED;
+              decoder = new ChunkedDecoder();
+              chunkBuf = ByteBuffer.allocate(BUF_SIZE);
+              ReverseProxy.setTrailerFields(response, headers, decoder::getTrailers);
+            } else {
+              // same as the blocking forward, a body without length is not relayed
+              bodyComplete = (contentLength != null);
+            }
+          }
+          ReverseProxy.setResponseHeaders(response, clientHeaders);
+          if(body == Body.NONE) {
+            finish();
+            return;
+          }
+          out = response.getOutputStream();
+        }
+        // the container calls onWritePossible once the listener is set
+        out.setWriteListener(this);
+      } catch(Exception e) {
+        fail(e);
+      }
+    }
+
+    @Override
+    public void onWritePossible() {
+      relay();
+    }
+
+    // moves the response body from the read buffer to the client until either side would block
+    private synchronized void relay() {
+      if(done.get() || reading) {
+        return;
+      }
+      try {
+        for(;;) {
+          if(pending.hasRemaining()) {
+            if(!out.isReady()) {
+              // onWritePossible continues
+              return;
+            }
+            int n = pending.remaining();
+            out.write(pending.array(), pending.arrayOffset() + pending.position(), n);
+            pending.position(pending.limit());
+            total += n;
+            log.trace("written '{}' bytes to client, total '{}'", n, total);
+          } else if(bodyComplete) {
+            log.debug("response body done, '{}' bytes", total);
+            finish();
+            return;
+          } else if(readBuf.hasRemaining()) {
+            decode();
+          } else if(eof) {
+            log.warn("reached end of stream before the end of the response body, '{}' bytes written", total);
+            finish();
+            return;
+          } else {
+            readBody();
+            return;
+          }
+        }
+      } catch(Exception e) {
+        fail(e);
+      }
+    }
+
+    private void decode() {
+      if(body == Body.LENGTH) {
+        int n = (int)Math.min(remaining, readBuf.remaining());
+        // no copy, the slice is written before the read buffer is used again
+        pending = readBuf.slice(readBuf.position(), n);
+        readBuf.position(readBuf.position() + n);
+        remaining -= n;
+        bodyComplete = (remaining == 0);
+      } else {
+        chunkBuf.clear();
+        bodyComplete = decoder.decode(readBuf, chunkBuf);
+        pending = chunkBuf.flip();
+      }
+    }
+
+    private void readBody() {
+      reading = true;
+      readBuf.compact();
+      connection.read(readBuf, timeouts.idleTimeout(), read -> {
+        synchronized(this) {
+          reading = false;
+          readBuf.flip();
+          if(read == -1) {
+            eof = true;
+          }
+        }
+        relay();
+      }, this::fail);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      fail(t);
+    }
+
+    private void finish() {
+      if(!done.compareAndSet(false, true)) {
+        return;
+      }
+      deadline.cancel();
+      AsyncUpstreamConnection c = connection;
+      boolean reusable;
+      synchronized(this) {
+        // left over bytes after the body would mess up the next response
+        reusable = bodyComplete && !eof && !readBuf.hasRemaining() && ReverseProxy.isKeepAlive(headers);
+        if(reusable) {
+          Long keepAliveTimeout = ReverseProxy.keepAliveTimeoutSeconds(headers);
+          if(keepAliveTimeout != null) {
+            c.setKeepAliveTimeoutSeconds(keepAliveTimeout);
+          }
+        }
+      }
+      if(!uploadComplete) {
+        log.debug("request body upload not finished after response, connection not reused");
+      }
+      pool.release(c, reusable && uploadComplete);
+      recordUpstream(null);
+      complete();
+    }
+
+    private void fail(Throwable t) {
+      if(!done.compareAndSet(false, true)) {
+        log.debug("exchange '{}' already done", requestId, t);
+        return;
+      }
+      deadline.cancel();
+      if((t instanceof GatewayTimeoutException) || (t instanceof InterruptedByTimeoutException)) {
+        log.warn("gateway timeout", t);
+        sendError(response, HttpServletResponse.SC_GATEWAY_TIMEOUT);
+      } else if(t instanceof BadGatewayException) {
+        log.warn("bad gateway", t);
+        sendError(response, HttpServletResponse.SC_BAD_GATEWAY);
+      } else if(t instanceof IOException) {
+        log.warn("failed to forward request '{}' to '{}'", requestId, origin, t);
+        sendError(response, HttpServletResponse.SC_BAD_GATEWAY);
+      } else {
+        log.error("failed to process request", t);
+        sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+      AsyncUpstreamConnection c = connection;
+      if(c != null) {
+        pool.release(c, false);
+      }
+      recordUpstream(t);
+      complete();
+    }
+
+    // the same upstream meters and spans as the blocking ReverseProxy, failure is null on success
+    private void recordUpstream(Throwable failure) {
+      HttpHeaders h;
+      long relayed;
+      synchronized(this) {
+        h = headers;
+        relayed = total;
+      }
+      long now = System.nanoTime();
+      if(trace != null) {
+        if(h == null) {
+          trace.upstream(upstreamStart, now, "upstream", upstreamTag, "error", failure != null ? failure.getMessage() : null);
+        } else {
+          trace.upstreamSpan("relay_body", relayStart, now, "bytes", String.valueOf(relayed));
+          trace.upstream(upstreamStart, now, "upstream", upstreamTag, "status", String.valueOf(h.statusCode()));
+        }
+      }
+      metrics.timer(Metrics.UPSTREAM_DURATION, "upstream", upstreamTag).record(now - upstreamStart);
+      metrics.counter(Metrics.UPSTREAM_REQUESTS, "upstream", upstreamTag,
+          "status", h != null ? Metrics.statusClass(h.statusCode()) : "error").increment();
+      metrics.counter(Metrics.UPSTREAM_BYTES_RECEIVED, "upstream", upstreamTag).increment(relayed);
+      if(context != null) {
+        context.setBytesOut(relayed);
+      }
+    }
+
+    private void complete() {
+      try {
+        ctx.complete();
+      } catch(IllegalStateException e) {
+        log.debug("async context already completed", e);
+      } finally {
+        log.debug("exit request '{}'", requestId);
+      }
+    }
+
+    // async listener, the client connection failed or the container timed out the request
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      // nothing to do
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      fail(new ReverseProxyException("async request '{}' timed out", requestId));
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      fail(event.getThrowable() != null ? event.getThrowable() : new ReverseProxyException("async request failed"));
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // nothing to do
+    }
+
+  }
+
+}
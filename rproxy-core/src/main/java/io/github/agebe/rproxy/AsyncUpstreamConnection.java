@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// a non blocking connection to an upstream server, used by the AsyncReverseProxy
+public class AsyncUpstreamConnection implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncUpstreamConnection.class);
+
+  private final Origin origin;
+
+  private final AsynchronousSocketChannel channel;
+
+  // when connecting started and finished
+  private final long connectStartNanos;
+
+  private final long connectedNanos = System.nanoTime();
+
+  private volatile long lastUsed = System.nanoTime();
+
+  private volatile long keepAliveNanos = -1;
+
+  private int requests;
+
+  private final AtomicBoolean leased = new AtomicBoolean();
+
+  public AsyncUpstreamConnection(Origin origin, AsynchronousSocketChannel channel, long connectStartNanos) {
+    super();
+    this.origin = origin;
+    this.channel = channel;
+    this.connectStartNanos = connectStartNanos;
+  }
+
+  public Origin getOrigin() {
+    return origin;
+  }
+
+  public AsynchronousSocketChannel getChannel() {
+    return channel;
+  }
+
+  public long getConnectStartNanos() {
+    return connectStartNanos;
+  }
+
+  public long getConnectedNanos() {
+    return connectedNanos;
+  }
+
+  // true if the connection has been used for a previous request
+  public boolean isReused() {
+    return requests > 1;
+  }
+
+  public void setKeepAliveTimeoutSeconds(long seconds) {
+    this.keepAliveNanos = seconds * 1_000_000_000L;
+  }
+
+  void lease() {
+    requests++;
+    leased.set(true);
+  }
+
+  // false if the connection was not leased (released twice)
+  boolean unlease() {
+    return leased.compareAndSet(true, false);
+  }
+
+  void touch() {
+    lastUsed = System.nanoTime();
+  }
+
+  boolean isExpired(long now, long idleTimeoutNanos) {
+    long idle = now - lastUsed;
+    if(idle >= idleTimeoutNanos) {
+      return true;
+    }
+    // give the server a second head start, it might close the connection just as we are about to use it
+    return (keepAliveNanos > 0) && (idle >= (keepAliveNanos - 1_000_000_000L));
+  }
+
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  // reads into the buffer, completes with the number of bytes read or -1 on end of stream.
+  // fails with InterruptedByTimeoutException if nothing arrived within the timeout (zero for no timeout)
+  public void read(ByteBuffer buf, Duration timeout, Consumer<Integer> completed, Consumer<Throwable> failed) {
+    channel.read(buf, timeout.toMillis(), TimeUnit.MILLISECONDS, null, handler(completed, failed));
+  }
+
+  // writes the whole buffer, fails with InterruptedByTimeoutException if the server does not take any bytes
+  // within the timeout (zero for no timeout)
+  public void write(ByteBuffer buf, Duration timeout, Runnable completed, Consumer<Throwable> failed) {
+    channel.write(buf, timeout.toMillis(), TimeUnit.MILLISECONDS, null, handler(written -> {
+      if(buf.hasRemaining()) {
+        write(buf, timeout, completed, failed);
+      } else {
+        completed.run();
+      }
+    }, failed));
+  }
+
+  static <V> CompletionHandler<V, Void> handler(Consumer<V> completed, Consumer<Throwable> failed) {
+    return new CompletionHandler<>() {
+
+      @Override
+      public void completed(V result, Void attachment) {
+        completed.accept(result);
+      }
+
+      @Override
+      public void failed(Throwable exc, Void attachment) {
+        failed.accept(exc);
+      }
+
+    };
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch(IOException e) {
+      log.debug("failed to close connection to '{}'", origin, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "%s (async, requests %s)".formatted(origin, requests);
+  }
+
+}
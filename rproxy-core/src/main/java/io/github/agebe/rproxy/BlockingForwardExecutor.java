@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// runs whole blocking forwards for AsyncReverseProxy, see BlockingForwardExecutorSupport.
+// each forward holds a thread for its whole duration and maxThreads caps them. A forward reserves its thread
+// before the request goes async, if none becomes available within the wait timeout the request is refused
+// with a 503 (ServiceUnavailableException).
+public class BlockingForwardExecutor implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(BlockingForwardExecutor.class);
+
+  public static final Duration DEFAULT_WAIT_TIMEOUT = Duration.ofSeconds(1);
+
+  // a thread reserved for one forward, released when the forward is done or when closed without executing
+  public class Reservation implements AutoCloseable {
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private boolean executed;
+
+    private Reservation() {
+      super();
+    }
+
+    public void execute(Runnable forward) {
+      if(executed) {
+        throw new IllegalStateException("reservation already used");
+      }
+      executed = true;
+      try {
+        executor.execute(() -> {
+          try {
+            forward.run();
+          } finally {
+            release();
+          }
+        });
+      } catch(RuntimeException e) {
+        release();
+        throw e;
+      }
+    }
+
+    private void release() {
+      if(released.compareAndSet(false, true)) {
+        permits.release();
+      }
+    }
+
+    @Override
+    public void close() {
+      if(!executed) {
+        release();
+      }
+    }
+
+  }
+
+  private static final AtomicLong threadCounter = new AtomicLong();
+
+  private final ThreadPoolExecutor executor;
+
+  private final Semaphore permits;
+
+  private final Duration waitTimeout;
+
+  private final LongAdder rejected = new LongAdder();
+
+  // the reservations make sure there are never more forwards than threads, a forward in the queue only waits
+  // for a thread that is just done with the previous one
+  public BlockingForwardExecutor(int maxThreads, Duration waitTimeout) {
+    super();
+    this.executor = new ThreadPoolExecutor(
+        maxThreads,
+        maxThreads,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        BlockingForwardExecutor::newThread);
+    this.executor.allowCoreThreadTimeOut(true);
+    this.permits = new Semaphore(maxThreads);
+    this.waitTimeout = waitTimeout;
+  }
+
+  private static Thread newThread(Runnable r) {
+    Thread t = new Thread(r, "rproxy-blocking-forward-" + threadCounter.incrementAndGet());
+    t.setDaemon(true);
+    return t;
+  }
+
+  // reserves a thread for a forward, waits up to the wait timeout if all threads are busy
+  public Reservation reserve() {
+    try {
+      if(!permits.tryAcquire(waitTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+        rejected.increment();
+        log.debug("all '{}' blocking forward threads busy for '{}'", getMaxThreads(), waitTimeout);
+        throw new ServiceUnavailableException("all '{}' blocking forward threads busy", getMaxThreads());
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("interrupted while waiting for a blocking forward thread", e);
+    }
+    return new Reservation();
+  }
+
+  public int getMaxThreads() {
+    return executor.getMaximumPoolSize();
+  }
+
+  // forwards running or reserved
+  public int getActive() {
+    return getMaxThreads() - permits.availablePermits();
+  }
+
+  // requests refused because all threads were busy
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// AsyncReverseProxy has no non blocking tls, https upstreams are forwarded with the blocking ReverseProxy on
+// the threads of this executor, see BlockingForwardExecutor.
+public class BlockingForwardExecutorSupport {
+
+  public static final int DEFAULT_MAX_THREADS = 64;
+
+  private static volatile BlockingForwardExecutor executor = new BlockingForwardExecutor(
+      DEFAULT_MAX_THREADS,
+      BlockingForwardExecutor.DEFAULT_WAIT_TIMEOUT);
+
+  public static BlockingForwardExecutor getExecutor() {
+    return executor;
+  }
+
+  // running forwards finish on the previous executor
+  public static void setExecutor(BlockingForwardExecutor executor) {
+    BlockingForwardExecutor previous = BlockingForwardExecutorSupport.executor;
+    BlockingForwardExecutorSupport.executor = executor;
+    if(previous != executor) {
+      previous.close();
+    }
+  }
+
+}
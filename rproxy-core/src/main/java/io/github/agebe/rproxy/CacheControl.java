@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+// the Cache-Control directives of a request or response, https://www.rfc-editor.org/rfc/rfc9111#name-cache-control
+// ages are in seconds, null if the directive is not present
+public record CacheControl(
+    boolean noStore,
+    boolean noCache,
+    boolean isPrivate,
+    boolean isPublic,
+    boolean mustRevalidate,
+    boolean immutable,
+    boolean noTransform,
+    Long maxAge,
+    Long sMaxAge,
+    Long staleWhileRevalidate,
+    Long staleIfError) {
+
+  public static final CacheControl NONE = new CacheControl(false, false, false, false, false, false, false,
+      null, null, null, null);
+
+  public static CacheControl of(HttpHeaders headers) {
+    return parse(headers.getHeaders("cache-control"));
+  }
+
+  public static CacheControl of(HttpRequestHeader header) {
+    return parse(header.headers().get("cache-control"));
+  }
+
+  public static CacheControl parse(List<String> values) {
+    if((values == null) || values.isEmpty()) {
+      return NONE;
+    }
+    boolean noStore = false;
+    boolean noCache = false;
+    boolean isPrivate = false;
+    boolean isPublic = false;
+    boolean mustRevalidate = false;
+    boolean immutable = false;
+    boolean noTransform = false;
+    Long maxAge = null;
+    Long sMaxAge = null;
+    Long staleWhileRevalidate = null;
+    Long staleIfError = null;
+    for(String value : values) {
+      for(String directive : StringUtils.split(value, ',')) {
+        String name = StringUtils.substringBefore(directive, "=").strip().toLowerCase();
+        String arg = directive.contains("=") ? StringUtils.strip(StringUtils.substringAfter(directive, "="), " \t\"") : null;
+        switch(name) {
+        case "no-store" -> noStore = true;
+        // no-cache with field names only applies to those fields, treat it like the unqualified form
+        case "no-cache" -> noCache = true;
+        case "private" -> isPrivate = true;
+        case "public" -> isPublic = true;
+        case "must-revalidate", "proxy-revalidate" -> mustRevalidate = true;
+        case "immutable" -> immutable = true;
+        case "no-transform" -> noTransform = true;
+        case "max-age" -> maxAge = seconds(arg);
+        case "s-maxage" -> sMaxAge = seconds(arg);
+        case "stale-while-revalidate" -> staleWhileRevalidate = seconds(arg);
+        case "stale-if-error" -> staleIfError = seconds(arg);
+        default -> {
+          // ignore unknown directives
+        }
+        }
+      }
+    }
+    return new CacheControl(noStore, noCache, isPrivate, isPublic, mustRevalidate, immutable, noTransform,
+        maxAge, sMaxAge, staleWhileRevalidate, staleIfError);
+  }
+
+  // invalid values are treated as 0 (stale), https://www.rfc-editor.org/rfc/rfc9111#name-delta-seconds
+  private static Long seconds(String arg) {
+    Long l = ObjectUtils.asLong(arg);
+    return (l != null) && (l >= 0) ? l : Long.valueOf(0);
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+// decides what can be stored in and served from a shared cache, https://www.rfc-editor.org/rfc/rfc9111
+// there is no heuristic freshness, responses without explicit freshness (max-age, s-maxage, Expires) are only
+// stored if they have a validator (ETag, Last-Modified) and are revalidated on every use.
+public class CachePolicy {
+
+  // https://www.rfc-editor.org/rfc/rfc9110#name-overview-of-status-codes (heuristically cacheable)
+  private static final Set<Integer> CACHEABLE_STATUS = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+
+  // not stored, they describe the connection the response came in on
+  private static final Set<String> NOT_STORED = Set.of(
+      "connection", "keep-alive", "transfer-encoding", "trailer", "te", "upgrade",
+      "proxy-authenticate", "proxy-authorization", "age");
+
+  private static final List<String> CONDITIONALS = List.of(
+      "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range");
+
+  public static String key(Origin origin, HttpRequestHeader request) {
+    String query = request.queryString();
+    return StringUtils.isBlank(query)
+        ? origin + request.requestURI()
+        : origin + request.requestURI() + "?" + query;
+  }
+
+  private static boolean isGet(HttpRequestHeader request) {
+    return StringUtils.equalsIgnoreCase("GET", request.method());
+  }
+
+  // GET and HEAD (served from GET responses) without credentials and not asking to bypass the cache
+  public static boolean isCacheableRequest(HttpRequestHeader request) {
+    if(!(isGet(request) || StringUtils.equalsIgnoreCase("HEAD", request.method()))) {
+      return false;
+    }
+    if(request.headers().containsKey("authorization")) {
+      return false;
+    }
+    return !CacheControl.of(request).noStore();
+  }
+
+  // the client accepts a stored response (does not ask for an end to end reload)
+  public static boolean mayServeFromCache(HttpRequestHeader request) {
+    CacheControl cc = CacheControl.of(request);
+    if(cc.noCache() || Long.valueOf(0).equals(cc.maxAge())) {
+      return false;
+    }
+    List<String> pragma = request.headers().get("pragma");
+    return (pragma == null) || pragma.stream().noneMatch(p -> StringUtils.containsIgnoreCase(p, "no-cache"));
+  }
+
+  public static boolean isStorable(HttpRequestHeader request, HttpHeaders headers) {
+    if(!isGet(request) || !CACHEABLE_STATUS.contains(headers.statusCode())) {
+      return false;
+    }
+    CacheControl cc = CacheControl.of(headers);
+    if(cc.noStore() || cc.isPrivate()) {
+      return false;
+    }
+    if(headers.headers().containsKey("set-cookie")) {
+      return false;
+    }
+    List<String> vary = headers.getHeaders("vary");
+    if((vary != null) && vary.stream().anyMatch(v -> v.contains("*"))) {
+      return false;
+    }
+    return hasValidator(headers) || (freshnessLifetime(headers, cc, System.currentTimeMillis()) > 0);
+  }
+
+  public static boolean hasValidator(HttpHeaders headers) {
+    return (headers.getHeaders("etag") != null) || (headers.getHeaders("last-modified") != null);
+  }
+
+  // millis, https://www.rfc-editor.org/rfc/rfc9111#name-calculating-freshness-lifet
+  // no-cache responses are stale right away, they have to be revalidated before every use
+  public static long freshnessLifetime(HttpHeaders headers, CacheControl cc, long responseTime) {
+    if(cc.noCache()) {
+      return 0;
+    } else if(cc.sMaxAge() != null) {
+      return cc.sMaxAge() * 1000;
+    } else if(cc.maxAge() != null) {
+      return cc.maxAge() * 1000;
+    }
+    List<String> expires = headers.getHeaders("expires");
+    if((expires != null) && !expires.isEmpty()) {
+      Long e = parseDate(expires.get(0));
+      if(e == null) {
+        // invalid dates mean already expired
+        return 0;
+      }
+      Long date = parseDate(headers.getHeaders("date") != null ? headers.getHeaders("date").get(0) : null);
+      return Math.max(0, e - (date != null ? date : responseTime));
+    }
+    return 0;
+  }
+
+  public static Long parseDate(String s) {
+    if(StringUtils.isBlank(s)) {
+      return null;
+    }
+    try {
+      return ZonedDateTime.parse(s.strip(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+    } catch(Exception e) {
+      return null;
+    }
+  }
+
+  public static CachedResponse toCached(
+      HttpRequestHeader request,
+      HttpHeaders headers,
+      CacheBody body,
+      long responseTime) {
+    return toCached(headers, body, responseTime, varyValues(request, headers));
+  }
+
+  private static CachedResponse toCached(
+      HttpHeaders headers,
+      CacheBody body,
+      long responseTime,
+      Map<String, String> vary) {
+    Long age = ObjectUtils.asLong(headers.getHeaders("age") != null ? headers.getHeaders("age").get(0) : null);
+    long corrected = responseTime - ((age != null) && (age > 0) ? age * 1000 : 0);
+    long freshUntil = corrected + freshnessLifetime(headers, CacheControl.of(headers), responseTime);
+    return new CachedResponse(
+        storedHeaders(headers, body.length()),
+        body,
+        corrected,
+        freshUntil,
+        vary);
+  }
+
+  // the stored response updated with the headers of a 304, https://www.rfc-editor.org/rfc/rfc9111#name-freshening-stored-response
+  public static CachedResponse refresh(CachedResponse stored, HttpHeaders notModified, long responseTime) {
+    HeaderMap m = new HeaderMap(stored.headers().headers());
+    notModified.headers().forEach((k, v) -> {
+      // the 304 describes the stored body, it does not have one itself
+      if(!NOT_STORED.contains(k.toLowerCase()) && !StringUtils.equalsIgnoreCase("content-length", k)) {
+        m.put(k, v);
+      }
+    });
+    HttpHeaders headers = new HttpHeaders(
+        stored.headers().version(),
+        stored.headers().statusCode(),
+        stored.headers().status(),
+        m);
+    return toCached(headers, stored.body(), responseTime, stored.vary());
+  }
+
+  // the request to revalidate the stored response with its validators or null if the stored response does not
+  // have any. requests that are conditional already are for the client to resolve, they are not revalidated.
+  public static HttpRequestHeader conditional(HttpRequestHeader request, CachedResponse stored) {
+    if(isConditional(request)) {
+      return null;
+    }
+    List<String> etag = stored.headers().getHeaders("etag");
+    List<String> lastModified = stored.headers().getHeaders("last-modified");
+    if((etag == null) && (lastModified == null)) {
+      return null;
+    }
+    HeaderMap m = new HeaderMap(request.headers());
+    if(etag != null) {
+      m.put("If-None-Match", List.of(String.join(", ", etag)));
+    }
+    if(lastModified != null) {
+      m.put("If-Modified-Since", List.of(lastModified.get(0)));
+    }
+    return new HttpRequestHeader(request.method(), request.requestURI(), request.queryString(), m);
+  }
+
+  static boolean isConditional(HttpRequestHeader request) {
+    for(String h : CONDITIONALS) {
+      if(request.headers().containsKey(h)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the stale response may be served while it is revalidated in the background
+  public static boolean mayServeWhileRevalidate(CachedResponse stored, long now) {
+    CacheControl cc = stored.cacheControl();
+    return !cc.mustRevalidate() && !cc.noCache() && (cc.staleWhileRevalidate() != null)
+        && (now < stored.freshUntil() + (cc.staleWhileRevalidate() * 1000));
+  }
+
+  // the stale response may be served if the upstream server fails
+  public static boolean mayServeOnError(CachedResponse stored, long now) {
+    CacheControl cc = stored.cacheControl();
+    return !cc.mustRevalidate() && (cc.staleIfError() != null)
+        && (now < stored.freshUntil() + (cc.staleIfError() * 1000));
+  }
+
+  // the body is stored decoded, it is served with a content-length
+  private static HttpHeaders storedHeaders(HttpHeaders headers, long length) {
+    HeaderMap m = new HeaderMap();
+    headers.headers().forEach((k, v) -> {
+      if(!NOT_STORED.contains(k.toLowerCase())) {
+        m.put(k, v);
+      }
+    });
+    if(headers.statusCode() != 204) {
+      m.put("Content-Length", List.of(Long.toString(length)));
+    }
+    return new HttpHeaders(headers.version(), headers.statusCode(), headers.status(), m);
+  }
+
+  static Map<String, String> varyValues(HttpRequestHeader request, HttpHeaders headers) {
+    List<String> vary = headers.getHeaders("vary");
+    if(vary == null) {
+      return Map.of();
+    }
+    Map<String, String> m = new HashMap<>();
+    for(String v : vary) {
+      for(String name : StringUtils.split(v, ", ")) {
+        m.put(name.toLowerCase(), varyValue(request, name));
+      }
+    }
+    return m;
+  }
+
+  // the request header values joined, empty if the request does not have the header
+  static String varyValue(HttpRequestHeader request, String name) {
+    List<String> values = request.headers().get(name);
+    return values != null ? String.join(",", values) : "";
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// runs revalidations of stale cached responses in the background (stale-while-revalidate),
+// at most one per cache key at a time. if the queue is full the revalidation is skipped, the next
+// request for the stale response tries again.
+public class CacheRevalidator {
+
+  private static final Logger log = LoggerFactory.getLogger(CacheRevalidator.class);
+
+  private static final int MAX_THREADS = 8;
+
+  private static final int MAX_QUEUED = 1024;
+
+  private static final AtomicLong threadCounter = new AtomicLong();
+
+  private static final Set<String> running = ConcurrentHashMap.newKeySet();
+
+  private static final ThreadPoolExecutor executor = newExecutor();
+
+  private static ThreadPoolExecutor newExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        MAX_THREADS,
+        MAX_THREADS,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(MAX_QUEUED),
+        r -> {
+          Thread t = new Thread(r, "rproxy-revalidate-" + threadCounter.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  // returns false if a revalidation for the key is already running or could not be queued
+  public static boolean revalidate(String key, Runnable revalidation) {
+    if(!running.add(key)) {
+      log.debug("revalidation of '{}' already running", key);
+      return false;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          revalidation.run();
+        } catch(Exception e) {
+          log.warn("background revalidation of '{}' failed", key, e);
+        } finally {
+          running.remove(key);
+        }
+      });
+      return true;
+    } catch(RejectedExecutionException e) {
+      running.remove(key);
+      log.debug("revalidation queue full, skip '{}'", key);
+      return false;
+    }
+  }
+
+}
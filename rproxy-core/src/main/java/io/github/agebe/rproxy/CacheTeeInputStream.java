@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+
+// copies what is read from the body into the cache writer. if the writer gives up the body is still
+// read as normal, only the copying stops.
+public class CacheTeeInputStream extends HttpBodyInputStream {
+
+  private final HttpBodyInputStream in;
+
+  private CacheWriter writer;
+
+  public CacheTeeInputStream(HttpBodyInputStream in, CacheWriter writer) {
+    super();
+    this.in = in;
+    this.writer = writer;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int i = in.read();
+    if((i != -1) && (writer != null)) {
+      copy(new byte[] {(byte)i}, 0, 1);
+    }
+    return i;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int read = in.read(b, off, len);
+    if((read > 0) && (writer != null)) {
+      copy(b, off, read);
+    }
+    return read;
+  }
+
+  private void copy(byte[] b, int off, int len) {
+    if(!writer.write(b, off, len)) {
+      writer = null;
+    }
+  }
+
+  @Override
+  public int available() throws IOException {
+    return in.available();
+  }
+
+  @Override
+  public boolean isComplete() {
+    return in.isComplete();
+  }
+
+  // false if the writer gave up
+  public boolean isCaching() {
+    return writer != null;
+  }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// collects a response body for the cache while it is relayed to the client
+public interface CacheWriter {
+
+  // returns false if the body is not going to be stored (e.g. to large), the writer is aborted in that case
+  boolean write(byte[] b, int off, int len);
+
+  // the body is complete
+  CacheBody finish();
+
+  // the body is not going to be stored, frees what has been written so far
+  void abort();
+
+}
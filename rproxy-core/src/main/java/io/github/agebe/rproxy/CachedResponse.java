@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// a stored upstream response. responseTime is when the response was received (millis) corrected by the
+// age it already had on arrival, freshUntil is the end of the freshness lifetime (millis).
+// vary holds the values of the request headers named in the Vary response header.
+public record CachedResponse(
+    HttpHeaders headers,
+    CacheBody body,
+    long responseTime,
+    long freshUntil,
+    Map<String, String> vary) {
+
+  public boolean isFresh(long now) {
+    return now < freshUntil;
+  }
+
+  // seconds since the response has been generated
+  public long age(long now) {
+    return Math.max(0, (now - responseTime) / 1000);
+  }
+
+  // seconds since the response became stale, 0 if fresh
+  public long staleness(long now) {
+    return Math.max(0, (now - freshUntil) / 1000);
+  }
+
+  public CacheControl cacheControl() {
+    return CacheControl.of(headers);
+  }
+
+  // true if the request has the same values in the headers named by Vary
+  public boolean matches(HttpRequestHeader request) {
+    for(Map.Entry<String, String> me : vary.entrySet()) {
+      if(!Objects.equals(me.getValue(), CachePolicy.varyValue(request, me.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the stored headers with the current Age
+  public HttpHeaders headers(long now) {
+    HeaderMap m = new HeaderMap(headers.headers());
+    m.put("Age", List.of(Long.toString(age(now))));
+    return new HttpHeaders(headers.version(), headers.statusCode(), headers.status(), m);
+  }
+
+  // approximate memory use
+  public long size() {
+    long size = body.length() + 256;
+    for(Map.Entry<String, List<String>> me : headers.headers().entrySet()) {
+      size += me.getKey().length() + 32;
+      if(me.getValue() != null) {
+        for(String v : me.getValue()) {
+          size += v.length() + 16;
+        }
+      }
+    }
+    return size;
+  }
+
+}
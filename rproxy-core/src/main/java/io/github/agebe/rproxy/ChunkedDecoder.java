@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// incremental decoder for a 'Transfer-Encoding: chunked' body, the push based counterpart to ChunkedInputStream
+// for non blocking reads. Bytes are fed in as they arrive from the network in buffers of any size, the chunk
+// payload is copied out, chunk extensions are skipped and trailer fields collected.
+public class ChunkedDecoder {
+
+  private static final Logger log = LoggerFactory.getLogger(ChunkedDecoder.class);
+
+  private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+  private enum State {
+    SIZE,
+    EXTENSION,
+    DATA,
+    DATA_END,
+    TRAILER,
+    DONE,
+  }
+
+  private State state = State.SIZE;
+
+  private long size;
+
+  private int digits;
+
+  private int extensionLength;
+
+  // bytes left in the current chunk
+  private long remaining;
+
+  private final StringBuilder line = new StringBuilder();
+
+  private Map<String, String> trailers;
+
+  // decodes as much of src into dst as possible. returns true once the last chunk and the trailer
+  // section have been read, src is positioned right after the body in that case.
+  public boolean decode(ByteBuffer src, ByteBuffer dst) {
+    while(src.hasRemaining() && (state != State.DONE)) {
+      switch(state) {
+      case SIZE:
+        size(src.get());
+        break;
+      case EXTENSION:
+        if(src.get() == '\n') {
+          endOfSizeLine();
+        } else if(++extensionLength > MAX_LINE_LENGTH) {
+          throw new ReverseProxyException("chunk extension to large");
+        }
+        break;
+      case DATA:
+        if(!dst.hasRemaining()) {
+          return false;
+        }
+        int n = (int)Math.min(remaining, Math.min(src.remaining(), dst.remaining()));
+        int limit = src.limit();
+        src.limit(src.position() + n);
+        dst.put(src);
+        src.limit(limit);
+        remaining -= n;
+        if(remaining == 0) {
+          state = State.DATA_END;
+        }
+        break;
+      case DATA_END:
+        // CRLF after the chunk data
+        byte b = src.get();
+        if(b == '\n') {
+          state = State.SIZE;
+        } else if(b != '\r') {
+          throw new ReverseProxyException("failed to read http chunk, expected CRLF after chunk data");
+        }
+        break;
+      case TRAILER:
+        trailer(src.get());
+        break;
+      default:
+        throw new IllegalStateException(state.name());
+      }
+    }
+    return state == State.DONE;
+  }
+
+  public boolean isComplete() {
+    return state == State.DONE;
+  }
+
+  // trailer fields sent after the last chunk, empty until the body is complete
+  public Map<String, String> getTrailers() {
+    return trailers != null ? trailers : Map.of();
+  }
+
+  private void size(byte b) {
+    int d = Character.digit(b, 16);
+    if(d != -1) {
+      if(size > (Long.MAX_VALUE >> 4)) {
+        throw new ReverseProxyException("chunk size to large");
+      }
+      size = (size << 4) + d;
+      digits++;
+    } else if(b == ';') {
+      if(digits == 0) {
+        throw new ReverseProxyException("failed to parse chunk size, no digits");
+      }
+      extensionLength = 0;
+      state = State.EXTENSION;
+    } else if(b == '\n') {
+      endOfSizeLine();
+    } else if((b != ' ') && (b != '\t') && (b != '\r')) {
+      throw new ReverseProxyException("failed to parse chunk size, unexpected character '{}'", (char)b);
+    }
+  }
+
+  private void endOfSizeLine() {
+    if((digits == 0) && (state == State.SIZE)) {
+      throw new ReverseProxyException("failed to parse chunk size, no digits");
+    }
+    remaining = size;
+    log.trace("next chunk size '{}' bytes", remaining);
+    size = 0;
+    digits = 0;
+    state = (remaining == 0) ? State.TRAILER : State.DATA;
+  }
+
+  private void trailer(byte b) {
+    if(b != '\n') {
+      if(line.length() > MAX_LINE_LENGTH) {
+        throw new ReverseProxyException("chunked trailer line is to large");
+      }
+      line.append((char)(b & 0xff));
+      return;
+    }
+    int end = line.length();
+    if((end > 0) && (line.charAt(end - 1) == '\r')) {
+      end--;
+    }
+    if(end == 0) {
+      state = State.DONE;
+      return;
+    }
+    String s = line.substring(0, end);
+    line.setLength(0);
+    int colon = s.indexOf(':');
+    if(colon > 0) {
+      if(trailers == null) {
+        trailers = new LinkedHashMap<>();
+      }
+      String name = s.substring(0, colon).strip();
+      String value = s.substring(colon + 1).strip();
+      trailers.merge(name, value, (v1, v2) -> v1 + ", " + v2);
+      log.debug("received trailer '{}: {}'", name, value);
+    }
+  }
+
+}
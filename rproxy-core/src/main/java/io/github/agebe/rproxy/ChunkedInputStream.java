@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// decodes a 'Transfer-Encoding: chunked' body, https://www.rfc-editor.org/rfc/rfc9112#name-chunked-transfer-coding
+// reads return the chunk payload only and never more than the caller asked for, so chunks of any size
+// are streamed through the caller's buffer. Chunk extensions are skipped, trailer fields are collected.
+// the stream does not close the underlying stream and stops right after the last CRLF so the connection
+// can be reused.
+public class ChunkedInputStream extends HttpBodyInputStream {
+
+  private static final Logger log = LoggerFactory.getLogger(ChunkedInputStream.class);
+
+  private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+  private final HttpInputBuffer in;
+
+  // bytes left in the current chunk
+  private long remaining;
+
+  private boolean first = true;
+
+  private boolean eof;
+
+  private Map<String, String> trailers;
+
+  public ChunkedInputStream(HttpInputBuffer in) {
+    super();
+    this.in = in;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if(!nextChunk()) {
+      return -1;
+    }
+    int i = in.read();
+    if(i == -1) {
+      throw new ReverseProxyException("unexpected end of stream in chunk, '{}' bytes missing", remaining);
+    }
+    remaining--;
+    return i;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if(len == 0) {
+      return 0;
+    }
+    if(!nextChunk()) {
+      return -1;
+    }
+    int read = in.read(b, off, (int) Math.min(len, remaining));
+    if(read == -1) {
+      throw new ReverseProxyException("unexpected end of stream in chunk, '{}' bytes missing", remaining);
+    }
+    remaining -= read;
+    return read;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return eof ? 0 : (int) Math.min(remaining, in.buffered());
+  }
+
+  // true once the last chunk and the trailer section have been read
+  @Override
+  public boolean isComplete() {
+    return eof;
+  }
+
+  // trailer fields sent after the last chunk, empty until the stream is complete
+  public Map<String, String> getTrailers() {
+    return trailers != null ? trailers : Map.of();
+  }
+
+  // returns false at the end of the body
+  private boolean nextChunk() throws IOException {
+    if(eof) {
+      return false;
+    }
+    if(remaining > 0) {
+      return true;
+    }
+    if(!first) {
+      // CRLF after the chunk data
+      int lf = in.findLineEnd(MAX_LINE_LENGTH);
+      int length = lf - in.position();
+      if((lf == -1) || (length > 1) || ((length == 1) && (in.buffer()[in.position()] != '\r'))) {
+        throw new ReverseProxyException("failed to read http chunk, expected CRLF after chunk data");
+      }
+      in.consume(length + 1);
+    }
+    first = false;
+    remaining = chunkSize();
+    log.trace("next chunk size '{}' bytes", remaining);
+    if(remaining == 0) {
+      readTrailers();
+      eof = true;
+      return false;
+    }
+    return true;
+  }
+
+  // chunk-size [ chunk-ext ] CRLF
+  private long chunkSize() throws IOException {
+    int lf = in.findLineEnd(MAX_LINE_LENGTH);
+    if(lf == -1) {
+      throw new ReverseProxyException("unexpected end of stream while reading chunk size");
+    }
+    byte[] buf = in.buffer();
+    int start = in.position();
+    long size = 0;
+    int digits = 0;
+    int i = start;
+    for(;i<lf;i++) {
+      int d = Character.digit(buf[i], 16);
+      if(d == -1) {
+        break;
+      }
+      if(size > (Long.MAX_VALUE >> 4)) {
+        throw new ReverseProxyException("chunk size to large");
+      }
+      size = (size << 4) + d;
+      digits++;
+    }
+    // everything after the size is either whitespace, a chunk extension (;name=value) or the CR
+    for(;i<lf;i++) {
+      byte b = buf[i];
+      if(b == ';') {
+        break;
+      } else if((b != ' ') && (b != '\t') && (b != '\r')) {
+        digits = 0;
+        break;
+      }
+    }
+    if(digits == 0) {
+      throw new ReverseProxyException("failed to parse chunk size from '{}'",
+          new String(buf, start, lf - start, ISO_8859_1).strip());
+    }
+    in.consume(lf + 1 - start);
+    return size;
+  }
+
+  private void readTrailers() throws IOException {
+    for(;;) {
+      int lf = in.findLineEnd(MAX_LINE_LENGTH);
+      if(lf == -1) {
+        throw new ReverseProxyException("unexpected end of stream while reading chunked trailer");
+      }
+      byte[] buf = in.buffer();
+      int start = in.position();
+      int end = ((lf > start) && (buf[lf - 1] == '\r')) ? lf - 1 : lf;
+      in.consume(lf + 1 - start);
+      if(end == start) {
+        return;
+      }
+      String line = new String(buf, start, end - start, ISO_8859_1);
+      int colon = line.indexOf(':');
+      if(colon > 0) {
+        if(trailers == null) {
+          trailers = new LinkedHashMap<>();
+        }
+        String name = line.substring(0, colon).strip();
+        String value = line.substring(colon + 1).strip();
+        trailers.merge(name, value, (v1, v2) -> v1 + ", " + v2);
+        log.debug("received trailer '{}: {}'", name, value);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// collapses identical concurrent upstream requests into one (single-flight), see SingleFlight. opt in per route
+// on the @ProxyPath annotation or by the handler with set(request, coalescing) before forwarding.
+// requests are identical if they have the same method, uri and query and the same values in the selected headers,
+// Authorization and Cookie are always part of the key so responses are never shared between different users.
+// maxMemoryBytes limits the part of a shared response body that is kept in memory, the rest goes to a spool file.
+public record Coalescing(List<String> headers, long maxMemoryBytes) {
+
+  public static final String ATTRIBUTE = Coalescing.class.getName();
+
+  public static final Coalescing DEFAULT = new Coalescing(
+      List.of("Accept", "Accept-Encoding", "Accept-Language"),
+      16 * 1024 * 1024);
+
+  private static final List<String> ALWAYS = List.of("Authorization", "Cookie");
+
+  public Coalescing withHeaders(List<String> headers) {
+    return new Coalescing(headers, maxMemoryBytes);
+  }
+
+  public Coalescing withMaxMemoryBytes(long maxMemoryBytes) {
+    return new Coalescing(headers, maxMemoryBytes);
+  }
+
+  // returns null if the path does not coalesce requests
+  public static Coalescing of(ProxyPath path) {
+    if(!path.coalesce()) {
+      return null;
+    }
+    return path.coalesceHeaders().length > 0 ? DEFAULT.withHeaders(List.of(path.coalesceHeaders())) : DEFAULT;
+  }
+
+  // null if requests are not coalesced
+  public static Coalescing get(HttpServletRequest request) {
+    Object o = request.getAttribute(ATTRIBUTE);
+    return (o instanceof Coalescing c) ? c : null;
+  }
+
+  public static void set(HttpServletRequest request, Coalescing coalescing) {
+    request.setAttribute(ATTRIBUTE, coalescing);
+  }
+
+  // GET and HEAD without a body, conditional requests are sent on their own as the response depends on
+  // the client's validators
+  public static boolean isCoalescable(HttpRequestHeader request, boolean requestBody) {
+    return StringUtils.equalsAnyIgnoreCase(request.method(), "GET", "HEAD")
+        && !requestBody
+        && !CachePolicy.isConditional(request);
+  }
+
+  // responses that belong to a single user are not shared
+  public boolean isShareable(HttpHeaders headers) {
+    return (headers.getHeaders("set-cookie") == null) && !CacheControl.of(headers).isPrivate();
+  }
+
+  public String key(Origin origin, HttpRequestHeader request) {
+    StringBuilder b = new StringBuilder(128)
+        .append(request.method())
+        .append(' ')
+        .append(CachePolicy.key(origin, request));
+    appendHeaders(b, request, ALWAYS);
+    appendHeaders(b, request, headers);
+    return b.toString();
+  }
+
+  private static void appendHeaders(StringBuilder b, HttpRequestHeader request, List<String> names) {
+    for(String name : names) {
+      List<String> values = request.headers().get(name);
+      if(values != null) {
+        b.append('\n').append(name.toLowerCase()).append(':').append(String.join(",", values));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+// decides if a response body is compressed at the proxy and with which content coding.
+// only uncompressed 2xx responses with a compressible media type are compressed, if the client accepts
+// one of the configured codings and the response does not say no-transform.
+// on the way in, the upstream server is asked for a compressed body (upstreamEncodings) which is decompressed
+// at the proxy only if a content stage or the client needs the plain body.
+public class Compression {
+
+  // the encoder to compress the response with or null to send it as is
+  public static ContentEncoder negotiate(
+      CompressionConfig config,
+      List<String> acceptEncoding,
+      HttpHeaders response) {
+    if((config == null) || (acceptEncoding == null)) {
+      return null;
+    }
+    int sc = response.statusCode();
+    if((sc < 200) || (sc > 299) || (sc == 204) || (sc == 206)) {
+      return null;
+    }
+    List<String> contentEncoding = response.getHeaders("content-encoding");
+    if((contentEncoding != null) && contentEncoding.stream().anyMatch(e -> !StringUtils.equalsIgnoreCase("identity", e.strip()))) {
+      return null;
+    }
+    if(CacheControl.of(response).noTransform() || (response.getHeaders("content-range") != null)) {
+      return null;
+    }
+    Long contentLength = ObjectUtils.asLong(response.getHeader("Content-Length"));
+    if((contentLength != null) && (contentLength < config.minSize())) {
+      return null;
+    }
+    if(!isCompressible(config, response.getHeaders("content-type"))) {
+      return null;
+    }
+    return select(config, acceptEncoding);
+  }
+
+  static boolean isCompressible(CompressionConfig config, List<String> contentType) {
+    if((contentType == null) || contentType.isEmpty()) {
+      return false;
+    }
+    String type = StringUtils.substringBefore(contentType.get(0), ";").strip().toLowerCase();
+    for(String pattern : config.contentTypes()) {
+      if(pattern.startsWith("*") ? type.endsWith(pattern.substring(1))
+          : pattern.endsWith("*") ? type.startsWith(pattern.substring(0, pattern.length() - 1))
+          : type.equals(pattern)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the coding with the highest q-value the client accepts, ties go to the configured order.
+  static ContentEncoder select(CompressionConfig config, List<String> acceptEncoding) {
+    Map<String, Double> accepted = accepted(acceptEncoding);
+    ContentEncoder best = null;
+    double bestQ = 0;
+    for(String name : config.encodings()) {
+      ContentEncoder encoder = ContentEncoders.get(name);
+      Double q = accepted.getOrDefault(name.toLowerCase(), accepted.get("*"));
+      if((encoder != null) && (q != null) && (q > bestQ)) {
+        best = encoder;
+        bestQ = q;
+      }
+    }
+    return best;
+  }
+
+  // true if the client accepts the coding, without Accept-Encoding only the identity is safe
+  public static boolean accepts(List<String> acceptEncoding, String coding) {
+    if(acceptEncoding == null) {
+      return false;
+    }
+    Map<String, Double> accepted = accepted(acceptEncoding);
+    Double q = accepted.getOrDefault(coding.toLowerCase(), accepted.get("*"));
+    return (q != null) && (q > 0);
+  }
+
+  // coding name to q-value, https://www.rfc-editor.org/rfc/rfc9110#name-accept-encoding
+  private static Map<String, Double> accepted(List<String> acceptEncoding) {
+    Map<String, Double> accepted = new HashMap<>();
+    for(String value : acceptEncoding) {
+      for(String coding : StringUtils.split(value, ',')) {
+        String name = StringUtils.substringBefore(coding, ";").strip().toLowerCase();
+        double q = 1;
+        for(String param : StringUtils.split(StringUtils.substringAfter(coding, ";"), ';')) {
+          if(StringUtils.startsWithIgnoreCase(param.strip(), "q=")) {
+            try {
+              q = Double.parseDouble(param.strip().substring(2));
+            } catch(NumberFormatException e) {
+              q = 0;
+            }
+          }
+        }
+        if(!name.isEmpty()) {
+          accepted.put(name, q);
+        }
+      }
+    }
+    return accepted;
+  }
+
+  // asks the upstream server for a compressed body instead of what the client accepts, relay decompresses it
+  // if needed. range requests are left alone, the ranges would refer to the compressed body.
+  public static HttpRequestHeader upstreamRequest(CompressionConfig config, HttpRequestHeader request) {
+    if((config == null) || config.upstreamEncodings().isEmpty() || request.headers().containsKey("Range")) {
+      return request;
+    }
+    List<String> codings = new ArrayList<>();
+    for(String name : config.upstreamEncodings()) {
+      ContentEncoder encoder = ContentEncoders.get(name);
+      if(encoder != null) {
+        codings.add(encoder.name());
+      }
+    }
+    if(codings.isEmpty()) {
+      return request;
+    }
+    HeaderMap m = new HeaderMap(request.headers());
+    m.put("Accept-Encoding", List.of(String.join(", ", codings)));
+    return new HttpRequestHeader(request.method(), request.requestURI(), request.queryString(), m);
+  }
+
+  // the content coding of the body or null if it is not encoded. bodies with more than one coding
+  // applied are reported as null too, they are passed on as they are.
+  public static String contentCoding(HttpHeaders headers) {
+    List<String> contentEncoding = headers.getHeaders("content-encoding");
+    if(contentEncoding == null) {
+      return null;
+    }
+    String coding = null;
+    for(String value : contentEncoding) {
+      for(String c : StringUtils.split(value, ',')) {
+        c = c.strip();
+        if(c.isEmpty() || StringUtils.equalsIgnoreCase("identity", c)) {
+          continue;
+        }
+        if(coding != null) {
+          return null;
+        }
+        coding = c;
+      }
+    }
+    return coding;
+  }
+
+  // the response headers for the compressed body
+  public static HttpHeaders encodedHeaders(HttpHeaders headers, ContentEncoder encoder) {
+    HeaderMap m = new HeaderMap(headers.headers());
+    m.put("Content-Encoding", List.of(encoder.name()));
+    return transformed(headers, m);
+  }
+
+  // the response headers for the decompressed body
+  public static HttpHeaders decodedHeaders(HttpHeaders headers) {
+    HeaderMap m = new HeaderMap(headers.headers());
+    m.remove("Content-Encoding");
+    return transformed(headers, m);
+  }
+
+  private static HttpHeaders transformed(HttpHeaders headers, HeaderMap m) {
+    m.remove("Content-Length");
+    List<String> vary = m.get("Vary");
+    if((vary == null) || vary.stream().noneMatch(v -> StringUtils.containsIgnoreCase(v, "accept-encoding"))) {
+      List<String> newVary = new ArrayList<>(vary != null ? vary : List.of());
+      newVary.add("Accept-Encoding");
+      m.put("Vary", newVary);
+    }
+    // the transformed body is a different representation, https://www.rfc-editor.org/rfc/rfc9110#name-etag
+    List<String> etag = m.get("ETag");
+    if((etag != null) && (etag.size() == 1) && etag.get(0).startsWith("\"")) {
+      m.put("ETag", List.of("W/" + etag.get(0)));
+    }
+    return new HttpHeaders(headers.version(), headers.statusCode(), headers.status(), m);
+  }
+
+  // the stream to read the decompressed body from or null if the coding can't be decoded.
+  // closing it releases the decoder but leaves in open.
+  public static InputStream decode(ContentEncoder encoder, InputStream in) throws IOException {
+    return encoder.decode(new FilterInputStream(in) {
+
+      @Override
+      public void close() throws IOException {
+        // the body stream is owned by the caller
+      }
+
+    });
+  }
+
+  // the stream to write the body to, closing it finishes the compression but leaves out open
+  public static OutputStream open(ContentEncoder encoder, int level, OutputStream out) throws IOException {
+    return encoder.open(new OutputStream() {
+
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        out.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        out.flush();
+      }
+
+    }, level);
+  }
+
+}
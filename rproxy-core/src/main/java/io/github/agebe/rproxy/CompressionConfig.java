@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+// compression of response bodies at the proxy, see Compression.
+// - encodings: the content codings to use in order of preference, codings without an encoder are skipped
+// - minSize: responses with a smaller Content-Length are sent as is, responses without one are always compressed
+//   unless they were decompressed at the proxy, those are checked by reading up to minSize of the body
+// - level: compression level, 1 (fast) to 9 (small), -1 for the encoder's default
+// - contentTypes: media types to compress, 'text/*' matches by prefix and '*+json' by suffix
+// - upstreamEncodings: the codings requested from the upstream server (Accept-Encoding), empty to pass on the
+//   client's Accept-Encoding. Bodies are decompressed at the proxy for content stages and for clients that
+//   don't accept the coding.
+public record CompressionConfig(
+    List<String> encodings,
+    long minSize,
+    int level,
+    List<String> contentTypes,
+    List<String> upstreamEncodings) {
+
+  public static final CompressionConfig DEFAULT = new CompressionConfig(
+      List.of("br", "zstd", "gzip", "deflate"),
+      1024,
+      Deflater.DEFAULT_COMPRESSION,
+      List.of(
+          "text/*",
+          "application/json",
+          "application/javascript",
+          "application/xml",
+          "application/wasm",
+          "image/svg+xml",
+          "*+json",
+          "*+xml"),
+      List.of("gzip", "deflate"));
+
+  public CompressionConfig {
+    encodings = List.copyOf(encodings);
+    contentTypes = List.copyOf(contentTypes);
+    upstreamEncodings = List.copyOf(upstreamEncodings);
+  }
+
+  public CompressionConfig withEncodings(List<String> encodings) {
+    return new CompressionConfig(encodings, minSize, level, contentTypes, upstreamEncodings);
+  }
+
+  public CompressionConfig withMinSize(long minSize) {
+    return new CompressionConfig(encodings, minSize, level, contentTypes, upstreamEncodings);
+  }
+
+  public CompressionConfig withLevel(int level) {
+    return new CompressionConfig(encodings, minSize, level, contentTypes, upstreamEncodings);
+  }
+
+  public CompressionConfig withContentTypes(List<String> contentTypes) {
+    return new CompressionConfig(encodings, minSize, level, contentTypes, upstreamEncodings);
+  }
+
+  public CompressionConfig withUpstreamEncodings(List<String> upstreamEncodings) {
+    return new CompressionConfig(encodings, minSize, level, contentTypes, upstreamEncodings);
+  }
+
+}
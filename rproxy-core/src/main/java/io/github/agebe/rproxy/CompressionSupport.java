@@ -0,0 +1,29 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// the compression config used by ReverseProxy, null (the default) disables compression at the proxy
+public class CompressionSupport {
+
+  private static volatile CompressionConfig config;
+
+  public static CompressionConfig getConfig() {
+    return config;
+  }
+
+  public static void setConfig(CompressionConfig config) {
+    CompressionSupport.config = config;
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// keeps idle HTTP/1.1 persistent connections to upstream servers per origin (scheme, host, port)
+public class ConnectionPool implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+  private final ConnectionPoolConfig config;
+
+  private final Map<Origin, OriginPool> pools = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService evictor;
+
+  private volatile boolean closed;
+
+  private class OriginPool {
+
+    private final Origin origin;
+
+    // the metrics tag
+    private final String upstream;
+
+    // most recently used connection first, older connections are more likely to be stale
+    private final Deque<UpstreamConnection> idle = new ArrayDeque<>();
+
+    private final Semaphore permits;
+
+    private final AtomicInteger leased = new AtomicInteger();
+
+    public OriginPool(Origin origin) {
+      this.origin = origin;
+      this.upstream = origin.toString();
+      this.permits = config.maxTotalPerOrigin() > 0 ? new Semaphore(config.maxTotalPerOrigin(), true) : null;
+    }
+
+    private void acquirePermit() {
+      if(permits == null) {
+        return;
+      }
+      try {
+        if(!permits.tryAcquire(config.acquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+          throw new BadGatewayException("connection pool for '{}' exhausted, max '{}' connections",
+              origin, config.maxTotalPerOrigin());
+        }
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BadGatewayException("interrupted while waiting for a connection to '{}'", origin, e);
+      }
+    }
+
+    private void releasePermit() {
+      if(permits != null) {
+        permits.release();
+      }
+    }
+
+    private synchronized UpstreamConnection pollIdle() {
+      UpstreamConnection c = idle.pollFirst();
+      if(c != null) {
+        idleChanged();
+      }
+      return c;
+    }
+
+    private synchronized boolean offerIdle(UpstreamConnection connection) {
+      if(closed || (idle.size() >= config.maxIdlePerOrigin())) {
+        return false;
+      }
+      idle.offerFirst(connection);
+      idleChanged();
+      return true;
+    }
+
+    private synchronized List<UpstreamConnection> removeExpired(long now, long idleTimeoutNanos) {
+      List<UpstreamConnection> expired = new ArrayList<>();
+      Iterator<UpstreamConnection> iter = idle.iterator();
+      while(iter.hasNext()) {
+        UpstreamConnection c = iter.next();
+        if(c.isExpired(now, idleTimeoutNanos)) {
+          iter.remove();
+          expired.add(c);
+        }
+      }
+      if(!expired.isEmpty()) {
+        idleChanged();
+      }
+      return expired;
+    }
+
+    private synchronized List<UpstreamConnection> removeAll() {
+      List<UpstreamConnection> all = new ArrayList<>(idle);
+      idle.clear();
+      idleChanged();
+      return all;
+    }
+
+    private synchronized int idleCount() {
+      return idle.size();
+    }
+
+    // called with the lock held
+    private void idleChanged() {
+      MetricsSupport.getMetrics().gauge(Metrics.POOL_IDLE, "upstream", upstream, "pool", "blocking").set(idle.size());
+    }
+
+    private void leased(int delta) {
+      leased.addAndGet(delta);
+      MetricsSupport.getMetrics().gauge(Metrics.POOL_LEASED, "upstream", upstream, "pool", "blocking").add(delta);
+    }
+
+  }
+
+  public ConnectionPool(ConnectionPoolConfig config) {
+    super();
+    this.config = config;
+    if(config.isPoolingEnabled()) {
+      evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rproxy-connection-evictor");
+        t.setDaemon(true);
+        return t;
+      });
+      long period = Math.max(1000, config.idleTimeout().toMillis() / 2);
+      evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    } else {
+      evictor = null;
+    }
+  }
+
+  public ConnectionPoolConfig getConfig() {
+    return config;
+  }
+
+  private OriginPool pool(Origin origin) {
+    return pools.computeIfAbsent(origin, OriginPool::new);
+  }
+
+  // returns an idle connection for the origin or opens a new one using the connector
+  public UpstreamConnection acquire(Origin origin, Function<Origin, Socket> connector) {
+    if(closed) {
+      throw new ReverseProxyException("connection pool is closed");
+    }
+    OriginPool pool = pool(origin);
+    pool.acquirePermit();
+    try {
+      long idleTimeoutNanos = config.idleTimeout().toNanos();
+      long validateNanos = config.validateAfterInactivity().toNanos();
+      for(;;) {
+        UpstreamConnection c = pool.pollIdle();
+        if(c == null) {
+          break;
+        }
+        long now = System.nanoTime();
+        if(c.isExpired(now, idleTimeoutNanos)) {
+          log.debug("closing expired idle connection '{}'", c);
+          c.close();
+        } else if((c.idleNanos(now) >= validateNanos) && c.isStale()) {
+          log.debug("closing stale idle connection '{}'", c);
+          c.close();
+        } else if(c.lease()) {
+          pool.leased(1);
+          log.debug("reusing connection '{}'", c);
+          return c;
+        }
+      }
+      UpstreamConnection c = new UpstreamConnection(origin, connector.apply(origin));
+      c.lease();
+      pool.leased(1);
+      MetricsSupport.getMetrics().counter(Metrics.POOL_CREATED, "upstream", pool.upstream, "pool", "blocking").increment();
+      log.debug("opened new connection to '{}'", origin);
+      return c;
+    } catch(RuntimeException e) {
+      pool.releasePermit();
+      throw e;
+    }
+  }
+
+  // returns the connection to the pool if it can be reused, closes it otherwise
+  public void release(UpstreamConnection connection, boolean reusable) {
+    if(!connection.unlease()) {
+      log.warn("connection '{}' released but not leased", connection);
+      return;
+    }
+    OriginPool pool = pool(connection.getOrigin());
+    pool.leased(-1);
+    try {
+      if(!(reusable && config.isPoolingEnabled() && pool.offerIdle(connection))) {
+        log.debug("closing connection '{}'", connection);
+        connection.close();
+      }
+    } finally {
+      pool.releasePermit();
+    }
+  }
+
+  public void evictIdle() {
+    long now = System.nanoTime();
+    long idleTimeoutNanos = config.idleTimeout().toNanos();
+    pools.values().forEach(pool -> pool.removeExpired(now, idleTimeoutNanos).forEach(c -> {
+      log.debug("evicting idle connection '{}'", c);
+      c.close();
+    }));
+  }
+
+  public int getIdleCount(Origin origin) {
+    OriginPool pool = pools.get(origin);
+    return pool != null ? pool.idleCount() : 0;
+  }
+
+  public int getLeasedCount(Origin origin) {
+    OriginPool pool = pools.get(origin);
+    return pool != null ? pool.leased.get() : 0;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if(evictor != null) {
+      evictor.shutdownNow();
+    }
+    pools.values().forEach(pool -> pool.removeAll().forEach(UpstreamConnection::close));
+  }
+
+}
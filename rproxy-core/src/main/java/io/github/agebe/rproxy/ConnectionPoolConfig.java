@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.Duration;
+
+// maxIdlePerOrigin: number of idle keep-alive connections kept per origin, 0 disables pooling
+// maxTotalPerOrigin: max number of connections (idle and in use) per origin, 0 means unlimited
+// idleTimeout: idle connections are closed after this time
+// acquireTimeout: how long to wait for a connection when maxTotalPerOrigin is reached
+// validateAfterInactivity: idle connections are checked for staleness before reuse after this time
+public record ConnectionPoolConfig(
+    int maxIdlePerOrigin,
+    int maxTotalPerOrigin,
+    Duration idleTimeout,
+    Duration acquireTimeout,
+    Duration validateAfterInactivity) {
+
+  public static final ConnectionPoolConfig DEFAULT = new ConnectionPoolConfig(
+      32,
+      0,
+      Duration.ofSeconds(30),
+      Duration.ofSeconds(10),
+      Duration.ofSeconds(1));
+
+  public ConnectionPoolConfig {
+    if(maxIdlePerOrigin < 0) {
+      throw new ReverseProxyException("maxIdlePerOrigin must not be negative");
+    }
+    if(maxTotalPerOrigin < 0) {
+      throw new ReverseProxyException("maxTotalPerOrigin must not be negative");
+    }
+    if(idleTimeout == null || acquireTimeout == null || validateAfterInactivity == null) {
+      throw new ReverseProxyException("pool timeouts must not be null");
+    }
+  }
+
+  // connections are closed after every request, this is how the proxy worked before pooling
+  public static ConnectionPoolConfig disabled() {
+    return new ConnectionPoolConfig(0, 0, Duration.ZERO, DEFAULT.acquireTimeout(), Duration.ZERO);
+  }
+
+  public boolean isPoolingEnabled() {
+    return maxIdlePerOrigin > 0;
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// hash ring with virtual nodes, adding or removing an upstream only moves the keys of that upstream.
+// requests without a key are spread randomly.
+public class ConsistentHashBalancer implements LoadBalancer {
+
+  private static final int VIRTUAL_NODES = 128;
+
+  private record Ring(List<Upstream> upstreams, TreeMap<Long, Upstream> nodes) {}
+
+  private final Function<HttpServletRequest, String> key;
+
+  // the ring for the last list of upstreams, rebuilt if the list changes (e.g. unhealthy upstreams removed)
+  private volatile Ring ring;
+
+  public ConsistentHashBalancer(Function<HttpServletRequest, String> key) {
+    super();
+    this.key = key;
+  }
+
+  @Override
+  public Upstream select(List<Upstream> upstreams, HttpServletRequest request) {
+    String k = key.apply(request);
+    if(k == null) {
+      return upstreams.get(ThreadLocalRandom.current().nextInt(upstreams.size()));
+    }
+    TreeMap<Long, Upstream> nodes = ring(upstreams).nodes();
+    Map.Entry<Long, Upstream> e = nodes.ceilingEntry(hash(k));
+    return (e != null ? e : nodes.firstEntry()).getValue();
+  }
+
+  private Ring ring(List<Upstream> upstreams) {
+    Ring r = ring;
+    if((r == null) || ((r.upstreams() != upstreams) && !r.upstreams().equals(upstreams))) {
+      TreeMap<Long, Upstream> nodes = new TreeMap<>();
+      for(Upstream u : upstreams) {
+        for(int i=0;i<VIRTUAL_NODES;i++) {
+          nodes.put(hash(u.getBaseUrl() + "#" + i), u);
+        }
+      }
+      r = new Ring(upstreams, nodes);
+      ring = r;
+    }
+    return r;
+  }
+
+  // 64 bit FNV-1a with a final mix, String.hashCode does not spread similar keys well enough
+  static long hash(String s) {
+    long h = 0xcbf29ce484222325L;
+    for(byte b : s.getBytes(UTF_8)) {
+      h ^= (b & 0xff);
+      h *= 0x100000001b3L;
+    }
+    h ^= (h >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    h ^= (h >>> 33);
+    return h;
+  }
+
+}
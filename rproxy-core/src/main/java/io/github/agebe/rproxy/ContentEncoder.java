@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// a content coding the proxy can compress response bodies with, https://www.rfc-editor.org/rfc/rfc9110#name-content-codings
+// gzip and deflate are built in, others (e.g. br, zstd) can be added with ContentEncoders.register or as a
+// service (META-INF/services/io.github.agebe.rproxy.ContentEncoder) if a library for them is on the classpath.
+public interface ContentEncoder {
+
+  // the content coding name as used in Accept-Encoding and Content-Encoding
+  String name();
+
+  // returns a stream that compresses everything written to it into out. flush should emit what has been
+  // compressed so far (sync flush) so streamed responses keep flowing. close finishes the compressed
+  // stream and closes out.
+  OutputStream open(OutputStream out, int level) throws IOException;
+
+  // returns a stream that decompresses in while it is read, closing it closes in.
+  // null if the coding can only be encoded, the body is passed on compressed in that case.
+  default InputStream decode(InputStream in) throws IOException {
+    return null;
+  }
+
+  ContentEncoder GZIP = new ContentEncoder() {
+
+    @Override
+    public String name() {
+      return "gzip";
+    }
+
+    @Override
+    public OutputStream open(OutputStream out, int level) throws IOException {
+      return new GZIPOutputStream(out, 8192, true) {
+        {
+          def.setLevel(level);
+        }
+      };
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+      return new GZIPInputStream(in, 8192);
+    }
+
+  };
+
+  // 'deflate' in http is the zlib format, https://www.rfc-editor.org/rfc/rfc9110#name-deflate-coding
+  ContentEncoder DEFLATE = new ContentEncoder() {
+
+    @Override
+    public String name() {
+      return "deflate";
+    }
+
+    @Override
+    public OutputStream open(OutputStream out, int level) throws IOException {
+      return new DeflaterOutputStream(out, new Deflater(level), 8192, true) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            def.end();
+          }
+        }
+      };
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+      return new InflaterInputStream(in, new Inflater(), 8192) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            inf.end();
+          }
+        }
+      };
+    }
+
+  };
+
+}
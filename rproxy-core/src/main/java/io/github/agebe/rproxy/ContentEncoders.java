@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// the available content encoders by name, the built in ones plus the ones found with the ServiceLoader
+public class ContentEncoders {
+
+  private static final Logger log = LoggerFactory.getLogger(ContentEncoders.class);
+
+  private static final Map<String, ContentEncoder> encoders = new ConcurrentHashMap<>();
+
+  static {
+    register(ContentEncoder.GZIP);
+    register(ContentEncoder.DEFLATE);
+    try {
+      for(ContentEncoder encoder : ServiceLoader.load(ContentEncoder.class)) {
+        register(encoder);
+      }
+    } catch(Exception | ServiceConfigurationError e) {
+      log.warn("failed to load content encoders", e);
+    }
+  }
+
+  public static void register(ContentEncoder encoder) {
+    log.debug("content encoder '{}' registered", encoder.name());
+    encoders.put(encoder.name().toLowerCase(), encoder);
+  }
+
+  // null if there is no encoder for the content coding
+  public static ContentEncoder get(String name) {
+    return encoders.get(name.toLowerCase());
+  }
+
+}
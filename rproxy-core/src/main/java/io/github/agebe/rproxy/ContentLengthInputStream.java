@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// reads a body of known length, never reads beyond the body so the connection can be reused
+public class ContentLengthInputStream extends HttpBodyInputStream {
+
+  private final InputStream in;
+
+  private final long length;
+
+  private long remaining;
+
+  public ContentLengthInputStream(InputStream in, long length) {
+    super();
+    this.in = in;
+    this.length = length;
+    this.remaining = length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if(remaining <= 0) {
+      return -1;
+    }
+    int i = in.read();
+    if(i != -1) {
+      remaining--;
+    }
+    return i;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if(len == 0) {
+      return 0;
+    }
+    if(remaining <= 0) {
+      return -1;
+    }
+    int read = in.read(b, off, (int) Math.min(len, remaining));
+    if(read > 0) {
+      remaining -= read;
+    }
+    return read;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(remaining, in.available());
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public long getRead() {
+    return length - remaining;
+  }
+
+  @Override
+  public boolean isComplete() {
+    return remaining == 0;
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// total time limit on a request. blocking reads and writes can't be interrupted, so once the deadline
+// has passed the watchdog closes the upstream connection which makes them fail right away.
+public class Deadline {
+
+  private static final Logger log = LoggerFactory.getLogger(Deadline.class);
+
+  private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "rproxy-deadline");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private static final Deadline NONE = new Deadline(0);
+
+  private final long deadlineNanos;
+
+  private volatile Closeable target;
+
+  private volatile boolean expired;
+
+  private ScheduledFuture<?> watchdog;
+
+  private Deadline(long deadlineNanos) {
+    super();
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  // starts now, a zero duration means no deadline
+  public static Deadline start(Duration duration) {
+    if(duration.isZero()) {
+      return NONE;
+    }
+    Deadline deadline = new Deadline(System.nanoTime() + duration.toNanos());
+    deadline.watchdog = schedule(duration, deadline::expire);
+    return deadline;
+  }
+
+  public static ScheduledFuture<?> schedule(Duration delay, Runnable task) {
+    return timer.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private void expire() {
+    expired = true;
+    Closeable c = target;
+    if(c != null) {
+      log.debug("deadline exceeded, closing '{}'", c);
+      try {
+        c.close();
+      } catch(Exception e) {
+        log.debug("failed to close '{}'", c, e);
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return this != NONE;
+  }
+
+  public boolean isExpired() {
+    return expired || (isEnabled() && (System.nanoTime() - deadlineNanos >= 0));
+  }
+
+  // the time left but at most the timeout, a zero timeout means no timeout
+  public Duration cap(Duration timeout) {
+    if(!isEnabled()) {
+      return timeout;
+    }
+    long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    return (timeout.isZero() || (timeout.toMillis() > remaining)) ? Duration.ofMillis(remaining) : timeout;
+  }
+
+  public void check() {
+    if(isExpired()) {
+      throw new GatewayTimeoutException("request deadline exceeded");
+    }
+  }
+
+  // the resource that gets closed once the deadline has passed
+  public void watch(Closeable target) {
+    if(isEnabled()) {
+      this.target = target;
+      if(expired) {
+        expire();
+      }
+    }
+  }
+
+  public void cancel() {
+    if(watchdog != null) {
+      watchdog.cancel(false);
+    }
+    target = null;
+  }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// response cache on local disk for large bodies, bounded by bytes with LRU eviction.
+// every entry is a pair of files in the cache directory, '<id>.body' with the body (served memory mapped, see
+// MappedCacheBody) and '<id>.meta' with the key, the response headers and the freshness information.
+// the meta files are the index, it is rebuilt from them on startup so the cache survives a restart.
+// both files are written to a temporary file first and renamed so a crash does not leave partial entries.
+public class DiskResponseCache implements ResponseCache {
+
+  private static final Logger log = LoggerFactory.getLogger(DiskResponseCache.class);
+
+  private static final int META_VERSION = 1;
+
+  private static final String BODY = ".body";
+
+  private static final String META = ".meta";
+
+  private static final String TMP = ".tmp";
+
+  private record Entry(String id, CachedResponse response) {}
+
+  private record Meta(String key, CachedResponse response) {}
+
+  private final Path dir;
+
+  private final long maxBytes;
+
+  private final long maxEntryBytes;
+
+  // access ordered, eldest first
+  private final LinkedHashMap<String, List<Entry>> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  private long bytes;
+
+  // a single response takes up to 1/4 of the cache
+  public DiskResponseCache(Path dir, long maxBytes) {
+    this(dir, maxBytes, maxBytes / 4);
+  }
+
+  public DiskResponseCache(Path dir, long maxBytes, long maxEntryBytes) {
+    super();
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.maxEntryBytes = maxEntryBytes;
+    try {
+      Files.createDirectories(dir);
+      load();
+    } catch(IOException e) {
+      throw new ReverseProxyException("failed to open disk cache in '{}'", dir, e);
+    }
+  }
+
+  private void load() throws IOException {
+    record Loaded(String id, Meta meta) {}
+    List<Loaded> loaded = new ArrayList<>();
+    List<Path> bodies = new ArrayList<>();
+    try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+      for(Path p : ds) {
+        String name = p.getFileName().toString();
+        if(name.endsWith(TMP)) {
+          // left over from a crash or an aborted write
+          Files.deleteIfExists(p);
+        } else if(name.endsWith(BODY)) {
+          bodies.add(p);
+        } else if(name.endsWith(META)) {
+          String id = name.substring(0, name.length() - META.length());
+          try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            loaded.add(new Loaded(id, readMeta(in, bodyFile(id))));
+          } catch(Exception e) {
+            log.warn("failed to read cache entry '{}', removing", p, e);
+            delete(id);
+          }
+        }
+      }
+    }
+    // restore the LRU order as good as we can, oldest responses are evicted first
+    loaded.sort(Comparator.comparingLong(l -> l.meta().response().responseTime()));
+    for(Loaded l : loaded) {
+      CachedResponse response = l.meta().response();
+      Path body = bodyFile(l.id());
+      if(!Files.exists(body) || (Files.size(body) != response.body().length())) {
+        log.warn("cached body '{}' missing or does not match its meta data, removing", body);
+        delete(l.id());
+      } else {
+        entries.computeIfAbsent(l.meta().key(), k -> new ArrayList<>(1)).add(new Entry(l.id(), response));
+        bytes += response.size();
+      }
+    }
+    // bodies without meta data, e.g. crashed between writing the body and the meta file
+    for(Path p : bodies) {
+      String name = p.getFileName().toString();
+      if(!Files.exists(metaFile(name.substring(0, name.length() - BODY.length())))) {
+        Files.deleteIfExists(p);
+      }
+    }
+    // entries over the budget are removed from disk too, they would be loaded again on the next start otherwise
+    List<String> evicted;
+    synchronized(this) {
+      evicted = evict();
+    }
+    evicted.forEach(this::delete);
+    log.info("disk cache '{}' loaded, '{}' resources, '{}' bytes, '{}' evicted",
+        dir, entries.size(), bytes, evicted.size());
+  }
+
+  private Path bodyFile(String id) {
+    return dir.resolve(id + BODY);
+  }
+
+  private Path metaFile(String id) {
+    return dir.resolve(id + META);
+  }
+
+  private static String newId() {
+    return UUID.randomUUID().toString();
+  }
+
+  private static String id(MappedCacheBody body) {
+    String name = body.getPath().getFileName().toString();
+    return name.substring(0, name.length() - BODY.length());
+  }
+
+  @Override
+  public synchronized CachedResponse get(String key, HttpRequestHeader request) {
+    List<Entry> variants = entries.get(key);
+    if(variants != null) {
+      for(Entry e : variants) {
+        if(e.response().matches(request)) {
+          return e.response();
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public CacheWriter writer(String key, long contentLength) {
+    if(contentLength > maxEntryBytes) {
+      return null;
+    }
+    String id = newId();
+    return new FileCacheWriter(dir.resolve(id + BODY + TMP), bodyFile(id), maxEntryBytes);
+  }
+
+  @Override
+  public void put(String key, CachedResponse response) {
+    if(response.size() > maxEntryBytes) {
+      return;
+    }
+    try {
+      String id;
+      CachedResponse stored = response;
+      if((response.body() instanceof MappedCacheBody m) && dir.equals(m.getPath().getParent())) {
+        // written by our own writer
+        id = id(m);
+      } else {
+        // e.g. a body kept in memory so far, copy it to a file
+        CacheWriter writer = writer(key, response.body().length());
+        try(InputStream in = response.body().open()) {
+          byte[] buf = new byte[64 * 1024];
+          for(int read = in.read(buf);read != -1;read = in.read(buf)) {
+            if(!writer.write(buf, 0, read)) {
+              return;
+            }
+          }
+        } catch(IOException e) {
+          writer.abort();
+          throw e;
+        }
+        MappedCacheBody body = (MappedCacheBody)writer.finish();
+        stored = new CachedResponse(
+            response.headers(),
+            body,
+            response.responseTime(),
+            response.freshUntil(),
+            response.vary());
+        id = id(body);
+      }
+      writeMeta(id, key, stored);
+      List<String> replaced = new ArrayList<>();
+      synchronized(this) {
+        List<Entry> variants = entries.computeIfAbsent(key, k -> new ArrayList<>(1));
+        Iterator<Entry> iter = variants.iterator();
+        while(iter.hasNext()) {
+          Entry e = iter.next();
+          if(e.response().vary().equals(stored.vary())) {
+            iter.remove();
+            bytes -= e.response().size();
+            // a refreshed response keeps its body file
+            if(!e.id().equals(id)) {
+              replaced.add(e.id());
+            }
+          }
+        }
+        variants.add(new Entry(id, stored));
+        bytes += stored.size();
+        replaced.addAll(evict());
+      }
+      replaced.forEach(this::delete);
+      log.debug("cached '{}' on disk as '{}', '{}' bytes", key, id, stored.body().length());
+    } catch(Exception e) {
+      log.warn("failed to store '{}' in disk cache", key, e);
+    }
+  }
+
+  // returns the ids of the evicted entries, the files are deleted outside the lock
+  private List<String> evict() {
+    List<String> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, List<Entry>>> iter = entries.entrySet().iterator();
+    while((bytes > maxBytes) && iter.hasNext()) {
+      Map.Entry<String, List<Entry>> eldest = iter.next();
+      iter.remove();
+      for(Entry e : eldest.getValue()) {
+        bytes -= e.response().size();
+        evicted.add(e.id());
+      }
+      log.debug("evicted '{}'", eldest.getKey());
+    }
+    return evicted;
+  }
+
+  @Override
+  public void remove(String key) {
+    List<Entry> variants;
+    synchronized(this) {
+      variants = entries.remove(key);
+      if(variants != null) {
+        for(Entry e : variants) {
+          bytes -= e.response().size();
+        }
+      }
+    }
+    if(variants != null) {
+      variants.forEach(e -> delete(e.id()));
+    }
+  }
+
+  // readers that have the body mapped keep reading from the mapping
+  private void delete(String id) {
+    try {
+      Files.deleteIfExists(metaFile(id));
+      Files.deleteIfExists(bodyFile(id));
+    } catch(IOException e) {
+      log.debug("failed to delete cache entry '{}'", id, e);
+    }
+  }
+
+  private void writeMeta(String id, String key, CachedResponse response) throws IOException {
+    Path tmp = dir.resolve(id + META + TMP);
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(META_VERSION);
+      out.writeUTF(key);
+      out.writeLong(response.responseTime());
+      out.writeLong(response.freshUntil());
+      out.writeLong(response.body().length());
+      out.writeInt(response.vary().size());
+      for(Map.Entry<String, String> me : response.vary().entrySet()) {
+        out.writeUTF(me.getKey());
+        out.writeUTF(me.getValue());
+      }
+      HttpHeaders headers = response.headers();
+      out.writeUTF(headers.version());
+      out.writeInt(headers.statusCode());
+      out.writeUTF(headers.status() != null ? headers.status() : "");
+      out.writeInt(headers.headers().size());
+      for(Map.Entry<String, List<String>> me : headers.headers().entrySet()) {
+        List<String> values = me.getValue() != null ? me.getValue() : List.of();
+        out.writeUTF(me.getKey());
+        out.writeInt(values.size());
+        for(String v : values) {
+          out.writeUTF(v);
+        }
+      }
+    }
+    Files.move(tmp, metaFile(id), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static Meta readMeta(DataInputStream in, Path body) throws IOException {
+    int version = in.readInt();
+    if(version != META_VERSION) {
+      throw new ReverseProxyException("unsupported cache meta data version '{}'", version);
+    }
+    String key = in.readUTF();
+    long responseTime = in.readLong();
+    long freshUntil = in.readLong();
+    long length = in.readLong();
+    int varyCount = in.readInt();
+    Map<String, String> vary = new LinkedHashMap<>();
+    for(int i=0;i<varyCount;i++) {
+      vary.put(in.readUTF(), in.readUTF());
+    }
+    String httpVersion = in.readUTF();
+    int statusCode = in.readInt();
+    String status = in.readUTF();
+    int headerCount = in.readInt();
+    HeaderMap headers = new HeaderMap();
+    for(int i=0;i<headerCount;i++) {
+      String name = in.readUTF();
+      int count = in.readInt();
+      for(int j=0;j<count;j++) {
+        headers.add(name, in.readUTF());
+      }
+    }
+    return new Meta(key, new CachedResponse(
+        new HttpHeaders(httpVersion, statusCode, status, headers),
+        new MappedCacheBody(body, length),
+        responseTime,
+        freshUntil,
+        vary));
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized int getCount() {
+    return entries.size();
+  }
+
+}
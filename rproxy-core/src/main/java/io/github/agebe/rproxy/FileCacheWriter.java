@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// spills a response body to a file while it is relayed to the client. the body is written to a temporary file
+// that is renamed once the body is complete, so a crash never leaves a truncated body behind.
+public class FileCacheWriter implements CacheWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(FileCacheWriter.class);
+
+  private final Path tmp;
+
+  private final Path target;
+
+  private final long maxLength;
+
+  private OutputStream out;
+
+  private long length;
+
+  public FileCacheWriter(Path tmp, Path target, long maxLength) {
+    super();
+    this.tmp = tmp;
+    this.target = target;
+    this.maxLength = maxLength;
+  }
+
+  @Override
+  public boolean write(byte[] b, int off, int len) {
+    if(length < 0) {
+      return false;
+    }
+    if(length + len > maxLength) {
+      log.debug("response body exceeds max length '{}', not cached", maxLength);
+      abort();
+      return false;
+    }
+    try {
+      if(out == null) {
+        out = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024);
+      }
+      out.write(b, off, len);
+      length += len;
+      return true;
+    } catch(IOException e) {
+      log.warn("failed to write cache file '{}'", tmp, e);
+      abort();
+      return false;
+    }
+  }
+
+  @Override
+  public CacheBody finish() {
+    if(length < 0) {
+      throw new ReverseProxyException("cache writer aborted");
+    }
+    try {
+      if(out != null) {
+        out.close();
+        out = null;
+      } else {
+        Files.createFile(tmp);
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      return new MappedCacheBody(target, length);
+    } catch(IOException e) {
+      abort();
+      throw new ReverseProxyException("failed to finish cache file '{}'", target, e);
+    }
+  }
+
+  @Override
+  public void abort() {
+    length = -1;
+    try {
+      if(out != null) {
+        out.close();
+        out = null;
+      }
+      Files.deleteIfExists(tmp);
+    } catch(IOException e) {
+      log.debug("failed to delete '{}'", tmp, e);
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// appends the spans as json lines to a file. Writes on the request thread, meant for tests and debugging,
+// not for production traffic.
+public class FileSpanExporter implements SpanExporter, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(FileSpanExporter.class);
+
+  private final Path path;
+
+  private final Writer out;
+
+  public FileSpanExporter(Path path) {
+    super();
+    this.path = path;
+    try {
+      this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch(IOException e) {
+      throw new ReverseProxyException("failed to open span file '{}'", path, e);
+    }
+  }
+
+  @Override
+  public void export(Span span) {
+    StringBuilder b = new StringBuilder(256);
+    span.appendTo(b);
+    synchronized(out) {
+      try {
+        out.append(b);
+        out.flush();
+      } catch(IOException e) {
+        log.warn("failed to write span to '{}'", path, e);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized(out) {
+      out.close();
+    }
+  }
+
+}
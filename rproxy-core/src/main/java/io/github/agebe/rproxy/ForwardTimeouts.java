@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.Duration;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// timeouts on forwarding a request to the upstream server, a zero duration disables the timeout.
+// - connectTimeout: opening the connection including the tls handshake
+// - firstByteTimeout: waiting for the response after the request has been sent
+// - idleTimeout: max time between two reads on the response body
+// - deadline: the whole exchange, from acquiring the connection to the end of the response body
+// set per route on the @ProxyPath annotation or by the handler with set(request, timeouts) before forwarding.
+public record ForwardTimeouts(
+    Duration connectTimeout,
+    Duration firstByteTimeout,
+    Duration idleTimeout,
+    Duration deadline) {
+
+  public static final String ATTRIBUTE = ForwardTimeouts.class.getName();
+
+  public static final ForwardTimeouts DEFAULT = new ForwardTimeouts(
+      Duration.ofSeconds(10),
+      Duration.ofSeconds(30),
+      Duration.ofSeconds(30),
+      Duration.ZERO);
+
+  public ForwardTimeouts {
+    connectTimeout = orZero(connectTimeout);
+    firstByteTimeout = orZero(firstByteTimeout);
+    idleTimeout = orZero(idleTimeout);
+    deadline = orZero(deadline);
+  }
+
+  private static Duration orZero(Duration d) {
+    return ((d == null) || d.isNegative()) ? Duration.ZERO : d;
+  }
+
+  public ForwardTimeouts withConnectTimeout(Duration connectTimeout) {
+    return new ForwardTimeouts(connectTimeout, firstByteTimeout, idleTimeout, deadline);
+  }
+
+  public ForwardTimeouts withFirstByteTimeout(Duration firstByteTimeout) {
+    return new ForwardTimeouts(connectTimeout, firstByteTimeout, idleTimeout, deadline);
+  }
+
+  public ForwardTimeouts withIdleTimeout(Duration idleTimeout) {
+    return new ForwardTimeouts(connectTimeout, firstByteTimeout, idleTimeout, deadline);
+  }
+
+  public ForwardTimeouts withDeadline(Duration deadline) {
+    return new ForwardTimeouts(connectTimeout, firstByteTimeout, idleTimeout, deadline);
+  }
+
+  // socket timeouts are int milliseconds, 0 means no timeout
+  static int millis(Duration d) {
+    return (int)Math.min(Integer.MAX_VALUE, d.toMillis());
+  }
+
+  // the timeouts from the proxy path annotation, attributes below 0 keep the default.
+  // returns null if the annotation does not set any timeout.
+  public static ForwardTimeouts of(ProxyPath path) {
+    if((path.connectTimeoutMs() < 0) && (path.firstByteTimeoutMs() < 0)
+        && (path.idleTimeoutMs() < 0) && (path.deadlineMs() < 0)) {
+      return null;
+    }
+    return new ForwardTimeouts(
+        orDefault(path.connectTimeoutMs(), DEFAULT.connectTimeout()),
+        orDefault(path.firstByteTimeoutMs(), DEFAULT.firstByteTimeout()),
+        orDefault(path.idleTimeoutMs(), DEFAULT.idleTimeout()),
+        orDefault(path.deadlineMs(), DEFAULT.deadline()));
+  }
+
+  private static Duration orDefault(long millis, Duration d) {
+    return millis >= 0 ? Duration.ofMillis(millis) : d;
+  }
+
+  // the timeouts for forwarding this request, DEFAULT if none have been set
+  public static ForwardTimeouts get(HttpServletRequest request) {
+    Object o = request.getAttribute(ATTRIBUTE);
+    return (o instanceof ForwardTimeouts t) ? t : DEFAULT;
+  }
+
+  public static void set(HttpServletRequest request, ForwardTimeouts timeouts) {
+    request.setAttribute(ATTRIBUTE, timeouts);
+  }
+
+}
@@ -15,11 +15,14 @@ package io.github.agebe.rproxy;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -37,18 +40,49 @@ public class GatewayFilter implements Filter {
       throws IOException, ServletException {
     HttpServletRequest req = (HttpServletRequest)request;
     HttpServletResponse resp = (HttpServletResponse)response;
+    // only 1 handler instance per class and request (unless singleton)
+    // this is just in case you have multiple overlapping matchers on a single handler
+    // not sure if this is required
+    Map<HandlerProvider, HttpRequestHandler> acquired = null;
+    Metrics metrics = MetricsSupport.getMetrics();
+    long start = System.nanoTime();
+    // the route of the first matching handler, null if no handler matched
+    String route = null;
+    RequestContext context = null;
+    Trace trace = Trace.start(req);
     try {
-      // only 1 handler instance per class and request
-      // this is just in case you have multiple overlapping matchers on a single handler
-      // not sure if this is required
-      Map<Class<? extends HttpRequestHandler>, HttpRequestHandler> cache = new HashMap<>();
-      for(Handler handler : HandlerRegister.instance().getHandlers(req)) {
-        HttpRequestHandler h = cache.computeIfAbsent(handler.handlerCls(),
-            k -> InjectorSupport.getInjector().getInstance(k));
+      long routeStart = System.nanoTime();
+      List<Handler> handlers = HandlerRegister.instance().getHandlers(req);
+      if((trace != null) && !handlers.isEmpty()) {
+        trace.proxySpan("route", routeStart, System.nanoTime(), "route", handlers.get(0).matcher().toString());
+      }
+      for(Handler handler : handlers) {
+        if(route == null) {
+          route = handler.matcher().toString();
+          metrics.gauge(Metrics.REQUESTS_ACTIVE, "route", route).add(1);
+          context = new RequestContext(RequestIds.next(), route);
+          RequestContext.set(req, context);
+        }
+        HandlerProvider provider = handler.provider();
+        HttpRequestHandler h;
+        if(ScopeType.SINGLETON.equals(provider.getScope())) {
+          h = provider.acquire();
+        } else {
+          if(acquired == null) {
+            acquired = new HashMap<>(4);
+          }
+          h = acquired.computeIfAbsent(provider, HandlerProvider::acquire);
+        }
         log.debug("request '{}' matched '{}', executing handler '{}' ...",
             req.getRequestURI(),
             handler.matcher(),
             handler.handlerCls().getName());
+        if(handler.timeouts() != null) {
+          ForwardTimeouts.set(req, handler.timeouts());
+        }
+        if(handler.coalescing() != null) {
+          Coalescing.set(req, handler.coalescing());
+        }
         RequestStatus rs = h.handle(req, resp);
         if(RequestStatus.COMPLETED.equals(rs)) {
           return;
@@ -61,13 +95,98 @@ public class GatewayFilter implements Filter {
       }
       // if no handler has taken care of this request continue with the filter chain
       chain.doFilter(request, response);
+    } catch(GatewayTimeoutException e) {
+      log.warn("gateway timeout", e);
+      sendError(resp, HttpServletResponse.SC_GATEWAY_TIMEOUT);
     } catch(BadGatewayException e) {
       log.warn("bad gateway", e);
-      resp.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+      sendError(resp, HttpServletResponse.SC_BAD_GATEWAY);
+    } catch(ServiceUnavailableException e) {
+      log.warn("service unavailable", e);
+      sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
     } catch(Exception e) {
       log.error("failed to process request", e);
-      resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    } finally {
+      if(acquired != null) {
+        acquired.forEach(HandlerProvider::release);
+      }
+      if(context != null) {
+        finish(req, resp, context, metrics, start);
+      }
+    }
+  }
+
+  // errors after the response is committed (e.g. an idle timeout in the middle of the body) are only logged,
+  // the status is out already and the connection gets closed
+  private static void sendError(HttpServletResponse resp, int sc) throws IOException {
+    if(!resp.isCommitted()) {
+      resp.sendError(sc);
+    } else {
+      log.debug("response already committed, not sending error '{}'", sc);
     }
   }
 
+  // route metrics, access log and proxy span, once the response is done
+  private static void finish(
+      HttpServletRequest req,
+      HttpServletResponse resp,
+      RequestContext context,
+      Metrics metrics,
+      long start) {
+    AccessLog accessLog = AccessLogSupport.getAccessLog();
+    Trace trace = Trace.get(req);
+    Runnable done = () -> {
+      String route = context.getRoute();
+      metrics.gauge(Metrics.REQUESTS_ACTIVE, "route", route).add(-1);
+      metrics.timer(Metrics.REQUESTS_DURATION, "route", route).record(System.nanoTime() - start);
+      metrics.counter(Metrics.REQUESTS, "route", route, "status", Metrics.statusClass(resp.getStatus())).increment();
+      if(accessLog != null) {
+        accessLog.log(toRecord(req, resp, context));
+      }
+      if(trace != null) {
+        trace.end(
+            "route", context.getRoute(),
+            "request_id", context.getRequestId(),
+            "status", String.valueOf(resp.getStatus()));
+      }
+    };
+    if(req.isAsyncStarted()) {
+      // the response is not done yet (AsyncReverseProxy), finish once the async request completes
+      req.getAsyncContext().addListener(new AsyncListener() {
+        @Override
+        public void onComplete(AsyncEvent event) {
+          done.run();
+        }
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+      });
+    } else {
+      done.run();
+    }
+  }
+
+  private static AccessLogRecord toRecord(HttpServletRequest req, HttpServletResponse resp, RequestContext context) {
+    String query = req.getQueryString();
+    return new AccessLogRecord(
+        context.getStartMillis(),
+        context.getRequestId(),
+        req.getMethod(),
+        query != null ? req.getRequestURI() + "?" + query : req.getRequestURI(),
+        context.getRoute(),
+        context.getUpstream(),
+        resp.getStatus(),
+        System.nanoTime() - context.getStartNanos(),
+        context.getFirstByteNanos(),
+        context.getBytesIn(),
+        context.getBytesOut());
+  }
+
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// the upstream server did not answer in time, mapped to 504
+public class GatewayTimeoutException extends BadGatewayException {
+
+  private static final long serialVersionUID = 4619032087156228346L;
+
+  public GatewayTimeoutException() {
+    super();
+  }
+
+  public GatewayTimeoutException(String messagePattern, Object... args) {
+    super(messagePattern, args);
+  }
+
+  public GatewayTimeoutException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public GatewayTimeoutException(String message) {
+    super(message);
+  }
+
+  public GatewayTimeoutException(Throwable cause) {
+    super(cause);
+  }
+
+}
@@ -17,4 +17,25 @@ import java.util.function.Predicate;
 
 public record Handler(
     Predicate<String> matcher,
-    Class<? extends HttpRequestHandler> handlerCls) {}
+    Class<? extends HttpRequestHandler> handlerCls,
+    HandlerProvider provider,
+    ForwardTimeouts timeouts,
+    Coalescing coalescing) {
+
+  public Handler(Predicate<String> matcher, Class<? extends HttpRequestHandler> handlerCls) {
+    this(matcher, handlerCls, HandlerProvider.of(handlerCls));
+  }
+
+  public Handler(Predicate<String> matcher, Class<? extends HttpRequestHandler> handlerCls, HandlerProvider provider) {
+    this(matcher, handlerCls, provider, null);
+  }
+
+  public Handler(
+      Predicate<String> matcher,
+      Class<? extends HttpRequestHandler> handlerCls,
+      HandlerProvider provider,
+      ForwardTimeouts timeouts) {
+    this(matcher, handlerCls, provider, timeouts, null);
+  }
+
+}
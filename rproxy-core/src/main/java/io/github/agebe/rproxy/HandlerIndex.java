@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// the registered handlers compiled into a lookup structure so a request does not have to be tested
+// against every handler:
+// - EQUALS matchers are looked up in a hash map
+// - GLOB matchers are stored in a prefix trie under their literal prefix (the part before the first wildcard)
+// - everything else (REGEX, ALL, globs starting with a wildcard) is tested one by one
+// candidates are returned in registration order, same as testing every handler in turn.
+public class HandlerIndex {
+
+  private static final int[] NONE = new int[0];
+
+  private static class Node {
+
+    private final Map<Character, Node> children = new HashMap<>();
+
+    private int[] handlers = NONE;
+
+  }
+
+  private final Handler[] handlers;
+
+  // true if the candidate matches without testing it (EQUALS, ALL)
+  private final boolean[] certain;
+
+  private final Map<String, int[]> equals = new HashMap<>();
+
+  private final Node root = new Node();
+
+  private final int[] fallback;
+
+  public HandlerIndex(List<Handler> handlers) {
+    super();
+    this.handlers = handlers.toArray(new Handler[0]);
+    this.certain = new boolean[this.handlers.length];
+    List<Integer> fallback = new ArrayList<>();
+    for(int i=0;i<this.handlers.length;i++) {
+      Predicate<String> matcher = this.handlers[i].matcher();
+      if(matcher instanceof MatchType.AbstractMatcher m) {
+        switch(m.getType()) {
+        case EQUALS:
+          equals.merge(m.getPattern(), new int[] {i}, HandlerIndex::concat);
+          certain[i] = true;
+          break;
+        case GLOB:
+          String prefix = literalPrefix(m.getPattern());
+          if(prefix.isEmpty()) {
+            fallback.add(i);
+          } else {
+            Node node = root;
+            for(int c=0;c<prefix.length();c++) {
+              node = node.children.computeIfAbsent(prefix.charAt(c), k -> new Node());
+            }
+            node.handlers = concat(node.handlers, new int[] {i});
+          }
+          break;
+        case ALL:
+          certain[i] = true;
+          fallback.add(i);
+          break;
+        default:
+          fallback.add(i);
+        }
+      } else {
+        fallback.add(i);
+      }
+    }
+    this.fallback = fallback.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static int[] concat(int[] a, int[] b) {
+    int[] c = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, c, a.length, b.length);
+    return c;
+  }
+
+  // the glob library treats '*' and '?' as wildcards and '\' as escape character
+  static String literalPrefix(String glob) {
+    for(int i=0;i<glob.length();i++) {
+      char c = glob.charAt(i);
+      if((c == '*') || (c == '?') || (c == '\\')) {
+        return glob.substring(0, i);
+      }
+    }
+    return glob;
+  }
+
+  public int size() {
+    return handlers.length;
+  }
+
+  public List<Handler> match(String uri) {
+    if(uri == null) {
+      return List.of();
+    }
+    int[] candidates = new int[8];
+    int count = 0;
+    int[] eq = equals.get(uri);
+    if(eq != null) {
+      candidates = add(candidates, count, eq);
+      count += eq.length;
+    }
+    Node node = root;
+    for(int i=0;i<uri.length();i++) {
+      node = node.children.get(uri.charAt(i));
+      if(node == null) {
+        break;
+      }
+      if(node.handlers.length > 0) {
+        candidates = add(candidates, count, node.handlers);
+        count += node.handlers.length;
+      }
+    }
+    if(fallback.length > 0) {
+      candidates = add(candidates, count, fallback);
+      count += fallback.length;
+    }
+    if(count == 0) {
+      return List.of();
+    }
+    // restore registration order, a handler index is in the candidates at most once
+    Arrays.sort(candidates, 0, count);
+    List<Handler> result = new ArrayList<>(Math.min(count, 4));
+    for(int i=0;i<count;i++) {
+      int idx = candidates[i];
+      Handler handler = handlers[idx];
+      if(certain[idx] || handler.matcher().test(uri)) {
+        result.add(handler);
+      }
+    }
+    return result;
+  }
+
+  private static int[] add(int[] candidates, int count, int[] indices) {
+    if(count + indices.length > candidates.length) {
+      candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, count + indices.length));
+    }
+    System.arraycopy(indices, 0, candidates, count, indices.length);
+    return candidates;
+  }
+
+}
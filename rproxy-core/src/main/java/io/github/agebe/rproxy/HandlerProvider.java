@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// provides handler instances according to the handler scope
+public abstract class HandlerProvider {
+
+  private final Class<? extends HttpRequestHandler> handlerCls;
+
+  protected HandlerProvider(Class<? extends HttpRequestHandler> handlerCls) {
+    super();
+    this.handlerCls = handlerCls;
+  }
+
+  public Class<? extends HttpRequestHandler> getHandlerCls() {
+    return handlerCls;
+  }
+
+  public abstract ScopeType getScope();
+
+  public abstract HttpRequestHandler acquire();
+
+  // called once the request is done with the handler
+  public void release(HttpRequestHandler handler) {
+    // nothing to do by default
+  }
+
+  protected HttpRequestHandler newInstance() {
+    return InjectorSupport.getInjector().getInstance(handlerCls);
+  }
+
+  public static HandlerProvider of(Class<? extends HttpRequestHandler> handlerCls) {
+    HandlerScope scope = handlerCls.getAnnotation(HandlerScope.class);
+    ScopeType type = scope != null ? scope.value() : ScopeType.REQUEST;
+    return switch(type) {
+    case SINGLETON -> new SingletonProvider(handlerCls);
+    case POOLED -> new PooledProvider(handlerCls, scope.maxIdle());
+    default -> new RequestProvider(handlerCls);
+    };
+  }
+
+  public static class RequestProvider extends HandlerProvider {
+
+    public RequestProvider(Class<? extends HttpRequestHandler> handlerCls) {
+      super(handlerCls);
+    }
+
+    @Override
+    public ScopeType getScope() {
+      return ScopeType.REQUEST;
+    }
+
+    @Override
+    public HttpRequestHandler acquire() {
+      return newInstance();
+    }
+
+  }
+
+  public static class SingletonProvider extends HandlerProvider {
+
+    // created on first use, handlers are registered on container startup, before the application had a chance
+    // to set its injector
+    private volatile HttpRequestHandler instance;
+
+    public SingletonProvider(Class<? extends HttpRequestHandler> handlerCls) {
+      super(handlerCls);
+    }
+
+    @Override
+    public ScopeType getScope() {
+      return ScopeType.SINGLETON;
+    }
+
+    @Override
+    public HttpRequestHandler acquire() {
+      HttpRequestHandler h = instance;
+      if(h == null) {
+        synchronized(this) {
+          h = instance;
+          if(h == null) {
+            h = newInstance();
+            instance = h;
+          }
+        }
+      }
+      return h;
+    }
+
+  }
+
+  public static class PooledProvider extends HandlerProvider {
+
+    private final Queue<HttpRequestHandler> idle = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final int maxIdle;
+
+    public PooledProvider(Class<? extends HttpRequestHandler> handlerCls, int maxIdle) {
+      super(handlerCls);
+      this.maxIdle = maxIdle;
+    }
+
+    @Override
+    public ScopeType getScope() {
+      return ScopeType.POOLED;
+    }
+
+    @Override
+    public HttpRequestHandler acquire() {
+      HttpRequestHandler handler = idle.poll();
+      if(handler != null) {
+        idleCount.decrementAndGet();
+        return handler;
+      }
+      return newInstance();
+    }
+
+    @Override
+    public void release(HttpRequestHandler handler) {
+      if(idleCount.incrementAndGet() <= maxIdle) {
+        idle.offer(handler);
+      } else {
+        idleCount.decrementAndGet();
+      }
+    }
+
+  }
+
+}
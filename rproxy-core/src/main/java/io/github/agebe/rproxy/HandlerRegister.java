@@ -33,37 +33,51 @@ public class HandlerRegister {
 
   private List<Handler> handlers = new ArrayList<>();
 
+  // rebuilt on every registration, requests only read the current index
+  private volatile HandlerIndex index = new HandlerIndex(List.of());
+
   private HandlerRegister() {
     super();
   }
 
-  public void addHandler(Class<? extends HttpRequestHandler> handlerCls) {
+  public synchronized void addHandler(Class<? extends HttpRequestHandler> handlerCls) {
     if(handlerCls.isInterface()) {
       throw new ReverseProxyException("can not register handler interface '%s'".formatted(handlerCls.getName()));
     }
     if(Modifier.isAbstract(handlerCls.getModifiers())) {
       throw new ReverseProxyException("can not register abstract handler class '%s'".formatted(handlerCls.getName()));
     }
+    // all paths of the handler share the provider, so a singleton is only created once
+    HandlerProvider provider = HandlerProvider.of(handlerCls);
     handlers.addAll(Stream.of(handlerCls)
-        .flatMap(this::allPaths)
-        .peek(h -> log.info("register handler '{}', path matcher '{}'", h.handlerCls(), h.matcher()))
+        .flatMap(cls -> allPaths(cls, provider))
+        .peek(h -> log.info("register handler '{}', path matcher '{}', scope '{}'",
+            h.handlerCls(), h.matcher(), h.provider().getScope()))
         .toList());
+    index = new HandlerIndex(handlers);
   }
 
   public List<Handler> getHandlers(HttpServletRequest req) {
-    return handlers.stream()
-        .filter(handler -> handler.matcher().test(req.getRequestURI()))
-        .toList();
+    return getHandlers(req.getRequestURI());
+  }
+
+  public List<Handler> getHandlers(String requestURI) {
+    return index.match(requestURI);
   }
 
-  private Stream<Handler> allPaths(Class<? extends HttpRequestHandler> handlerCls) {
+  private Stream<Handler> allPaths(Class<? extends HttpRequestHandler> handlerCls, HandlerProvider provider) {
     ProxyPath[] paths = handlerCls.getAnnotationsByType(ProxyPath.class);
     if(paths.length == 0) {
       // if the handler does not have a proxy path annotation is will handle all incoming calls
-      return Stream.of(new Handler(MatchType.ALL.createMatcher(null), handlerCls));
+      return Stream.of(new Handler(MatchType.ALL.createMatcher(null), handlerCls, provider));
     } else {
       return Arrays.stream(paths)
-          .map(path -> new Handler(createMatcher(path), handlerCls));
+          .map(path -> new Handler(
+              createMatcher(path),
+              handlerCls,
+              provider,
+              ForwardTimeouts.of(path),
+              Coalescing.of(path)));
     }
   }
 
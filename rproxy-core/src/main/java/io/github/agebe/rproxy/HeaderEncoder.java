@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// writes the request line and header fields as ISO-8859-1 into a growing byte array that is reused per thread.
+// characters outside of ISO-8859-1 are replaced with '?', same as String.getBytes(ISO_8859_1) does
+public class HeaderEncoder {
+
+  private static final int INITIAL_SIZE = 4 * 1024;
+
+  // don't keep large buffers around after a request with huge headers
+  private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+  private static final byte[] CRLF = HttpRequestHeader.CRLF.getBytes(ISO_8859_1);
+
+  private static final byte[] COLON_SP = ": ".getBytes(ISO_8859_1);
+
+  private static final byte[] HTTP_1_1 = " HTTP/1.1".getBytes(ISO_8859_1);
+
+  private static final int MAX_CACHED_NAMES = 256;
+
+  // encoded header names, pre-populated with the common ones, other names are added on first use
+  private static final Map<String, byte[]> NAMES = new ConcurrentHashMap<>();
+
+  static {
+    Stream.of(
+        "Accept",
+        "Accept-Encoding",
+        "Accept-Language",
+        "Authorization",
+        "Cache-Control",
+        "Content-Length",
+        "Content-Type",
+        "Cookie",
+        "Forwarded",
+        "Host",
+        "If-Modified-Since",
+        "If-None-Match",
+        "Origin",
+        "Pragma",
+        "Referer",
+        "Transfer-Encoding",
+        "User-Agent",
+        "Via",
+        "X-Forwarded-For",
+        "X-Forwarded-Host",
+        "X-Forwarded-Proto",
+        "X-Requested-With",
+        "accept",
+        "accept-encoding",
+        "accept-language",
+        "authorization",
+        "cache-control",
+        "content-length",
+        "content-type",
+        "cookie",
+        "host",
+        "origin",
+        "referer",
+        "transfer-encoding",
+        "user-agent")
+    .forEach(name -> NAMES.put(name, name.getBytes(ISO_8859_1)));
+  }
+
+  private static final ThreadLocal<HeaderEncoder> ENCODER = ThreadLocal.withInitial(HeaderEncoder::new);
+
+  private byte[] buf = new byte[INITIAL_SIZE];
+
+  private int count;
+
+  // the encoder of the current thread, empty
+  public static HeaderEncoder get() {
+    HeaderEncoder encoder = ENCODER.get();
+    encoder.reset();
+    return encoder;
+  }
+
+  public void reset() {
+    count = 0;
+    if(buf.length > MAX_RETAINED_SIZE) {
+      buf = new byte[INITIAL_SIZE];
+    }
+  }
+
+  public int size() {
+    return count;
+  }
+
+  private void ensureCapacity(int additional) {
+    if(count + additional > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + additional));
+    }
+  }
+
+  public HeaderEncoder write(byte[] b) {
+    ensureCapacity(b.length);
+    System.arraycopy(b, 0, buf, count, b.length);
+    count += b.length;
+    return this;
+  }
+
+  public HeaderEncoder write(String s) {
+    int length = s.length();
+    ensureCapacity(length);
+    for(int i=0;i<length;i++) {
+      char c = s.charAt(i);
+      buf[count++] = (byte)(c <= 0xff ? c : '?');
+    }
+    return this;
+  }
+
+  public HeaderEncoder writeRequestLine(String method, String requestURI, String queryString) {
+    write(method).write(" ").write(requestURI);
+    if((queryString != null) && !queryString.isBlank()) {
+      write("?").write(queryString);
+    }
+    return write(HTTP_1_1).write(CRLF);
+  }
+
+  public HeaderEncoder writeHeader(String name, String value) {
+    return write(encodedName(name)).write(COLON_SP).write(value != null ? value : "").write(CRLF);
+  }
+
+  public HeaderEncoder writeEndOfHeaders() {
+    return write(CRLF);
+  }
+
+  private static byte[] encodedName(String name) {
+    byte[] b = NAMES.get(name);
+    if(b == null) {
+      b = name.getBytes(ISO_8859_1);
+      if(NAMES.size() < MAX_CACHED_NAMES) {
+        NAMES.putIfAbsent(name, b);
+      }
+    }
+    return b;
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, count);
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buf, 0, count);
+  }
+
+}
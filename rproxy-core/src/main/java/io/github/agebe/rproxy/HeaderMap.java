@@ -0,0 +1,225 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// http header fields, name -> values. Lookups are case insensitive and hashed, iteration returns the
+// header names with their original casing in insertion order.
+// putting a name that only differs in case replaces the existing header (and takes over the new casing).
+public class HeaderMap extends AbstractMap<String, List<String>> {
+
+  private static class Field implements Map.Entry<String, List<String>> {
+
+    private String name;
+
+    private List<String> values;
+
+    private Field(String name, List<String> values) {
+      super();
+      this.name = name;
+      this.values = values;
+    }
+
+    @Override
+    public String getKey() {
+      return name;
+    }
+
+    @Override
+    public List<String> getValue() {
+      return values;
+    }
+
+    @Override
+    public List<String> setValue(List<String> value) {
+      List<String> old = values;
+      values = value;
+      return old;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof Map.Entry<?, ?> e) && name.equals(e.getKey()) && Objects.equals(values, e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode() ^ (values != null ? values.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+      return name + "=" + values;
+    }
+
+  }
+
+  // lower case name -> field
+  private final LinkedHashMap<String, Field> fields;
+
+  private Set<Map.Entry<String, List<String>>> entrySet;
+
+  public HeaderMap() {
+    super();
+    this.fields = new LinkedHashMap<>();
+  }
+
+  // copies the headers, names that only differ in case are merged
+  public HeaderMap(Map<String, List<String>> headers) {
+    super();
+    this.fields = new LinkedHashMap<>(Math.max(16, (int)(headers.size() / 0.75f) + 1));
+    headers.forEach((name, values) -> {
+      if(values != null) {
+        for(String value : values) {
+          add(name, value);
+        }
+      } else if(!containsKey(name)) {
+        put(name, null);
+      }
+    });
+  }
+
+  // returns the map if it is already a header map, a copy otherwise
+  public static HeaderMap of(Map<String, List<String>> headers) {
+    if(headers instanceof HeaderMap m) {
+      return m;
+    }
+    return headers != null ? new HeaderMap(headers) : new HeaderMap();
+  }
+
+  private static String key(Object name) {
+    // toLowerCase returns the same instance if the name is already lower case
+    return (name instanceof String s) ? s.toLowerCase(Locale.ROOT) : null;
+  }
+
+  // adds a value to the header, keeps the casing of the existing header name
+  public void add(String name, String value) {
+    Field f = fields.get(key(name));
+    if(f == null) {
+      List<String> values = new ArrayList<>(1);
+      values.add(value);
+      fields.put(key(name), new Field(name, values));
+    } else {
+      if(f.values == null) {
+        f.values = new ArrayList<>(1);
+      }
+      f.values.add(value);
+    }
+  }
+
+  // the header entry with the original name
+  public Map.Entry<String, List<String>> getEntry(String name) {
+    return fields.get(key(name));
+  }
+
+  // the first value of the header or null
+  public String getFirst(String name) {
+    Field f = fields.get(key(name));
+    return ((f != null) && (f.values != null) && !f.values.isEmpty()) ? f.values.get(0) : null;
+  }
+
+  @Override
+  public List<String> get(Object name) {
+    Field f = fields.get(key(name));
+    return f != null ? f.values : null;
+  }
+
+  @Override
+  public boolean containsKey(Object name) {
+    return fields.containsKey(key(name));
+  }
+
+  @Override
+  public List<String> put(String name, List<String> values) {
+    String key = key(name);
+    Field f = fields.get(key);
+    if(f == null) {
+      fields.put(key, new Field(name, values));
+      return null;
+    } else {
+      f.name = name;
+      return f.setValue(values);
+    }
+  }
+
+  @Override
+  public List<String> remove(Object name) {
+    Field f = fields.remove(key(name));
+    return f != null ? f.values : null;
+  }
+
+  @Override
+  public void clear() {
+    fields.clear();
+  }
+
+  @Override
+  public int size() {
+    return fields.size();
+  }
+
+  @Override
+  public Set<Map.Entry<String, List<String>>> entrySet() {
+    if(entrySet == null) {
+      entrySet = new AbstractSet<>() {
+
+        @Override
+        public Iterator<Map.Entry<String, List<String>>> iterator() {
+          Iterator<Field> iter = fields.values().iterator();
+          return new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+              return iter.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, List<String>> next() {
+              return iter.next();
+            }
+
+            @Override
+            public void remove() {
+              iter.remove();
+            }
+
+          };
+        }
+
+        @Override
+        public int size() {
+          return fields.size();
+        }
+
+        @Override
+        public void clear() {
+          fields.clear();
+        }
+
+      };
+    }
+    return entrySet;
+  }
+
+}
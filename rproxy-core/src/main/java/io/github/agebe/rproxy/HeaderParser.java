@@ -13,119 +13,178 @@
  */
 package io.github.agebe.rproxy;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-
-import org.apache.commons.lang3.StringUtils;
 
+// parses the http response status line and headers.
+// lines are located by scanning the input buffer for line ends, names and values are decoded straight
+// from the buffer. The bytes following the headers (the body) stay in the buffer.
 public class HeaderParser {
 
   private static final int MAX_HEADER_SIZE = 64 * 1024;
 
-  private InputStream in;
+  private HttpInputBuffer in;
+
+  // raw header bytes, only kept if requested (for trace logging)
+  private ByteArrayOutputStream out;
 
-  private ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private int lineStart;
 
+  private int lineEnd;
+
+  // if the stream is not a HttpInputBuffer it gets wrapped and the parser might read beyond the end of the headers
   public HeaderParser(InputStream in) {
+    this(in, false);
+  }
+
+  public HeaderParser(InputStream in, boolean retainBytes) {
     super();
-    this.in = in;
+    this.in = (in instanceof HttpInputBuffer b) ? b : new HttpInputBuffer(in, MAX_HEADER_SIZE);
+    this.out = retainBytes ? new ByteArrayOutputStream() : null;
   }
 
   public HttpHeadersParseResult parse() {
     VersionStatus status = startHeader();
-    Map<String, List<String>> headers = new LinkedHashMap<>();
+    HeaderMap headers = new HeaderMap();
+    List<String> lastValues = null;
     for(;;) {
-      String line = nextLine();
-      if(line == null) {
+      if(!nextLine()) {
         break;
       }
-      String name = StringUtils.strip(StringUtils.substringBefore(line, ":"));
-      String value = StringUtils.strip(StringUtils.substringAfter(line, ":"));
-      List<String> values = headers.computeIfAbsent(name, k -> new ArrayList<>());
-      values.add(value);
+      byte[] buf = in.buffer();
+      if(isWhitespace(buf[lineStart])) {
+        // obsolete line folding, https://www.rfc-editor.org/rfc/rfc9112#name-obsolete-line-folding
+        // the continuation line is appended to the previous header value separated by a single space
+        if(lastValues == null) {
+          throw new ReverseProxyException("failed to parse http headers, continuation line without header");
+        }
+        int start = skipWhitespace(buf, lineStart, lineEnd);
+        int end = trimWhitespace(buf, start, lineEnd);
+        if(end > start) {
+          int last = lastValues.size() - 1;
+          lastValues.set(last, lastValues.get(last) + " " + new String(buf, start, end - start, ISO_8859_1));
+        }
+        continue;
+      }
+      int colon = indexOf(buf, lineStart, lineEnd, (byte)':');
+      String name;
+      String value;
+      if(colon == -1) {
+        name = decode(buf, lineStart, lineEnd);
+        value = "";
+      } else {
+        name = decode(buf, lineStart, colon);
+        value = decode(buf, colon + 1, lineEnd);
+      }
+      headers.add(name, value);
+      lastValues = headers.get(name);
     }
     return new HttpHeadersParseResult(
         new HttpHeaders(
             status.version(),
             status.statusCode(),
             status.status(),
-            Collections.unmodifiableMap(headers)),
-        out.toByteArray());
+            headers),
+        out != null ? out.toByteArray() : null);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return (b == ' ') || (b == '\t');
+  }
+
+  private static int skipWhitespace(byte[] buf, int start, int end) {
+    while((start < end) && isWhitespace(buf[start])) {
+      start++;
+    }
+    return start;
   }
 
-  private static Integer asInteger(Object o) {
-    if(o == null) {
+  private static int trimWhitespace(byte[] buf, int start, int end) {
+    while((end > start) && isWhitespace(buf[end - 1])) {
+      end--;
+    }
+    return end;
+  }
+
+  private static int indexOf(byte[] buf, int start, int end, byte b) {
+    for(int i=start;i<end;i++) {
+      if(buf[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // decodes the bytes without leading and trailing whitespace
+  private static String decode(byte[] buf, int start, int end) {
+    start = skipWhitespace(buf, start, end);
+    end = trimWhitespace(buf, start, end);
+    return new String(buf, start, end - start, ISO_8859_1);
+  }
+
+  private static Integer asInteger(byte[] buf, int start, int end) {
+    if((end - start) != 3) {
       return null;
-    } else if(o instanceof Number) {
-      return ((Number) o).intValue();
-    } else if(o instanceof String) {
-      try {
-        return Integer.valueOf((String) o);
-      } catch(Exception e) {
+    }
+    int code = 0;
+    for(int i=start;i<end;i++) {
+      int digit = buf[i] - '0';
+      if((digit < 0) || (digit > 9)) {
         return null;
       }
-    } else {
-      return null;
+      code = code * 10 + digit;
     }
+    return code;
   }
 
   private VersionStatus startHeader() {
-    String line = nextLine();
-    String[] parts = StringUtils.split(line);
-    if(parts.length < 2) {
-      throw new ReverseProxyException("expected http start header with 2 parts but got '{}'", line);
+    if(!nextLine()) {
+      throw new ReverseProxyException("expected http start header but got empty line");
+    }
+    byte[] buf = in.buffer();
+    int versionEnd = indexOf(buf, lineStart, lineEnd, (byte)' ');
+    if(versionEnd == -1) {
+      throw new ReverseProxyException("expected http start header with 2 parts but got '{}'",
+          decode(buf, lineStart, lineEnd));
     }
-    Integer code = asInteger(parts[1]);
+    int codeStart = skipWhitespace(buf, versionEnd, lineEnd);
+    int codeEnd = indexOf(buf, codeStart, lineEnd, (byte)' ');
+    if(codeEnd == -1) {
+      codeEnd = lineEnd;
+    }
+    Integer code = asInteger(buf, codeStart, codeEnd);
     if(code == null) {
-      throw new ReverseProxyException("failed to parse http status code from '{}'", line);
+      throw new ReverseProxyException("failed to parse http status code from '{}'", decode(buf, lineStart, lineEnd));
     }
-    String status = (parts.length>=3)?parts[2]:null;
-    return new VersionStatus(parts[0], code, status);
+    String status = (codeEnd < lineEnd) ? decode(buf, codeEnd, lineEnd) : null;
+    return new VersionStatus(decode(buf, lineStart, versionEnd), code, status);
   }
 
-  // returns null if there are no more http headers
-  // TODO this currently does not work with multi-line header.
-  // https://stackoverflow.com/a/31324422
-  private String nextLine() {
+  // locates the next line in the input buffer (lineStart, lineEnd without CRLF) and consumes it.
+  // returns false on the empty line that ends the http headers.
+  private boolean nextLine() {
     try {
-      StringBuilder s = new StringBuilder();
-      for(;;) {
-        int i = nextByte();
-        if(i == 0xd) {
-          int i2 = nextByte();
-          if(i2 == 0xa) {
-            return s.isEmpty()?null:s.toString();
-          } else {
-            throw new ReverseProxyException("failed to parse http headers,"
-                + " expected line feed after carriage return but got '{}'", Integer.toHexString(i2));
-          }
-        } else {
-          // TODO check allowed http header character
-          s.append((char)i);
-          if(s.length() > MAX_HEADER_SIZE) {
-            throw new ReverseProxyException("http header is to large (> '{}'", MAX_HEADER_SIZE);
-          }
-        }
+      int lf = in.findLineEnd(MAX_HEADER_SIZE);
+      if(lf == -1) {
+        throw new ReverseProxyException("unexpected end of stream while parsing http headers");
       }
+      byte[] buf = in.buffer();
+      lineStart = in.position();
+      lineEnd = ((lf > lineStart) && (buf[lf - 1] == '\r')) ? lf - 1 : lf;
+      if(out != null) {
+        out.write(buf, lineStart, lf + 1 - lineStart);
+      }
+      // the line stays in the buffer until the next fill, which only happens on the next nextLine() call
+      in.consume(lf + 1 - lineStart);
+      return lineEnd > lineStart;
     } catch(IOException e) {
       throw new UncheckedIOException("failed in nextLine", e);
     }
   }
 
-  private int nextByte() throws IOException {
-    int i = in.read();
-    if(i == -1) {
-      throw new ReverseProxyException("unexpected end of stream while parsing http headers");
-    }
-    out.write(i);
-    return i;
-  }
-
 }
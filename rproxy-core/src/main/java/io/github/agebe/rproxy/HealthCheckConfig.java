@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.Duration;
+
+// active health checking, every interval a GET request is sent to the path on each upstream of a group.
+// a response status in [minStatus, maxStatus] counts as success. an upstream is taken out of the load
+// balancing after unhealthyThreshold failed probes in a row and back in after healthyThreshold
+// successful ones.
+public record HealthCheckConfig(
+    String path,
+    Duration interval,
+    Duration timeout,
+    int healthyThreshold,
+    int unhealthyThreshold,
+    int minStatus,
+    int maxStatus) {
+
+  public static HealthCheckConfig of(String path) {
+    return new HealthCheckConfig(path, Duration.ofSeconds(10), Duration.ofSeconds(2), 2, 3, 200, 399);
+  }
+
+  public HealthCheckConfig withInterval(Duration interval) {
+    return new HealthCheckConfig(path, interval, timeout, healthyThreshold, unhealthyThreshold, minStatus, maxStatus);
+  }
+
+  public HealthCheckConfig withTimeout(Duration timeout) {
+    return new HealthCheckConfig(path, interval, timeout, healthyThreshold, unhealthyThreshold, minStatus, maxStatus);
+  }
+
+  public HealthCheckConfig withThresholds(int healthyThreshold, int unhealthyThreshold) {
+    return new HealthCheckConfig(path, interval, timeout, healthyThreshold, unhealthyThreshold, minStatus, maxStatus);
+  }
+
+  public boolean isHealthy(int status) {
+    return (status >= minStatus) && (status <= maxStatus);
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// probes the upstreams of a group in the background, see HealthCheckConfig
+public class HealthChecker implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(HealthChecker.class);
+
+  private final HealthCheckConfig config;
+
+  private final List<Upstream> upstreams;
+
+  private final ScheduledExecutorService executor;
+
+  public HealthChecker(String name, HealthCheckConfig config, List<Upstream> upstreams) {
+    super();
+    this.config = config;
+    this.upstreams = upstreams;
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "rproxy-health-check-" + name);
+      t.setDaemon(true);
+      return t;
+    });
+    long interval = config.interval().toMillis();
+    executor.scheduleWithFixedDelay(this::probeAll, 0, interval, TimeUnit.MILLISECONDS);
+  }
+
+  public HealthCheckConfig getConfig() {
+    return config;
+  }
+
+  private void probeAll() {
+    for(Upstream upstream : upstreams) {
+      boolean success = probe(upstream);
+      boolean healthy = upstream.isHealthy();
+      upstream.probed(success, config);
+      if(healthy != upstream.isHealthy()) {
+        log.info("upstream '{}' is now {}", upstream, upstream.isHealthy() ? "healthy" : "unhealthy");
+      }
+    }
+  }
+
+  private boolean probe(Upstream upstream) {
+    Origin origin = upstream.getOrigin();
+    int timeout = ForwardTimeouts.millis(config.timeout());
+    Socket s = new Socket();
+    try {
+      s.connect(new InetSocketAddress(origin.host(), origin.port()), timeout);
+      s.setSoTimeout(timeout);
+      if(origin.isSecure()) {
+        s = TlsClientSupport.getTlsClient(origin).handshake(s, origin.host(), origin.port());
+      }
+      OutputStream out = s.getOutputStream();
+      out.write(("GET " + config.path() + " HTTP/1.1" + HttpRequestHeader.CRLF
+          + "Host: " + origin.host() + ":" + origin.port() + HttpRequestHeader.CRLF
+          + "User-Agent: rproxy-health-check" + HttpRequestHeader.CRLF
+          + "Connection: close" + HttpRequestHeader.CRLF
+          + HttpRequestHeader.CRLF).getBytes(ISO_8859_1));
+      out.flush();
+      int status = new HeaderParser(s.getInputStream()).parse().headers().statusCode();
+      log.debug("health check '{}{}' status '{}'", upstream, config.path(), status);
+      return config.isHealthy(status);
+    } catch(Exception e) {
+      log.debug("health check '{}{}' failed", upstream, config.path(), e);
+      return false;
+    } finally {
+      try {
+        s.close();
+      } catch(Exception e) {
+        log.debug("failed to close health check socket", e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+}
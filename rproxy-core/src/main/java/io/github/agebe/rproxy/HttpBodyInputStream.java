@@ -0,0 +1,25 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.InputStream;
+
+// an http message body read from a connection, knows if the body has been read completely
+public abstract class HttpBodyInputStream extends InputStream {
+
+  // true if the end of the body has been reached as announced by the message framing
+  // (content-length or last chunk), false if not read yet or the stream ended early
+  public abstract boolean isComplete();
+
+}
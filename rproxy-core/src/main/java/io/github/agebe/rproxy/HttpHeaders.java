@@ -17,29 +17,27 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
-import org.apache.commons.lang3.StringUtils;
-
 public record HttpHeaders(
     String version,
     int statusCode,
     String status,
     Map<String, List<String>> headers) {
 
+  public HttpHeaders {
+    // case insensitive lookups without scanning all headers
+    headers = HeaderMap.of(headers);
+  }
+
   public Optional<Map.Entry<String, List<String>>> findHeader(String name) {
-    return headers
-        .entrySet()
-        .stream()
-        .filter(me -> StringUtils.equalsIgnoreCase(name, me.getKey()))
-        .findFirst();
+    return Optional.ofNullable(((HeaderMap)headers).getEntry(name));
   }
 
   // returns the header only if it has a single value
   // returns null if the header is not in the map
   // throws exception if the header has multiple values
   public String getHeader(String name) {
-    var h = findHeader(name);
-    if(h.isPresent()) {
-      List<String> l = h.get().getValue();
+    if(headers.containsKey(name)) {
+      List<String> l = headers.get(name);
       if(l == null) {
         return null;
       } else if(l.size() == 1) {
@@ -53,7 +51,14 @@ public record HttpHeaders(
   }
 
   public List<String> getHeaders(String name) {
-    return findHeader(name).map(me -> me.getValue()).orElse(null);
+    return headers.get(name);
+  }
+
+  // returns a copy without the header (case insensitive)
+  public HttpHeaders withoutHeader(String name) {
+    HeaderMap m = new HeaderMap(headers);
+    m.remove(name);
+    return new HttpHeaders(version, statusCode, status, m);
   }
 
 }
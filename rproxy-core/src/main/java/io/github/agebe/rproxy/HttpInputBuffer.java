@@ -0,0 +1,174 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// buffered input stream that gives parsers direct access to the buffered bytes so they can scan for
+// line ends in bulk instead of reading byte by byte. Whatever the parser does not consume stays in the
+// buffer for the next reader (e.g. the response body after the headers, or the next response on a
+// keep-alive connection).
+public class HttpInputBuffer extends InputStream {
+
+  private final InputStream in;
+
+  private final byte[] buf;
+
+  private int pos;
+
+  private int limit;
+
+  public HttpInputBuffer(InputStream in, int size) {
+    super();
+    this.in = in;
+    this.buf = new byte[size];
+  }
+
+  public byte[] buffer() {
+    return buf;
+  }
+
+  public int position() {
+    return pos;
+  }
+
+  public int buffered() {
+    return limit - pos;
+  }
+
+  public int capacity() {
+    return buf.length;
+  }
+
+  public void consume(int n) {
+    if((n < 0) || (n > buffered())) {
+      throw new IllegalArgumentException("can't consume '%s' bytes, buffered '%s'".formatted(n, buffered()));
+    }
+    pos += n;
+  }
+
+  // moves the buffered bytes to the start of the buffer and reads more from the underlying stream.
+  // returns the number of bytes read or -1 on end of stream.
+  public int fill() throws IOException {
+    if(pos > 0) {
+      int remaining = limit - pos;
+      if(remaining > 0) {
+        System.arraycopy(buf, pos, buf, 0, remaining);
+      }
+      pos = 0;
+      limit = remaining;
+    }
+    if(limit == buf.length) {
+      throw new ReverseProxyException("input buffer full ('{}' bytes)", buf.length);
+    }
+    int read = in.read(buf, limit, buf.length - limit);
+    if(read > 0) {
+      limit += read;
+    }
+    return read;
+  }
+
+  // returns the next byte without consuming it, -1 on end of stream
+  public int peek() throws IOException {
+    while(pos == limit) {
+      if(fill() == -1) {
+        return -1;
+      }
+    }
+    return buf[pos] & 0xff;
+  }
+
+  // makes sure the next line (terminated by LF) is in the buffer and returns the index of the LF.
+  // the line starts at position(). returns -1 if the stream ends before the line is complete.
+  public int findLineEnd(int maxLength) throws IOException {
+    int scanned = pos;
+    for(;;) {
+      for(int i=scanned;i<limit;i++) {
+        if(buf[i] == '\n') {
+          return i;
+        }
+      }
+      int length = limit - pos;
+      if(length > maxLength) {
+        throw new ReverseProxyException("line is to large (> '{}')", maxLength);
+      }
+      // keep scan position relative to pos as fill might move the data
+      int scannedRelative = length;
+      if(fill() == -1) {
+        return -1;
+      }
+      scanned = pos + scannedRelative;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    int i = peek();
+    if(i != -1) {
+      pos++;
+    }
+    return i;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if(len == 0) {
+      return 0;
+    }
+    int available = limit - pos;
+    if(available > 0) {
+      int n = Math.min(available, len);
+      System.arraycopy(buf, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+    if(len >= buf.length) {
+      // nothing buffered and a large read, skip the copy
+      return in.read(b, off, len);
+    }
+    if(fill() == -1) {
+      return -1;
+    }
+    int n = Math.min(limit - pos, len);
+    System.arraycopy(buf, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if(n <= 0) {
+      return 0;
+    }
+    int available = limit - pos;
+    if(available > 0) {
+      int skipped = (int) Math.min(available, n);
+      pos += skipped;
+      return skipped;
+    }
+    return in.skip(n);
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (limit - pos) + in.available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
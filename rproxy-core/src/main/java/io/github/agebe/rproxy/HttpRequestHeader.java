@@ -13,14 +13,12 @@
  */
 package io.github.agebe.rproxy;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -34,26 +32,23 @@ public record HttpRequestHeader(
     String queryString,
     Map<String, List<String>> headers) {
 
+  public HttpRequestHeader {
+    // case insensitive lookups without scanning all headers
+    headers = HeaderMap.of(headers);
+  }
+
   private static final Logger log = LoggerFactory.getLogger(HttpRequestHeader.class);
 
   public static final String CRLF = "\r\n";
 
-  private static void addHeader(Map<String, List<String>> headers, String name, String value) {
-    List<String> values = headers.computeIfAbsent(name, k -> new ArrayList<>());
-    values.add(value);
-  }
-
   // get the header case insensitive
   private static List<String> getHeader(String name, Map<String, List<String>> headers) {
-    return headers.entrySet()
-        .stream()
-        .filter(me -> StringUtils.equalsIgnoreCase(name, me.getKey()))
-        .flatMap(me -> me.getValue().stream())
-        .toList();
+    List<String> values = headers.get(name);
+    return values != null ? values : List.of();
   }
 
   public static HttpRequestHeader fromRequest(HttpServletRequest req, String remoteHost, int remotePort) {
-    Map<String, List<String>> headers = new LinkedHashMap<>();
+    HeaderMap headers = new HeaderMap();
     Enumeration<String> headerNames = req.getHeaderNames();
     if(headerNames != null) {
       while(headerNames.hasMoreElements()) {
@@ -64,13 +59,16 @@ public record HttpRequestHeader(
             String v = values.nextElement();
             if(StringUtils.equalsIgnoreCase(name, "host")) {
               String hostAndPort = remotePort!=-1?remoteHost+":"+remotePort:remoteHost;
-              addHeader(headers, name, hostAndPort);
+              headers.add(name, hostAndPort);
             } else if(StringUtils.equalsIgnoreCase(name, "expect")) {
               // ignore the expect header, it seems like tomcat has already dealt with it (between client and this reverse proxy).
               // no need to send it to the downstream server as it just makes the protocol more complicated for no gain IMHO.
               log.debug("ignoring 'expect' header from client, not sending it to the downstream server, '{}: {}'", name, v);
+            } else if(StringUtils.equalsAnyIgnoreCase(name, "connection", "keep-alive")) {
+              // hop-by-hop headers, the connection to the downstream server is pooled independently of the client connection
+              log.debug("ignoring hop-by-hop header from client, not sending it to the downstream server, '{}: {}'", name, v);
             } else {
-              addHeader(headers, name, v);
+              headers.add(name, v);
             }
           }
         }
@@ -103,39 +101,51 @@ public record HttpRequestHeader(
     List<String> newVia = new ArrayList<>(via);
     newVia.add("HTTP/1.1 %s:%s".formatted(req.getLocalAddr(), req.getLocalPort()));
     headers.put("Via", newVia);
+    Trace trace = Trace.start(req);
+    if(trace != null) {
+      // the upstream request is a child of this proxy's span
+      headers.put("traceparent", List.of(trace.getUpstream().traceparent()));
+      if(trace.getParent() == null) {
+        // tracestate belongs to the traceparent, drop it if that has been missing or invalid
+        headers.remove("tracestate");
+      }
+    }
     return new HttpRequestHeader(req.getMethod(), req.getRequestURI(), req.getQueryString(), headers);
   }
 
-  public byte[] toBytes() {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    try(PrintStream p = new PrintStream(out)) {
-      p.printf("%s %s%s HTTP/1.1%s",
-          method,
-          requestURI,
-          (StringUtils.isBlank(queryString)?"":"?"+queryString),
-          CRLF);
-      headers.forEach((k,v) -> {
-        v.forEach(value -> {
-          p.printf("%s: %s%s", k, value, CRLF);
-        });
-      });
-      p.print(CRLF);
+  private HeaderEncoder encode() {
+    HeaderEncoder encoder = HeaderEncoder.get();
+    encoder.writeRequestLine(method, requestURI, queryString);
+    for(Map.Entry<String, List<String>> me : headers.entrySet()) {
+      if(me.getValue() == null) {
+        continue;
+      }
+      for(String value : me.getValue()) {
+        encoder.writeHeader(me.getKey(), value);
+      }
     }
-    return out.toByteArray();
+    return encoder.writeEndOfHeaders();
+  }
+
+  public byte[] toBytes() {
+    return encode().toByteArray();
+  }
+
+  // writes the request header with a single write, without copying it into a new array first
+  public void writeTo(OutputStream out) throws IOException {
+    encode().writeTo(out);
   }
 
   public boolean isTransferEncodingChunked() {
-    if(headers == null) {
-      return false;
+    List<String> encodings = headers.get("transfer-encoding");
+    if(encodings != null) {
+      for(String s : encodings) {
+        if(StringUtils.equalsIgnoreCase("chunked", s)) {
+          return true;
+        }
+      }
     }
-    return headers.entrySet()
-        .stream()
-        .filter(me -> StringUtils.equalsIgnoreCase(me.getKey(), "transfer-encoding"))
-        .flatMap(me -> (me.getValue()!=null?me.getValue().stream():Stream.empty()))
-        .filter(s -> StringUtils.equalsIgnoreCase("chunked", s))
-        .findFirst()
-        .map(s -> true)
-        .orElse(false);
+    return false;
   }
 
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// keeps the exported spans in memory, for tests and debugging
+public class InMemorySpanExporter implements SpanExporter {
+
+  private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+
+  @Override
+  public void export(Span span) {
+    spans.add(span);
+  }
+
+  public List<Span> getSpans() {
+    return new ArrayList<>(spans);
+  }
+
+  public List<Span> getSpans(String traceId) {
+    return spans.stream().filter(s -> s.traceId().equals(traceId)).toList();
+  }
+
+  public void clear() {
+    spans.clear();
+  }
+
+}
@@ -15,7 +15,7 @@ package io.github.agebe.rproxy;
 
 public class InjectorSupport {
 
-  private static Injector injector = new Injector() {
+  private static volatile Injector injector = new Injector() {
     @Override
     public <T> T getInstance(Class<T> cls) {
       try {
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// just enough json for the access log and span exporters
+public class Json {
+
+  public static void string(StringBuilder b, String value) {
+    if(value == null) {
+      b.append("null");
+      return;
+    }
+    b.append('"');
+    for(int i=0;i<value.length();i++) {
+      char c = value.charAt(i);
+      if((c == '"') || (c == '\\')) {
+        b.append('\\').append(c);
+      } else if(c < 0x20) {
+        b.append("\\u%04x".formatted((int)c));
+      } else {
+        b.append(c);
+      }
+    }
+    b.append('"');
+  }
+
+  // appends ',"name":value'
+  public static void field(StringBuilder b, String name, String value) {
+    b.append(",\"").append(name).append("\":");
+    string(b, value);
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// the upstream with the fewest requests in flight, ties are broken randomly so a burst of requests
+// does not all go to the first upstream
+public class LeastOutstandingBalancer implements LoadBalancer {
+
+  @Override
+  public Upstream select(List<Upstream> upstreams, HttpServletRequest request) {
+    int size = upstreams.size();
+    int offset = ThreadLocalRandom.current().nextInt(size);
+    Upstream best = null;
+    for(int i=0;i<size;i++) {
+      Upstream u = upstreams.get((offset + i) % size);
+      if((best == null) || (u.getOutstanding() < best.getOutstanding())) {
+        best = u;
+      }
+    }
+    return best;
+  }
+
+}
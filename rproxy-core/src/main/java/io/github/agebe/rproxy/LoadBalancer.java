@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+import java.util.function.Function;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// picks the upstream for a request, the list is never empty
+@FunctionalInterface
+public interface LoadBalancer {
+
+  Upstream select(List<Upstream> upstreams, HttpServletRequest request);
+
+  static LoadBalancer roundRobin() {
+    return new RoundRobinBalancer();
+  }
+
+  static LoadBalancer leastOutstanding() {
+    return new LeastOutstandingBalancer();
+  }
+
+  static LoadBalancer powerOfTwoChoices() {
+    return new PowerOfTwoChoicesBalancer();
+  }
+
+  // requests with the same key go to the same upstream as long as the upstreams don't change
+  static LoadBalancer consistentHash(Function<HttpServletRequest, String> key) {
+    return new ConsistentHashBalancer(key);
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// a cached body in a file on local disk. the file is memory mapped on first use so the body stays off heap
+// and is read straight from the page cache. files larger than 1GB are mapped in segments.
+public class MappedCacheBody implements CacheBody {
+
+  private static final long SEGMENT_SIZE = 1L << 30;
+
+  private final Path path;
+
+  private final long length;
+
+  private volatile ByteBuffer[] segments;
+
+  public MappedCacheBody(Path path, long length) {
+    super();
+    this.path = path;
+    this.length = length;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public InputStream open() throws IOException {
+    ByteBuffer[] mapped = map();
+    ByteBuffer[] buffers = new ByteBuffer[mapped.length];
+    for(int i=0;i<mapped.length;i++) {
+      buffers[i] = mapped[i].duplicate();
+    }
+    return new MappedInputStream(buffers);
+  }
+
+  // the mapping stays valid after the file has been deleted (evicted) so readers that have the body open
+  // are not affected. the mapping is released when this object is garbage collected.
+  private ByteBuffer[] map() throws IOException {
+    ByteBuffer[] result = segments;
+    if(result == null) {
+      synchronized(this) {
+        result = segments;
+        if(result == null) {
+          int count = (int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+          result = new ByteBuffer[count];
+          try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() < length) {
+              throw new ReverseProxyException("cached body '{}' truncated, expected '{}' bytes, file has '{}'",
+                  path, length, channel.size());
+            }
+            for(int i=0;i<count;i++) {
+              long position = i * SEGMENT_SIZE;
+              result[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, length - position));
+            }
+          }
+          segments = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return path + " (" + length + " bytes)";
+  }
+
+  private static class MappedInputStream extends InputStream {
+
+    private final ByteBuffer[] buffers;
+
+    private int index;
+
+    private MappedInputStream(ByteBuffer[] buffers) {
+      super();
+      this.buffers = buffers;
+    }
+
+    private ByteBuffer current() {
+      while(index < buffers.length) {
+        if(buffers[index].hasRemaining()) {
+          return buffers[index];
+        }
+        index++;
+      }
+      return null;
+    }
+
+    @Override
+    public int read() {
+      ByteBuffer b = current();
+      return b != null ? b.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if(len == 0) {
+        return 0;
+      }
+      ByteBuffer buf = current();
+      if(buf == null) {
+        return -1;
+      }
+      int n = Math.min(len, buf.remaining());
+      buf.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      ByteBuffer buf = current();
+      if((buf == null) || (n <= 0)) {
+        return 0;
+      }
+      int skipped = (int)Math.min(n, buf.remaining());
+      buf.position(buf.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      ByteBuffer buf = current();
+      return buf != null ? buf.remaining() : 0;
+    }
+
+  }
+
+}
@@ -38,6 +38,12 @@ public enum MatchType {
       this.pattern = pattern;
     }
 
+    public String getPattern() {
+      return pattern;
+    }
+
+    public abstract MatchType getType();
+
     @Override
     public String toString() {
       return pattern;
@@ -53,6 +59,11 @@ public enum MatchType {
       this.matcher = GlobPattern.compile(pattern);
     }
 
+    @Override
+    public MatchType getType() {
+      return MatchType.GLOB;
+    }
+
     @Override
     public boolean test(String t) {
       return matcher.matches(t);
@@ -69,6 +80,11 @@ public enum MatchType {
       this.regexMatcher = Pattern.compile(pattern).asMatchPredicate();
     }
 
+    @Override
+    public MatchType getType() {
+      return MatchType.REGEX;
+    }
+
     @Override
     public boolean test(String t) {
       return regexMatcher.test(t);
@@ -81,6 +97,11 @@ public enum MatchType {
       super(pattern);
     }
 
+    @Override
+    public MatchType getType() {
+      return MatchType.EQUALS;
+    }
+
     @Override
     public boolean test(String t) {
       return StringUtils.equals(pattern, t);
@@ -93,6 +114,11 @@ public enum MatchType {
       super("*");
     }
 
+    @Override
+    public MatchType getType() {
+      return MatchType.ALL;
+    }
+
     @Override
     public boolean test(String t) {
       return true;
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.ByteArrayOutputStream;
+
+public class MemoryCacheWriter implements CacheWriter {
+
+  private final long maxLength;
+
+  private ByteArrayOutputStream out;
+
+  public MemoryCacheWriter(long contentLength, long maxLength) {
+    super();
+    this.maxLength = maxLength;
+    this.out = new ByteArrayOutputStream((int)Math.max(32, Math.min(contentLength, maxLength)));
+  }
+
+  @Override
+  public boolean write(byte[] b, int off, int len) {
+    if(out == null) {
+      return false;
+    }
+    if(out.size() + len > maxLength) {
+      abort();
+      return false;
+    }
+    out.write(b, off, len);
+    return true;
+  }
+
+  @Override
+  public CacheBody finish() {
+    if(out == null) {
+      throw new ReverseProxyException("cache writer aborted");
+    }
+    CacheBody body = CacheBody.of(out.toByteArray());
+    out = null;
+    return body;
+  }
+
+  @Override
+  public void abort() {
+    out = null;
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// in memory response cache bounded by bytes, evicts the least recently used resources (with all their variants)
+public class MemoryResponseCache implements ResponseCache {
+
+  private static final Logger log = LoggerFactory.getLogger(MemoryResponseCache.class);
+
+  private final long maxBytes;
+
+  private final long maxEntryBytes;
+
+  // access ordered, eldest first
+  private final LinkedHashMap<String, List<CachedResponse>> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  private long bytes;
+
+  // a single response takes up to 1/8 of the cache
+  public MemoryResponseCache(long maxBytes) {
+    this(maxBytes, maxBytes / 8);
+  }
+
+  public MemoryResponseCache(long maxBytes, long maxEntryBytes) {
+    super();
+    this.maxBytes = maxBytes;
+    this.maxEntryBytes = maxEntryBytes;
+  }
+
+  @Override
+  public synchronized CachedResponse get(String key, HttpRequestHeader request) {
+    List<CachedResponse> variants = entries.get(key);
+    if(variants != null) {
+      for(CachedResponse r : variants) {
+        if(r.matches(request)) {
+          return r;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public CacheWriter writer(String key, long contentLength) {
+    if(contentLength > maxEntryBytes) {
+      return null;
+    }
+    return new MemoryCacheWriter(contentLength, maxEntryBytes);
+  }
+
+  @Override
+  public void put(String key, CachedResponse response) {
+    long size = response.size();
+    if(size > maxEntryBytes) {
+      return;
+    }
+    synchronized(this) {
+      List<CachedResponse> variants = entries.computeIfAbsent(key, k -> new ArrayList<>(1));
+      Iterator<CachedResponse> iter = variants.iterator();
+      while(iter.hasNext()) {
+        CachedResponse r = iter.next();
+        if(r.vary().equals(response.vary())) {
+          iter.remove();
+          bytes -= r.size();
+        }
+      }
+      variants.add(response);
+      bytes += size;
+      evict();
+    }
+    log.debug("cached '{}', '{}' bytes", key, size);
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, List<CachedResponse>>> iter = entries.entrySet().iterator();
+    while((bytes > maxBytes) && iter.hasNext()) {
+      Map.Entry<String, List<CachedResponse>> eldest = iter.next();
+      iter.remove();
+      for(CachedResponse r : eldest.getValue()) {
+        bytes -= r.size();
+      }
+      log.debug("evicted '{}'", eldest.getKey());
+    }
+  }
+
+  @Override
+  public synchronized void remove(String key) {
+    List<CachedResponse> variants = entries.remove(key);
+    if(variants != null) {
+      for(CachedResponse r : variants) {
+        bytes -= r.size();
+      }
+    }
+  }
+
+  public long getMaxEntryBytes() {
+    return maxEntryBytes;
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized int getCount() {
+    return entries.size();
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// metrics SPI along the lines of micrometer, see MetricsSupport. meters are looked up by name and tags
+// (key, value, key, value, ...), an implementation returns the same meter for the same name and tags.
+// timers record nanoseconds. The meters the proxy records:
+// per route (the path matcher of the handler that took the request):
+// - rproxy.requests                  counter  route, status (1xx, 2xx, 3xx, 4xx, 5xx)
+// - rproxy.requests.duration         timer    route
+// - rproxy.requests.active           gauge    route
+// per upstream (scheme://host:port):
+// - rproxy.upstream.requests         counter  upstream, status
+// - rproxy.upstream.duration         timer    upstream, from sending the request until the response is relayed
+// - rproxy.upstream.connect          timer    upstream, new connections only, includes the tls handshake
+// - rproxy.upstream.first_byte       timer    upstream, from sending the request until the response header is
+//                                             read, includes connect for new connections
+// - rproxy.upstream.bytes.sent       counter  upstream, request body bytes
+// - rproxy.upstream.bytes.received   counter  upstream, response body bytes
+// - rproxy.pool.leased               gauge    upstream, pool, connections in use
+// - rproxy.pool.idle                 gauge    upstream, pool, connections kept for reuse
+// - rproxy.pool.created              counter  upstream, pool, connections opened
+// pool is blocking (ConnectionPool) or async (AsyncConnectionPool), both engines record the same meters.
+public interface Metrics {
+
+  String REQUESTS = "rproxy.requests";
+  String REQUESTS_DURATION = "rproxy.requests.duration";
+  String REQUESTS_ACTIVE = "rproxy.requests.active";
+  String UPSTREAM_REQUESTS = "rproxy.upstream.requests";
+  String UPSTREAM_DURATION = "rproxy.upstream.duration";
+  String UPSTREAM_CONNECT = "rproxy.upstream.connect";
+  String UPSTREAM_FIRST_BYTE = "rproxy.upstream.first_byte";
+  String UPSTREAM_BYTES_SENT = "rproxy.upstream.bytes.sent";
+  String UPSTREAM_BYTES_RECEIVED = "rproxy.upstream.bytes.received";
+  String POOL_LEASED = "rproxy.pool.leased";
+  String POOL_IDLE = "rproxy.pool.idle";
+  String POOL_CREATED = "rproxy.pool.created";
+
+  interface Counter {
+
+    void increment(long amount);
+
+    default void increment() {
+      increment(1);
+    }
+
+  }
+
+  interface Timer {
+
+    void record(long nanos);
+
+  }
+
+  // a value that goes up and down
+  interface Gauge {
+
+    void add(long delta);
+
+    void set(long value);
+
+  }
+
+  Counter counter(String name, String... tags);
+
+  Timer timer(String name, String... tags);
+
+  Gauge gauge(String name, String... tags);
+
+  static String statusClass(int status) {
+    return switch(status / 100) {
+    case 1 -> "1xx";
+    case 2 -> "2xx";
+    case 3 -> "3xx";
+    case 4 -> "4xx";
+    default -> "5xx";
+    };
+  }
+
+  Metrics NOOP = new Metrics() {
+
+    private static final Counter COUNTER = amount -> {};
+
+    private static final Timer TIMER = nanos -> {};
+
+    private static final Gauge GAUGE = new Gauge() {
+
+      @Override
+      public void add(long delta) {
+      }
+
+      @Override
+      public void set(long value) {
+      }
+
+    };
+
+    @Override
+    public Counter counter(String name, String... tags) {
+      return COUNTER;
+    }
+
+    @Override
+    public Timer timer(String name, String... tags) {
+      return TIMER;
+    }
+
+    @Override
+    public Gauge gauge(String name, String... tags) {
+      return GAUGE;
+    }
+
+  };
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.net.URL;
+
+import org.apache.commons.lang3.StringUtils;
+
+// scheme, host and port of an upstream server, connections are pooled per origin
+public record Origin(
+    String scheme,
+    String host,
+    int port) {
+
+  public static Origin of(URL url) {
+    String scheme = StringUtils.lowerCase(url.getProtocol());
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    return new Origin(scheme, StringUtils.lowerCase(url.getHost()), port);
+  }
+
+  public boolean isSecure() {
+    return "https".equals(scheme);
+  }
+
+  @Override
+  public String toString() {
+    return "%s://%s:%s".formatted(scheme, host, port);
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.Duration;
+
+// passive health checking on the requests going through the proxy. an upstream is ejected from the load
+// balancing for baseEjectionTime, longer each time it gets ejected again (up to maxEjectionTime), if
+// - it fails consecutiveFailures requests in a row (connect failures, bad gateway, 5xx), 0 disables this check
+// - at least failureRatePercent of its requests failed within failureRateInterval, checked once there have been
+//   failureRateMinRequests requests in the interval. catches upstreams that fail often but not in a row.
+//   failureRatePercent 0 disables this check
+// no more than maxEjectionPercent of the upstreams of a group are ejected at the same time.
+public record OutlierDetection(
+    int consecutiveFailures,
+    Duration baseEjectionTime,
+    Duration maxEjectionTime,
+    int maxEjectionPercent,
+    int failureRatePercent,
+    int failureRateMinRequests,
+    Duration failureRateInterval) {
+
+  public static final OutlierDetection DEFAULT = new OutlierDetection(
+      5,
+      Duration.ofSeconds(30),
+      Duration.ofMinutes(5),
+      50,
+      25,
+      20,
+      Duration.ofSeconds(10));
+
+  // consecutive failures only
+  public OutlierDetection(
+      int consecutiveFailures,
+      Duration baseEjectionTime,
+      Duration maxEjectionTime,
+      int maxEjectionPercent) {
+    this(consecutiveFailures, baseEjectionTime, maxEjectionTime, maxEjectionPercent, 0, 0, Duration.ZERO);
+  }
+
+  public static OutlierDetection disabled() {
+    return new OutlierDetection(0, Duration.ZERO, Duration.ZERO, 0);
+  }
+
+  public OutlierDetection withFailureRate(int failureRatePercent, int failureRateMinRequests, Duration failureRateInterval) {
+    return new OutlierDetection(consecutiveFailures, baseEjectionTime, maxEjectionTime, maxEjectionPercent,
+        failureRatePercent, failureRateMinRequests, failureRateInterval);
+  }
+
+  public boolean isEnabled() {
+    return (consecutiveFailures > 0) || isFailureRateEnabled();
+  }
+
+  public boolean isFailureRateEnabled() {
+    return (failureRatePercent > 0) && !failureRateInterval.isZero();
+  }
+
+  public Duration ejectionTime(int ejections) {
+    Duration d = baseEjectionTime.multipliedBy(Math.max(1, ejections));
+    return d.compareTo(maxEjectionTime) > 0 ? maxEjectionTime : d;
+  }
+
+}
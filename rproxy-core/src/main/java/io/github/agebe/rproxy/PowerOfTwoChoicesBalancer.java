@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// picks two upstreams at random and takes the one with the lower cost (moving average latency weighted by
+// the requests in flight). avoids the herding of always picking the best upstream while still steering
+// away from slow ones, https://www.eecs.harvard.edu/~michaelm/postscripts/handbook2001.pdf
+public class PowerOfTwoChoicesBalancer implements LoadBalancer {
+
+  @Override
+  public Upstream select(List<Upstream> upstreams, HttpServletRequest request) {
+    int size = upstreams.size();
+    if(size == 1) {
+      return upstreams.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int a = random.nextInt(size);
+    int b = random.nextInt(size - 1);
+    if(b >= a) {
+      b++;
+    }
+    Upstream ua = upstreams.get(a);
+    Upstream ub = upstreams.get(b);
+    return cost(ua) <= cost(ub) ? ua : ub;
+  }
+
+  private static double cost(Upstream u) {
+    // upstreams without samples yet get tried first
+    return u.getLatencyEwma() * (u.getOutstanding() + 1);
+  }
+
+}
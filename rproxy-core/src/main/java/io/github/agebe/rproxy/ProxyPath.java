@@ -28,4 +28,13 @@ import java.lang.annotation.Target;
 public @interface ProxyPath {
   String value();
   MatchType type() default MatchType.GLOB;
+  // timeouts in milliseconds for requests on this path, see ForwardTimeouts. below 0 keeps the default
+  long connectTimeoutMs() default -1;
+  long firstByteTimeoutMs() default -1;
+  long idleTimeoutMs() default -1;
+  long deadlineMs() default -1;
+  // collapse identical concurrent requests into one upstream request, see Coalescing.
+  // the headers that make requests different, empty for the defaults
+  boolean coalesce() default false;
+  String[] coalesceHeaders() default {};
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// runs the request body upload to the upstream server while the calling thread reads the response.
+// VIRTUAL uses a virtual thread per upload (java 21+), POOLED a pool of platform threads.
+// in POOLED mode maxThreads is a hard cap on concurrent uploads. An upload has to reserve a thread before
+// the request is sent upstream, if none becomes available within the wait timeout the request is refused
+// with a 503 (ServiceUnavailableException).
+public class RequestBodyExecutor implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestBodyExecutor.class);
+
+  public static final Duration DEFAULT_WAIT_TIMEOUT = Duration.ofSeconds(1);
+
+  public enum Mode {
+    POOLED,
+    VIRTUAL,
+  }
+
+  // a thread reserved for one upload, released when the upload is done or when closed without submitting
+  public class Reservation implements AutoCloseable {
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private boolean submitted;
+
+    private Reservation() {
+      super();
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+      if(submitted) {
+        throw new IllegalStateException("reservation already used");
+      }
+      submitted = true;
+      // done() also runs if the upload is cancelled before it started
+      FutureTask<T> future = new FutureTask<>(task) {
+        @Override
+        protected void done() {
+          release();
+        }
+      };
+      try {
+        executor.execute(future);
+      } catch(RuntimeException e) {
+        release();
+        throw e;
+      }
+      return future;
+    }
+
+    private void release() {
+      if((permits != null) && released.compareAndSet(false, true)) {
+        permits.release();
+      }
+    }
+
+    @Override
+    public void close() {
+      if(!submitted) {
+        release();
+      }
+    }
+
+  }
+
+  private static final AtomicLong threadCounter = new AtomicLong();
+
+  private final Mode mode;
+
+  private final ExecutorService executor;
+
+  // null if the number of uploads is not limited
+  private final Semaphore permits;
+
+  private final Duration waitTimeout;
+
+  private final LongAdder rejected = new LongAdder();
+
+  private RequestBodyExecutor(Mode mode, ExecutorService executor, Semaphore permits, Duration waitTimeout) {
+    super();
+    this.mode = mode;
+    this.executor = executor;
+    this.permits = permits;
+    this.waitTimeout = waitTimeout;
+  }
+
+  private static Thread newThread(Runnable r) {
+    Thread t = new Thread(r, "rproxy-request-body-" + threadCounter.incrementAndGet());
+    t.setDaemon(true);
+    return t;
+  }
+
+  public static RequestBodyExecutor pooled(int maxThreads) {
+    return pooled(maxThreads, DEFAULT_WAIT_TIMEOUT);
+  }
+
+  // the reservations make sure there are never more uploads than threads so a task in the queue only waits for
+  // a thread that is just done with the previous upload, it can't get stuck behind uploads that wait on it.
+  public static RequestBodyExecutor pooled(int maxThreads, Duration waitTimeout) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        maxThreads,
+        maxThreads,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        RequestBodyExecutor::newThread);
+    executor.allowCoreThreadTimeOut(true);
+    return new RequestBodyExecutor(Mode.POOLED, executor, new Semaphore(maxThreads), waitTimeout);
+  }
+
+  public static RequestBodyExecutor virtual() {
+    Method m = newVirtualThreadPerTaskExecutor();
+    if(m == null) {
+      throw new ReverseProxyException("virtual threads require java 21+, running on '{}'",
+          System.getProperty("java.version"));
+    }
+    try {
+      return new RequestBodyExecutor(Mode.VIRTUAL, (ExecutorService) m.invoke(null), null, null);
+    } catch(Exception e) {
+      throw new ReverseProxyException("failed to create virtual thread executor", e);
+    }
+  }
+
+  // virtual threads if the runtime supports them, otherwise a bounded pool
+  public static RequestBodyExecutor virtualOrPooled(int maxThreads) {
+    return isVirtualThreadsSupported() ? virtual() : pooled(maxThreads);
+  }
+
+  public static boolean isVirtualThreadsSupported() {
+    return newVirtualThreadPerTaskExecutor() != null;
+  }
+
+  // compiled for java 17 so look the virtual thread executor up at runtime
+  private static Method newVirtualThreadPerTaskExecutor() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch(NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  // reserves a thread for an upload, waits up to the wait timeout if all threads are busy.
+  // call before sending the request upstream so it can still be refused cleanly.
+  public Reservation reserve() {
+    if(permits != null) {
+      try {
+        if(!permits.tryAcquire(waitTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+          rejected.increment();
+          log.debug("all '{}' request body threads busy for '{}'", getMaxThreads(), waitTimeout);
+          throw new ServiceUnavailableException("all '{}' request body threads busy", getMaxThreads());
+        }
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ServiceUnavailableException("interrupted while waiting for a request body thread", e);
+      }
+    }
+    return new Reservation();
+  }
+
+  public <T> Future<T> submit(Callable<T> task) {
+    return reserve().submit(task);
+  }
+
+  // -1 if not limited
+  public int getMaxThreads() {
+    return executor instanceof ThreadPoolExecutor tpe ? tpe.getMaximumPoolSize() : -1;
+  }
+
+  // uploads running or reserved
+  public int getActive() {
+    return permits != null ? getMaxThreads() - permits.availablePermits() : -1;
+  }
+
+  // requests refused because all threads were busy
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+}
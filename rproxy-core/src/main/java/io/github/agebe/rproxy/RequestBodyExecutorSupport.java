@@ -0,0 +1,35 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+public class RequestBodyExecutorSupport {
+
+  public static final int DEFAULT_MAX_THREADS = 256;
+
+  private static volatile RequestBodyExecutor executor = RequestBodyExecutor.pooled(DEFAULT_MAX_THREADS);
+
+  public static RequestBodyExecutor getExecutor() {
+    return executor;
+  }
+
+  // running uploads finish on the previous executor
+  public static void setExecutor(RequestBodyExecutor executor) {
+    RequestBodyExecutor previous = RequestBodyExecutorSupport.executor;
+    RequestBodyExecutorSupport.executor = executor;
+    if(previous != executor) {
+      previous.close();
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// copies the request body from the client to the upstream server.
+// returns true if the whole body has been sent, false if it stopped early (cancelled or failed)
+public class RequestBodyPump implements Callable<Boolean> {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestBodyPump.class);
+
+  private static final byte[] LAST_CHUNK = ("0" + HttpRequestHeader.CRLF + HttpRequestHeader.CRLF).getBytes(ISO_8859_1);
+
+  private final String requestId;
+
+  private final InputStream in;
+
+  private final OutputStream out;
+
+  private final boolean chunked;
+
+  // counts the body bytes sent, can be null
+  private final Metrics.Counter sent;
+
+  public RequestBodyPump(String requestId, InputStream in, OutputStream out, boolean chunked) {
+    this(requestId, in, out, chunked, null);
+  }
+
+  public RequestBodyPump(String requestId, InputStream in, OutputStream out, boolean chunked, Metrics.Counter sent) {
+    super();
+    this.requestId = requestId;
+    this.in = in;
+    this.out = out;
+    this.chunked = chunked;
+    this.sent = sent;
+  }
+
+  @Override
+  public Boolean call() {
+    long total = 0;
+    try {
+      byte[] buf = new byte[8192];
+      for(;;) {
+        if(Thread.currentThread().isInterrupted()) {
+          log.debug("request body upload '{}' cancelled after '{}' bytes", requestId, total);
+          return false;
+        }
+        log.trace("reading request body ...");
+        int read = in.read(buf);
+        if(read == -1) {
+          log.debug("reached end of request body '{}', '{}' bytes", requestId, total);
+          break;
+        } else if(read > 0) {
+          total += read;
+          log.trace("received '{}' bytes, total '{}', now writing to output stream ...", read, total);
+          if(chunked) {
+            // test chunked upload with curl and EchoServer
+            // curl -H "Transfer-Encoding: chunked" --data-binary @my-file.bin http://localhost:8080/test/1 --output response-file.bin
+            out.write((Integer.toString(read,16) + HttpRequestHeader.CRLF).getBytes(ISO_8859_1));
+            out.write(buf, 0, read);
+            out.write(HttpRequestHeader.CRLF.getBytes(ISO_8859_1));
+            log.trace("written chunked request body bytes '{}' to server", read);
+          } else {
+            out.write(buf, 0, read);
+            log.trace("written request body bytes '{}' to server", read);
+          }
+        }
+      }
+      if(chunked) {
+        // write last chunk, https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Transfer-Encoding
+        out.write(LAST_CHUNK);
+      }
+      out.flush();
+      return true;
+    } catch(Exception e) {
+      if(Thread.currentThread().isInterrupted()) {
+        log.debug("request body upload '{}' cancelled", requestId, e);
+      } else {
+        log.error("failed to send request body to downstream", e);
+      }
+      return false;
+    } finally {
+      if(sent != null) {
+        sent.increment(total);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// per request state GatewayFilter and ReverseProxy share, the request id, the route and what happened upstream.
+// set as request attribute by GatewayFilter.
+public class RequestContext {
+
+  public static final String ATTRIBUTE = RequestContext.class.getName();
+
+  private final String requestId;
+
+  private final String route;
+
+  private final long startMillis = System.currentTimeMillis();
+
+  private final long startNanos = System.nanoTime();
+
+  private volatile String upstream;
+
+  private volatile long firstByteNanos = -1;
+
+  private volatile long bytesIn;
+
+  private volatile long bytesOut;
+
+  public RequestContext(String requestId, String route) {
+    super();
+    this.requestId = requestId;
+    this.route = route;
+  }
+
+  public static RequestContext get(HttpServletRequest request) {
+    Object o = request.getAttribute(ATTRIBUTE);
+    return (o instanceof RequestContext c) ? c : null;
+  }
+
+  public static void set(HttpServletRequest request, RequestContext context) {
+    request.setAttribute(ATTRIBUTE, context);
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public String getRoute() {
+    return route;
+  }
+
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  // the origin the request has been forwarded to, null if it has not been forwarded
+  public String getUpstream() {
+    return upstream;
+  }
+
+  public void setUpstream(String upstream) {
+    this.upstream = upstream;
+  }
+
+  // time from sending the request upstream until the response header has been read, -1 if not forwarded
+  public long getFirstByteNanos() {
+    return firstByteNanos;
+  }
+
+  public void setFirstByteNanos(long firstByteNanos) {
+    this.firstByteNanos = firstByteNanos;
+  }
+
+  // request body bytes sent upstream
+  public long getBytesIn() {
+    return bytesIn;
+  }
+
+  public void setBytesIn(long bytesIn) {
+    this.bytesIn = bytesIn;
+  }
+
+  // response body bytes received from upstream
+  public long getBytesOut() {
+    return bytesOut;
+  }
+
+  public void setBytesOut(long bytesOut) {
+    this.bytesOut = bytesOut;
+  }
+
+}
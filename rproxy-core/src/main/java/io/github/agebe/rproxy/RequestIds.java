@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// request ids for log correlation, a random prefix per jvm followed by a counter (e.g. '3f9a1c07-2a').
+// unique enough to tell requests apart across restarts and instances, and unlike UUID.randomUUID
+// there is no SecureRandom on the request path.
+public class RequestIds {
+
+  private static final String PREFIX = "%08x-".formatted(new SecureRandom().nextInt());
+
+  private static final AtomicLong counter = new AtomicLong();
+
+  public static String next() {
+    return PREFIX + Long.toHexString(counter.incrementAndGet());
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// stores upstream responses, see ResponseCacheSupport. the key identifies the resource (origin, path and query),
+// a key can have several variants that differ in the request headers named in the Vary response header.
+// freshness is decided by the caller, the cache returns stale entries too.
+public interface ResponseCache {
+
+  // the variant matching the request or null
+  CachedResponse get(String key, HttpRequestHeader request);
+
+  // returns a writer for a response body of the given length (-1 if unknown) or null if the cache does
+  // not take it (e.g. to large)
+  CacheWriter writer(String key, long contentLength);
+
+  // stores the response, replaces the variant with the same vary values
+  void put(String key, CachedResponse response);
+
+  void remove(String key);
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+// chains response content stages. The output of a stage is the input of the next stage,
+// the output of the last stage is written to the client.
+public class ResponseContentPipeline {
+
+  private final List<ResponseContentStage> stages;
+
+  public ResponseContentPipeline(List<ResponseContentStage> stages) {
+    super();
+    this.stages = List.copyOf(stages);
+  }
+
+  public static ResponseContentPipeline of(ResponseContentStage... stages) {
+    return new ResponseContentPipeline(Arrays.asList(stages));
+  }
+
+  public boolean isEmpty() {
+    return stages.isEmpty();
+  }
+
+  public List<ResponseContentStage> getStages() {
+    return stages;
+  }
+
+  // returns a stream that feeds everything written to it through the stages and on to out.
+  // closing the stream completes the stages, out is flushed but not closed.
+  public OutputStream open(HttpHeaders headers, OutputStream out) {
+    return new OutputStream() {
+
+      private boolean closed;
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if(closed) {
+          throw new IOException("pipeline closed");
+        }
+        if(len > 0) {
+          push(0, Arrays.copyOfRange(b, off, off + len));
+        }
+      }
+
+      private void push(int stage, byte[] chunk) throws IOException {
+        for(int i=stage;i<stages.size();i++) {
+          chunk = stages.get(i).apply(headers, chunk);
+          if((chunk == null) || (chunk.length == 0)) {
+            return;
+          }
+        }
+        out.write(chunk);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        out.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        if(closed) {
+          return;
+        }
+        closed = true;
+        for(int i=0;i<stages.size();i++) {
+          byte[] rest = stages.get(i).complete(headers);
+          if((rest != null) && (rest.length > 0)) {
+            push(i + 1, rest);
+          }
+        }
+        out.flush();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.ByteArrayOutputStream;
+
+// a streaming response body transformation. apply is called with every piece of the body as it arrives
+// from the server together with the response headers and returns the bytes passed on to the next stage
+// (or the client). It may return null or an empty array to hold data back, e.g. to match patterns across
+// piece boundaries, and release it on a later call or on complete.
+// stages can keep state and are used for a single response.
+@FunctionalInterface
+public interface ResponseContentStage extends ResponseContentModifier {
+
+  // called after the last piece of the body, returns the bytes still held back (if any)
+  default byte[] complete(HttpHeaders headers) {
+    return null;
+  }
+
+  static ResponseContentStage of(ResponseContentModifier modifier) {
+    return modifier::apply;
+  }
+
+  // collects the whole body and applies the modifier once on complete,
+  // for modifications that need to see the complete body
+  static ResponseContentStage buffered(ResponseContentModifier modifier) {
+    return new ResponseContentStage() {
+
+      private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+      @Override
+      public byte[] apply(HttpHeaders headers, byte[] chunk) {
+        body.writeBytes(chunk);
+        return null;
+      }
+
+      @Override
+      public byte[] complete(HttpHeaders headers) {
+        return modifier.apply(headers, body.toByteArray());
+      }
+    };
+  }
+
+}
@@ -13,31 +13,32 @@
  */
 package io.github.agebe.rproxy;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -47,7 +48,13 @@ public class ReverseProxy {
 
   private static final int BUF_SIZE = 64 * 1024;
 
-  private static URL toUrl(String url) {
+  // the relay buffer of the request thread, reused for every response body
+  private static final ThreadLocal<byte[]> RELAY_BUFFER = ThreadLocal.withInitial(() -> new byte[BUF_SIZE]);
+
+  // pooled connections might be closed by the server while idle, retry once on a new connection
+  private static final int MAX_ATTEMPTS = 2;
+
+  static URL toUrl(String url) {
     try {
       return new URL(url);
     } catch (MalformedURLException e) {
@@ -62,7 +69,7 @@ public class ReverseProxy {
       newVia.addAll(via);
     }
     newVia.add("HTTP/1.1 %s:%s".formatted(req.getLocalAddr(), req.getLocalPort()));
-    Map<String, List<String>> m = new LinkedHashMap<>(headers.headers());
+    HeaderMap m = new HeaderMap(headers.headers());
     m.put("Via", newVia);
     return new HttpHeaders(
         headers.version(),
@@ -71,7 +78,7 @@ public class ReverseProxy {
         m);
   }
 
-  private static HttpHeaders applyReponseHeaderModifiers(
+  static HttpHeaders applyReponseHeaderModifiers(
       ResponseHeaderModifier responseHeaderModifier,
       HttpHeaders headers,
       HttpServletRequest req) {
@@ -82,7 +89,7 @@ public class ReverseProxy {
     return result;
   }
 
-  private static boolean hasRequestBody(HttpServletRequest request) {
+  static boolean hasRequestBody(HttpServletRequest request) {
     if(request.getContentLengthLong() > 0) {
       return true;
     }
@@ -103,166 +110,722 @@ public class ReverseProxy {
       RequestHeaderModifier requestHeaderModifier,
       ResponseHeaderModifier responseHeaderModifier,
       OutputStream respOut) {
-    final String requestId = UUID.randomUUID().toString();
+    forwardRequestStreamResult(
+        remoteBaseUrl,
+        request,
+        response,
+        requestHeaderModifier,
+        responseHeaderModifier,
+        null,
+        respOut);
+  }
+
+  // the response body is passed through the content pipeline (if not null or empty) on the way to the client
+  public static void forwardRequestStreamResult(
+      String remoteBaseUrl,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      RequestHeaderModifier requestHeaderModifier,
+      ResponseHeaderModifier responseHeaderModifier,
+      ResponseContentPipeline contentPipeline,
+      OutputStream respOut) {
+    RequestContext context = RequestContext.get(request);
+    final String requestId = context != null ? context.getRequestId() : RequestIds.next();
     URL remote = toUrl(remoteBaseUrl);
-    try(Socket socket = getSocket(remote)) {
-      log.info("forwarding '{} {}' to '{}'", request.getMethod(), request.getRequestURI(), remote);
-      log.debug("execute request id '{}'", requestId);
-      Thread requestBodyWriterThread = null;
+    Origin origin = Origin.of(remote);
+    ConnectionPool pool = ConnectionPoolSupport.getConnectionPool();
+    ForwardTimeouts timeouts = ForwardTimeouts.get(request);
+    Deadline deadline = Deadline.start(timeouts.deadline());
+    try {
+      log.debug("forwarding '{} {}' to '{}', request id '{}'", request.getMethod(), request.getRequestURI(), remote, requestId);
       HttpRequestHeader requestHeader = RequestHeaderModifier.fromRequest(
           request,
           remote.getHost(),
           remote.getPort(),
           requestHeaderModifier);
-      byte[] requestHeaderBytes = requestHeader.toBytes();
-      if (log.isTraceEnabled()) {
-        log.trace("sending request headers to server ... \n{}", HexDump
-            .hexdump(requestHeaderBytes)
-            .stream()
-            .collect(Collectors.joining("\n")));
+      requestHeader = Compression.upstreamRequest(CompressionSupport.getConfig(), requestHeader);
+      Coalescing coalescing = Coalescing.get(request);
+      String flightKey = ((coalescing != null) && Coalescing.isCoalescable(requestHeader, hasRequestBody(request)))
+          ? coalescing.key(origin, requestHeader)
+          : null;
+      ResponseCache cache = ResponseCacheSupport.getCache();
+      String cacheKey = null;
+      // the stored response this request revalidates
+      CachedResponse revalidating = null;
+      // the stored response that is served if the upstream server fails (stale-if-error)
+      CachedResponse fallback = null;
+      if((cache != null) && CachePolicy.isCacheableRequest(requestHeader)) {
+        cacheKey = CachePolicy.key(origin, requestHeader);
+        CachedResponse cached = cache.get(cacheKey, requestHeader);
+        long now = System.currentTimeMillis();
+        boolean mayServe = CachePolicy.mayServeFromCache(requestHeader);
+        if((cached != null) && mayServe && cached.isFresh(now)) {
+          if(serveCached(cached, now, request, response, responseHeaderModifier, contentPipeline, respOut)) {
+            log.debug("cache hit '{}'", cacheKey);
+            return;
+          }
+          cache.remove(cacheKey);
+          cached = null;
+        }
+        if((cached != null) && mayServe && CachePolicy.mayServeWhileRevalidate(cached, now)) {
+          if(serveCached(cached, now, request, response, responseHeaderModifier, contentPipeline, respOut)) {
+            log.debug("cache hit '{}', stale while revalidate", cacheKey);
+            revalidateInBackground(cache, cacheKey, cached, origin, requestHeader, timeouts);
+            return;
+          }
+          cache.remove(cacheKey);
+          cached = null;
+        }
+        if(cached != null) {
+          HttpRequestHeader conditional = CachePolicy.conditional(requestHeader, cached);
+          if(conditional != null) {
+            revalidating = cached;
+            requestHeader = conditional;
+          }
+          if(mayServe && CachePolicy.mayServeOnError(cached, now)) {
+            fallback = cached;
+          }
+        }
+        log.debug("cache miss '{}', revalidate '{}'", cacheKey, revalidating != null);
       }
-      AtomicBoolean writerRun = new AtomicBoolean(true);
-      try(OutputStream out = socket.getOutputStream()) {
-        out.write(requestHeaderBytes);
-        out.flush();
-        if(hasRequestBody(request)) {
-          final ServletInputStream requestBodyInputStream = request.getInputStream();
-          final boolean chunkedUpload = requestHeader.isTransferEncodingChunked();
-          requestBodyWriterThread = new Thread(() -> {
-            try {
-              byte[] buf = new byte[8192];
-              long total = 0;
-              while(writerRun.get()) {
-                log.trace("reading request body ...");
-                int read = requestBodyInputStream.read(buf);
-                if(read == -1) {
-                  log.debug("reached end of request body");
-                  out.flush();
-                  break;
-                } else if(read > 0) {
-                  total += read;
-                  log.trace("received '{}' bytes, total '{}', now writing to output stream ...", read, total);
-                  if(chunkedUpload) {
-                    // test chunked upload with curl and EchoServer
-                    // curl -H "Transfer-Encoding: chunked" --data-binary @my-file.bin http://localhost:8080/test/1 --output response-file.bin
-                    out.write((Integer.toString(read,16) + HttpRequestHeader.CRLF).getBytes());
-                    out.write(buf, 0, read);
-                    out.write(HttpRequestHeader.CRLF.getBytes());
-                    log.trace("written chunked request body bytes '{}' to server", read);
-                  } else {
-                    out.write(buf, 0, read);
-                    log.trace("written request body bytes '{}' to server", read);
-                  }
-                  log.trace("done writing to output stream, continue");
-                }
-              }
-              if(chunkedUpload) {
-                // write last chunk, https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Transfer-Encoding
-                out.write(("0"+HttpRequestHeader.CRLF+HttpRequestHeader.CRLF).getBytes());
-              }
-            } catch(Exception e) {
-              log.error("failed to send request body to downstream", e);
-            } finally {
-              log.debug("exit");
-            }
-          }, Thread.currentThread().getName() + "-request-body-writer-" + requestId);
-          requestBodyWriterThread.start();
-        }
-        // TODO try to catch and ignore (log debug) broken pipes caused by clients closing the connection
-        try(InputStream in = new BufferedInputStream(socket.getInputStream(), BUF_SIZE)) {
-          HeaderParser parser = new HeaderParser(in);
-          HttpHeadersParseResult parseResult = parser.parse();
-          HttpHeaders headers = parseResult.headers();
-          log.debug("received http headers from server '{}'", headers);
-          if(log.isTraceEnabled()) {
-            log.trace("received http headers from server bytes\n{}", HexDump
-                .hexdump(parseResult.bytes())
-                .stream()
-                .collect(Collectors.joining("\n")));
+      SingleFlight flight = null;
+      if(flightKey != null) {
+        SingleFlight running = SingleFlight.follow(flightKey);
+        if((running != null) && follow(running, revalidating, timeouts, deadline,
+            request, response, responseHeaderModifier, contentPipeline, respOut)) {
+          return;
+        }
+        // another request might have become the leader in the meantime, go upstream on our own in that case
+        flight = (running == null) ? SingleFlight.lead(flightKey, coalescing.maxMemoryBytes()) : null;
+      }
+      Metrics metrics = MetricsSupport.getMetrics();
+      String upstreamTag = origin.toString();
+      long upstreamStart = System.nanoTime();
+      if(context != null) {
+        context.setUpstream(upstreamTag);
+      }
+      Trace trace = Trace.get(request);
+      UpstreamResponse upstream;
+      try {
+        upstream = exchange(pool, origin, requestHeader, request, timeouts, deadline, requestId);
+      } catch(Exception e) {
+        metrics.counter(Metrics.UPSTREAM_REQUESTS, "upstream", upstreamTag, "status", "error").increment();
+        if(trace != null) {
+          trace.upstream(upstreamStart, System.nanoTime(), "upstream", upstreamTag, "error", e.getMessage());
+        }
+        if(flight != null) {
+          flight.finish(false);
+        }
+        if((fallback != null) && !deadline.isExpired()
+            && serveCached(fallback, System.currentTimeMillis(), request, response, responseHeaderModifier, contentPipeline, respOut)) {
+          log.warn("request to '{}' failed, serving stale '{}'", origin, cacheKey, e);
+          return;
+        }
+        throw e;
+      }
+      long responseTime = System.currentTimeMillis();
+      CacheWriter cacheWriter = null;
+      long received = 0;
+      try {
+        HttpHeaders headers = upstream.headers();
+        if((revalidating != null) && (headers.statusCode() == 304)) {
+          if(flight != null) {
+            flight.headers(headers, true, null);
           }
-          setResponseHeaders(response, applyReponseHeaderModifiers(responseHeaderModifier, headers, request));
+          CachedResponse refreshed = CachePolicy.refresh(revalidating, headers, responseTime);
+          cache.put(cacheKey, refreshed);
+          if(!serveCached(refreshed, responseTime, request, response, responseHeaderModifier, contentPipeline, respOut)) {
+            cache.remove(cacheKey);
+            throw new BadGatewayException("cached body of '{}' gone after revalidation", cacheKey);
+          }
+          log.debug("revalidated '{}'", cacheKey);
+          return;
+        }
+        if((fallback != null) && (headers.statusCode() >= 500)
+            && serveCached(fallback, responseTime, request, response, responseHeaderModifier, contentPipeline, respOut)) {
+          if(flight != null) {
+            flight.headers(headers, false, null);
+          }
+          log.warn("'{}' responded with '{}', serving stale '{}'", origin, headers.statusCode(), cacheKey);
+          return;
+        }
+        HttpHeaders clientHeaders = applyReponseHeaderModifiers(responseHeaderModifier, headers, request);
+        HttpBodyInputStream body = upstream.body();
+        if(body instanceof ChunkedInputStream chunked) {
+          // do not write the http chunked protocol, let tomcat figure this out
+          setTrailerFields(response, headers, chunked::getTrailers);
+        }
+        if(flight != null) {
+          body = flight.headers(headers, coalescing.isShareable(headers), body);
+        }
+        boolean storable = (cacheKey != null) && CachePolicy.isStorable(requestHeader, headers);
+        if(storable && (body != null)) {
+          // copy the body into the cache while it is relayed to the client
           Long contentLength = ObjectUtils.asLong(headers.getHeader("Content-Length"));
-          if (!hasResponseBody(request, headers)) {
-            // from memory this case is important because otherwise the reads below block and the response does
-            // not proceed, so the client is waiting on this reverse proxy, the reverse proxy is waiting on the
-            // downstream server and the downstream server thinks it is done so nothing happens, just waiting for timeouts
-            // FIXME in case we get the 'hasResponseBody' wrong and we are waiting on a non arriving response body below
-            // FIXME make sure there is some sort of timeout in the input stream (probably needs to be configurable too)
-            log.debug("not sending response body, based on method or http response code from downstream server");
-          } else if((contentLength != null) && (contentLength > 0)) {
-            log.debug("read content-length '{}' bytes from stream ...", contentLength);
-            byte[] buf = new byte[BUF_SIZE];
-            long cl = contentLength;
-            long total = 0;
-            for(;;) {
-              int read = in.read(buf, 0, (int) Math.min(BUF_SIZE, cl));
-              if(read < 0) {
-                log.warn("reached end of stream before reading length announced in content-length header,"
-                    + " read '{}', content-length '{}'", total, contentLength);
-                if(!response.isCommitted()) {
-                  response.setContentLength((int)total);
-                }
-                break;
-              } else if(read > 0) {
-                total +=read;
-                respOut.write(buf, 0, read);
-                cl -= read;
-                log.trace("written '{}' bytes to client, '{}' bytes to go", read, cl);
-                if (cl <= 0) {
-                  log.trace("reached content-length of '{}' bytes, break", contentLength);
-                  break;
-                }
-              }
-            }
-          } else if(isTransferEncodingChunked(headers)) {
-            log.debug("transfer encoding chunked");
-            // do not write the http chunked protocol, let tomcat figure this out
-            for(;;) {
-              int chunkSize = getChunkSize(in);
-              byte[] chunk = HttpUtils.nextChunk(in, chunkSize);
-              if(chunkSize == 0) {
-                break;
-              }
-              if(chunk != null) {
-                respOut.write(chunk);
-                log.trace("written chunked response to client, length '{}'", chunk.length);
-              }
+          cacheWriter = cache.writer(cacheKey, contentLength != null ? contentLength : -1);
+          if(cacheWriter != null) {
+            body = new CacheTeeInputStream(body, cacheWriter);
+          }
+        }
+        long relayStart = System.nanoTime();
+        long total = relay(request, response, clientHeaders, body, contentPipeline, respOut);
+        received = total;
+        if(trace != null) {
+          trace.upstreamSpan("relay_body", relayStart, System.nanoTime(), "bytes", String.valueOf(total));
+        }
+        if(body != null) {
+          if(!body.isComplete() && (upstream.body() instanceof ContentLengthInputStream cl)) {
+            log.warn("reached end of stream before reading length announced in content-length header,"
+                + " read '{}', content-length '{}'", cl.getRead(), cl.getLength());
+            if(!response.isCommitted() && (response.getHeader("Content-Length") != null)) {
+              response.setContentLength((int)total);
             }
-            log.debug("transfer encoding chunked, done");
-          } else {
-            // if the server does not set a content-length nor transfer-encoding chunked header,
-            // there is probably no response body.
+          }
+          log.debug("response body done, '{}' bytes, complete '{}'", total, body.isComplete());
+        }
+        if(storable && upstream.isComplete()) {
+          CacheBody cacheBody = null;
+          if(body == null) {
+            cacheBody = CacheBody.of(new byte[0]);
+          } else if((body instanceof CacheTeeInputStream tee) && tee.isCaching()) {
+            cacheBody = cacheWriter.finish();
+          }
+          cacheWriter = null;
+          if(cacheBody != null) {
+            cache.put(cacheKey, CachePolicy.toCached(requestHeader, headers, cacheBody, responseTime));
           }
         }
       } finally {
+        deadline.cancel();
+        if(flight != null) {
+          flight.finish(upstream.isComplete());
+        }
+        if(cacheWriter != null) {
+          cacheWriter.abort();
+        }
         try {
           respOut.flush();
         } catch(Exception e) {
           log.debug("failed to flush response", e);
         }
-        try {
-          writerRun.set(false);
-          if(requestBodyWriterThread != null) {
-            requestBodyWriterThread.join(1000);
-            if(requestBodyWriterThread.isAlive()) {
-              requestBodyWriterThread.interrupt();
-            }
-          }
-        } catch(Exception e) {
-          log.debug("failed to stop request body writer", e);
+        upstream.close();
+        metrics.timer(Metrics.UPSTREAM_DURATION, "upstream", upstreamTag).record(System.nanoTime() - upstreamStart);
+        metrics.counter(Metrics.UPSTREAM_REQUESTS, "upstream", upstreamTag,
+            "status", Metrics.statusClass(upstream.headers().statusCode())).increment();
+        metrics.counter(Metrics.UPSTREAM_BYTES_RECEIVED, "upstream", upstreamTag).increment(received);
+        if(context != null) {
+          context.setBytesOut(received);
+        }
+        if(trace != null) {
+          trace.upstream(upstreamStart, System.nanoTime(),
+              "upstream", upstreamTag,
+              "status", String.valueOf(upstream.headers().statusCode()));
         }
       }
-    } catch(BadGatewayException e) {
+    } catch(BadGatewayException | ServiceUnavailableException e) {
       throw e;
     } catch(Exception e) {
+      if(deadline.isExpired()) {
+        throw new GatewayTimeoutException("request deadline '{}' exceeded on '{}'", timeouts.deadline(), origin, e);
+      } else if(ExceptionUtils.indexOfType(e, SocketTimeoutException.class) != -1) {
+        throw new GatewayTimeoutException("timeout on reading from '{}'", origin, e);
+      }
       throw new InternalServerErrorException(e);
     } finally {
+      deadline.cancel();
       log.debug("exit request '{}'", requestId);
     }
   }
 
-  private static boolean hasResponseBody(HttpServletRequest req, HttpHeaders headers) {
-    if(StringUtils.equalsIgnoreCase("head", req.getMethod())) {
+  private static void revalidateInBackground(
+      ResponseCache cache,
+      String cacheKey,
+      CachedResponse stored,
+      Origin origin,
+      HttpRequestHeader requestHeader,
+      ForwardTimeouts timeouts) {
+    CacheRevalidator.revalidate(cacheKey, () -> revalidate(cache, cacheKey, stored, origin, requestHeader, timeouts));
+  }
+
+  // fetches the resource for the cache without a client waiting on it, conditional if the stored response
+  // has validators. the stored response is refreshed on a 304, replaced if the new response is storable
+  // and removed if the resource is not cacheable anymore.
+  static void revalidate(
+      ResponseCache cache,
+      String cacheKey,
+      CachedResponse stored,
+      Origin origin,
+      HttpRequestHeader requestHeader,
+      ForwardTimeouts timeouts) {
+    final String requestId = RequestIds.next();
+    ConnectionPool pool = ConnectionPoolSupport.getConnectionPool();
+    Deadline deadline = Deadline.start(timeouts.deadline());
+    HttpRequestHeader conditional = CachePolicy.conditional(requestHeader, stored);
+    HttpRequestHeader fetch = conditional != null ? conditional : requestHeader;
+    log.debug("revalidate '{}', request id '{}'", cacheKey, requestId);
+    try(UpstreamResponse upstream = exchange(pool, origin, fetch, null, timeouts, deadline, requestId)) {
+      long responseTime = System.currentTimeMillis();
+      HttpHeaders headers = upstream.headers();
+      if((conditional != null) && (headers.statusCode() == 304)) {
+        cache.put(cacheKey, CachePolicy.refresh(stored, headers, responseTime));
+        log.debug("revalidated '{}', not modified", cacheKey);
+      } else if(CachePolicy.isStorable(fetch, headers)) {
+        CacheBody body = readToCache(cache, cacheKey, upstream);
+        if(body != null) {
+          cache.put(cacheKey, CachePolicy.toCached(fetch, headers, body, responseTime));
+          log.debug("revalidated '{}', replaced", cacheKey);
+        }
+      } else if(headers.statusCode() < 500) {
+        // keep serving the stale response on server errors until it runs out of stale-while-revalidate
+        cache.remove(cacheKey);
+        log.debug("revalidated '{}', not cacheable anymore ('{}')", cacheKey, headers.statusCode());
+      }
+    } catch(IOException e) {
+      throw new BadGatewayException("failed to revalidate '{}'", cacheKey, e);
+    } finally {
+      deadline.cancel();
+    }
+  }
+
+  // reads the whole response body into the cache, returns null if the cache did not take it
+  private static CacheBody readToCache(ResponseCache cache, String cacheKey, UpstreamResponse upstream)
+      throws IOException {
+    HttpBodyInputStream body = upstream.body();
+    if(body == null) {
+      return upstream.isComplete() ? CacheBody.of(new byte[0]) : null;
+    }
+    Long contentLength = ObjectUtils.asLong(upstream.headers().getHeader("Content-Length"));
+    CacheWriter writer = cache.writer(cacheKey, contentLength != null ? contentLength : -1);
+    if(writer == null) {
+      return null;
+    }
+    try {
+      CacheTeeInputStream tee = new CacheTeeInputStream(body, writer);
+      // read to the end even if the cache gives up so the connection can be reused
+      tee.transferTo(OutputStream.nullOutputStream());
+      if(tee.isCaching() && tee.isComplete()) {
+        CacheBody cacheBody = writer.finish();
+        writer = null;
+        return cacheBody;
+      }
+      return null;
+    } finally {
+      if(writer != null) {
+        writer.abort();
+      }
+    }
+  }
+
+  // serves the response of the running flight of an identical request. returns false if the response is not
+  // shared and the request has to go upstream on its own.
+  private static boolean follow(
+      SingleFlight flight,
+      CachedResponse revalidating,
+      ForwardTimeouts timeouts,
+      Deadline deadline,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      ResponseHeaderModifier responseHeaderModifier,
+      ResponseContentPipeline contentPipeline,
+      OutputStream respOut) throws IOException {
+    // the leader has to connect and wait for the first byte too
+    Duration timeout = (timeouts.connectTimeout().isZero() || timeouts.firstByteTimeout().isZero())
+        ? Duration.ZERO
+        : timeouts.connectTimeout().plus(timeouts.firstByteTimeout());
+    try {
+      HttpHeaders headers = flight.awaitHeaders(deadline.cap(timeout));
+      if(headers == null) {
+        return false;
+      }
+      if(headers.statusCode() == 304) {
+        // the leader revalidated its stored response, without one of our own go upstream
+        if(revalidating == null) {
+          return false;
+        }
+        long now = System.currentTimeMillis();
+        return serveCached(CachePolicy.refresh(revalidating, headers, now), now,
+            request, response, responseHeaderModifier, contentPipeline, respOut);
+      }
+      log.debug("coalesced with running request");
+      HttpHeaders clientHeaders = applyReponseHeaderModifiers(responseHeaderModifier, headers, request);
+      InputStream body = flight.hasBody() ? flight.open(timeouts.idleTimeout()) : null;
+      relay(request, response, clientHeaders, body, contentPipeline, respOut);
+      respOut.flush();
+      return true;
+    } finally {
+      flight.leave();
+    }
+  }
+
+  // returns false if the cached body can't be opened (e.g. the file is gone), the request goes upstream in that case
+  private static boolean serveCached(
+      CachedResponse cached,
+      long now,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      ResponseHeaderModifier responseHeaderModifier,
+      ResponseContentPipeline contentPipeline,
+      OutputStream respOut) throws IOException {
+    InputStream body = null;
+    if(hasResponseBody(request.getMethod(), cached.headers())) {
+      try {
+        body = cached.body().open();
+      } catch(Exception e) {
+        log.warn("failed to open cached body '{}'", cached.body(), e);
+        return false;
+      }
+    }
+    try {
+      HttpHeaders clientHeaders = applyReponseHeaderModifiers(responseHeaderModifier, cached.headers(now), request);
+      relay(request, response, clientHeaders, body, contentPipeline, respOut);
+      respOut.flush();
+      return true;
+    } finally {
+      if(body != null) {
+        body.close();
+      }
+    }
+  }
+
+  // sends the request to the upstream server and reads the response headers. the request body is taken from the
+  // client request, request can be null for requests the proxy makes on its own (without a request body).
+  static UpstreamResponse exchange(
+      ConnectionPool pool,
+      Origin origin,
+      HttpRequestHeader requestHeader,
+      HttpServletRequest request,
+      ForwardTimeouts timeouts,
+      Deadline deadline,
+      String requestId) throws IOException {
+    if (log.isTraceEnabled()) {
+      log.trace("sending request headers to server ... \n{}", HexDump
+          .hexdump(requestHeader.toBytes())
+          .stream()
+          .collect(Collectors.joining("\n")));
+    }
+    final boolean requestBody = (request != null) && hasRequestBody(request);
+    Metrics metrics = MetricsSupport.getMetrics();
+    String upstreamTag = origin.toString();
+    RequestContext context = (request != null) ? RequestContext.get(request) : null;
+    Trace trace = (request != null) ? Trace.get(request) : null;
+    long start = System.nanoTime();
+    // reserve the upload thread first, the request can't be refused anymore once it has been sent upstream
+    RequestBodyExecutor.Reservation upload = requestBody ? RequestBodyExecutorSupport.getExecutor().reserve() : null;
+    UpstreamConnection connection;
+    try {
+      connection = sendRequestHeader(pool, origin, requestHeader, requestBody, timeouts, deadline, trace);
+    } catch(RuntimeException e) {
+      if(upload != null) {
+        upload.close();
+      }
+      throw e;
+    }
+    Future<Boolean> requestBodyUpload = null;
+    try {
+      if(requestBody) {
+        requestBodyUpload = upload.submit(new RequestBodyPump(
+            requestId,
+            request.getInputStream(),
+            connection.getOutputStream(),
+            requestHeader.isTransferEncodingChunked(),
+            bytesSent(metrics.counter(Metrics.UPSTREAM_BYTES_SENT, "upstream", upstreamTag), context)));
+        awaitFirstByte(connection, requestBodyUpload, timeouts, deadline);
+      }
+      // the deadline watchdog takes care of the total time
+      connection.setReadTimeout(timeouts.idleTimeout());
+      // TODO try to catch and ignore (log debug) broken pipes caused by clients closing the connection
+      HttpInputBuffer in = connection.getInputStream();
+      HeaderParser parser = new HeaderParser(in, log.isTraceEnabled());
+      HttpHeadersParseResult parseResult = parser.parse();
+      HttpHeaders headers = parseResult.headers();
+      long firstByte = System.nanoTime() - start;
+      metrics.timer(Metrics.UPSTREAM_FIRST_BYTE, "upstream", upstreamTag).record(firstByte);
+      if(context != null) {
+        context.setFirstByteNanos(firstByte);
+      }
+      if(trace != null) {
+        trace.upstreamSpan("first_byte", trace.getHeaderSentNanos(), System.nanoTime());
+      }
+      log.debug("received http headers from server '{}'", headers);
+      if(log.isTraceEnabled()) {
+        log.trace("received http headers from server bytes\n{}", HexDump
+            .hexdump(parseResult.bytes())
+            .stream()
+            .collect(Collectors.joining("\n")));
+      }
+      if (!hasResponseBody(requestHeader.method(), headers)) {
+        // from memory this case is important because otherwise the reads below block and the response does
+        // not proceed, so the client is waiting on this reverse proxy, the reverse proxy is waiting on the
+        // downstream server and the downstream server thinks it is done so nothing happens, just waiting for timeouts
+        // in case we get the 'hasResponseBody' wrong the read on the non arriving response body times out
+        // after ForwardTimeouts.idleTimeout (the read timeout set above)
+        log.debug("not sending response body, based on method or http response code from downstream server");
+        return new UpstreamResponse(pool, connection, headers, null, true, requestBodyUpload);
+      }
+      HttpBodyInputStream body = responseBody(headers, in);
+      // content-length: 0 is complete, no content-length nor transfer-encoding chunked header means
+      // there is probably no response body. if there is one it is delimited by the server closing
+      // the connection so we can't reuse it.
+      boolean noBody = (body == null) && (ObjectUtils.asLong(headers.getHeader("Content-Length")) != null);
+      return new UpstreamResponse(pool, connection, headers, body, noBody, requestBodyUpload);
+    } catch(Exception e) {
+      if(requestBodyUpload != null) {
+        requestBodyUpload.cancel(true);
+      } else if(upload != null) {
+        upload.close();
+      }
+      pool.release(connection, false);
+      throw e;
+    }
+  }
+
+  // sends the response headers to the client and copies the body (if not null) through the content pipeline
+  // and the compression (if configured and accepted by the client). A compressed body is decompressed first if
+  // the content pipeline needs the plain body or the client does not accept its coding.
+  // returns the number of body bytes read.
+  static long relay(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      HttpHeaders clientHeaders,
+      InputStream body,
+      ResponseContentPipeline contentPipeline,
+      OutputStream respOut) throws IOException {
+    List<String> acceptEncoding = acceptEncoding(request);
+    boolean pipeline = (contentPipeline != null) && !contentPipeline.isEmpty();
+    ContentEncoder decoder = null;
+    String coding = Compression.contentCoding(clientHeaders);
+    if((coding != null) && (pipeline || !Compression.accepts(acceptEncoding, coding))) {
+      decoder = ContentEncoders.get(coding);
+      if(decoder == null) {
+        log.debug("can't decompress response body with content coding '{}', passing it on as is", coding);
+      }
+    }
+    CountingInputStream counted = null;
+    InputStream decoded = null;
+    if(decoder != null) {
+      if(body != null) {
+        counted = new CountingInputStream(body);
+        decoded = Compression.decode(decoder, counted);
+      }
+      if((body == null) || (decoded != null)) {
+        log.debug("decompress response body from '{}'", coding);
+        clientHeaders = Compression.decodedHeaders(clientHeaders);
+      }
+    }
+    if(body == null) {
+      setResponseHeaders(response, clientHeaders);
+      return 0;
+    }
+    // the stages see the body as it comes from the server (decompressed)
+    HttpHeaders stageHeaders = clientHeaders;
+    OutputStream out = respOut;
+    OutputStream encoded = respOut;
+    boolean closed = false;
+    try {
+      CompressionConfig compression = CompressionSupport.getConfig();
+      ContentEncoder encoder = Compression.negotiate(compression, acceptEncoding, clientHeaders);
+      InputStream in = decoded != null ? decoded : body;
+      if((encoder != null) && (decoded != null) && (compression.minSize() > 0)) {
+        // the decoded body has no Content-Length for negotiate to check against minSize, read up to minSize
+        // of it to find out if it is smaller
+        byte[] head = decoded.readNBytes((int) Math.min(compression.minSize(), Integer.MAX_VALUE));
+        if(head.length < compression.minSize()) {
+          encoder = null;
+        }
+        in = new SequenceInputStream(new ByteArrayInputStream(head), decoded);
+      }
+      if(encoder != null) {
+        log.debug("compress response body with '{}'", encoder.name());
+        clientHeaders = Compression.encodedHeaders(clientHeaders, encoder);
+        encoded = Compression.open(encoder, compression.level(), respOut);
+      }
+      out = encoded;
+      if(pipeline) {
+        // the length of the modified body is not known up front, let the servlet container send it chunked
+        stageHeaders = stageHeaders.withoutHeader("Content-Length");
+        clientHeaders = clientHeaders.withoutHeader("Content-Length");
+        out = contentPipeline.open(stageHeaders, encoded);
+      }
+      setResponseHeaders(response, clientHeaders);
+      long total = transfer(in, out, RELAY_BUFFER.get());
+      if(decoded != null) {
+        decoded.close();
+        // the compressed stream might end before the body does (e.g. padding), read the body to the end so
+        // the connection can be reused
+        counted.transferTo(OutputStream.nullOutputStream());
+        total = counted.getCount();
+      }
+      if(out != encoded) {
+        out.close();
+      }
+      if(encoded != respOut) {
+        encoded.close();
+      }
+      closed = true;
+      return total;
+    } finally {
+      if(!closed) {
+        // the Inflater/Deflater behind the codings hold native memory until they are closed
+        closeOnFailure(decoded);
+        closeOnFailure(out != encoded ? out : null);
+        closeOnFailure(encoded != respOut ? encoded : null);
+      }
+    }
+  }
+
+  private static void closeOnFailure(Closeable c) {
+    if(c != null) {
+      try {
+        c.close();
+      } catch(Exception e) {
+        log.debug("failed to close '{}'", c, e);
+      }
+    }
+  }
+
+  private static List<String> acceptEncoding(HttpServletRequest request) {
+    Enumeration<String> values = request.getHeaders("accept-encoding");
+    return ((values != null) && values.hasMoreElements()) ? Collections.list(values) : null;
+  }
+
+  // writes the request header to a pooled connection. a pooled connection might have been closed by the
+  // server while it was idle which we can only find out by using it so retry once on a new connection.
+  // if the request has a body we can't wait for the response before sending the body,
+  // so in this case only a failure on writing the request header is retried.
+  private static UpstreamConnection sendRequestHeader(
+      ConnectionPool pool,
+      Origin origin,
+      HttpRequestHeader requestHeader,
+      boolean requestBody,
+      ForwardTimeouts timeouts,
+      Deadline deadline,
+      Trace trace) {
+    for(int attempt = 1;; attempt++) {
+      deadline.check();
+      UpstreamConnection connection = pool.acquire(
+          origin,
+          o -> getSocket(o, deadline.cap(timeouts.connectTimeout()), timeouts.idleTimeout(), trace));
+      deadline.watch(connection);
+      try {
+        OutputStream out = connection.getOutputStream();
+        long writeStart = System.nanoTime();
+        requestHeader.writeTo(out);
+        out.flush();
+        if(trace != null) {
+          long written = System.nanoTime();
+          trace.upstreamSpan("write_header", writeStart, written, "attempt", String.valueOf(attempt));
+          trace.setHeaderSentNanos(written);
+        }
+        if(!requestBody) {
+          connection.setReadTimeout(deadline.cap(timeouts.firstByteTimeout()));
+          connection.awaitResponse();
+        }
+        return connection;
+      } catch(SocketTimeoutException e) {
+        // the server might still be working on the request, not safe to retry
+        pool.release(connection, false);
+        throw firstByteTimeout(origin, timeouts, deadline, e);
+      } catch(IOException e) {
+        pool.release(connection, false);
+        if(deadline.isExpired()) {
+          throw new GatewayTimeoutException("request deadline '{}' exceeded on '{}'", timeouts.deadline(), origin, e);
+        } else if(connection.isReused() && (attempt < MAX_ATTEMPTS)) {
+          log.debug("pooled connection to '{}' failed, retry on new connection", origin, e);
+        } else {
+          throw new BadGatewayException("failed to send request to '{}'", origin, e);
+        }
+      } catch(RuntimeException e) {
+        pool.release(connection, false);
+        throw e;
+      }
+    }
+  }
+
+  // waits for the response while the request body is still being sent. the server might only answer
+  // once it has the whole body so the first byte timeout only applies after the upload is done.
+  private static void awaitFirstByte(
+      UpstreamConnection connection,
+      Future<Boolean> requestBodyUpload,
+      ForwardTimeouts timeouts,
+      Deadline deadline) throws IOException {
+    connection.setReadTimeout(deadline.cap(timeouts.firstByteTimeout()));
+    for(;;) {
+      try {
+        connection.awaitResponse();
+        return;
+      } catch(SocketTimeoutException e) {
+        if(requestBodyUpload.isDone() || deadline.isExpired()) {
+          throw firstByteTimeout(connection.getOrigin(), timeouts, deadline, e);
+        }
+        log.debug("no response yet, request body upload still running");
+      }
+    }
+  }
+
+  // the request body bytes also go into the request context for the access log
+  private static Metrics.Counter bytesSent(Metrics.Counter counter, RequestContext context) {
+    if(context == null) {
+      return counter;
+    }
+    return n -> {
+      counter.increment(n);
+      context.setBytesIn(context.getBytesIn() + n);
+    };
+  }
+
+  // the read timeout is capped by the deadline
+  private static GatewayTimeoutException firstByteTimeout(
+      Origin origin,
+      ForwardTimeouts timeouts,
+      Deadline deadline,
+      SocketTimeoutException e) {
+    if(deadline.isExpired()) {
+      return new GatewayTimeoutException("request deadline '{}' exceeded on '{}'", timeouts.deadline(), origin, e);
+    } else {
+      return new GatewayTimeoutException("no response from '{}' within '{}'", origin, timeouts.firstByteTimeout(), e);
+    }
+  }
+
+  static boolean isKeepAlive(HttpHeaders headers) {
+    List<String> connection = headers.getHeaders("connection");
+    if(connection != null) {
+      for(String s : connection) {
+        if(StringUtils.containsIgnoreCase(s, "close")) {
+          return false;
+        }
+      }
+    }
+    if(StringUtils.equalsIgnoreCase("HTTP/1.1", headers.version())) {
+      return true;
+    }
+    // HTTP/1.0 connections are only persistent if the server says so
+    if(connection != null) {
+      for(String s : connection) {
+        if(StringUtils.containsIgnoreCase(s, "keep-alive")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // e.g. 'Keep-Alive: timeout=5, max=1000'
+  static Long keepAliveTimeoutSeconds(HttpHeaders headers) {
+    List<String> keepAlive = headers.getHeaders("keep-alive");
+    if(keepAlive != null) {
+      for(String s : keepAlive) {
+        for(String param : StringUtils.split(s, ',')) {
+          if(StringUtils.startsWithIgnoreCase(StringUtils.strip(param), "timeout=")) {
+            return ObjectUtils.asLong(StringUtils.strip(StringUtils.substringAfter(param, "=")));
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  static boolean hasResponseBody(String method, HttpHeaders headers) {
+    if(StringUtils.equalsIgnoreCase("head", method)) {
       return false;
     }
     int sc = headers.statusCode();
@@ -272,7 +835,7 @@ public class ReverseProxy {
     return (sc >= 200) && (sc != 204) && (sc != 304);
   }
 
-  private static void setResponseHeaders(HttpServletResponse resp, HttpHeaders headers) {
+  static void setResponseHeaders(HttpServletResponse resp, HttpHeaders headers) {
     log.debug("set response status '{}'", headers.statusCode());
     resp.setStatus(headers.statusCode());
     headers.headers().forEach((k, l) -> {
@@ -283,6 +846,9 @@ public class ReverseProxy {
         // (compress, deflate, gzip)
         if (StringUtils.equalsIgnoreCase("Transfer-Encoding", k)) {
           log.debug("ignore header '{}', value '{}'", k, v);
+        } else if (StringUtils.equalsAnyIgnoreCase(k, "Connection", "Keep-Alive")) {
+          // hop-by-hop headers, the connection to the server is independent of the connection to the client
+          log.debug("ignore hop-by-hop header '{}', value '{}'", k, v);
         } else {
           log.debug("set response header '{}', value '{}'", k, v);
           resp.addHeader(k, v);
@@ -291,7 +857,7 @@ public class ReverseProxy {
     });
   }
 
-  private static boolean isTransferEncodingChunked(HttpHeaders headers) {
+  static boolean isTransferEncodingChunked(HttpHeaders headers) {
     List<String> encodings = headers.getHeaders("transfer-encoding");
     if (encodings != null) {
       for (String s : encodings) {
@@ -303,46 +869,89 @@ public class ReverseProxy {
     return false;
   }
 
-  private static int getChunkSize(InputStream in) {
-    byte[] chunkSizeBytes = HttpUtils.nextChunkSize(in);
-    if((chunkSizeBytes == null) || chunkSizeBytes.length == 0) {
-      throw new ReverseProxyException("failed to read next chunk size from stream");
+  // returns the stream to read the response body or null if the length of the body is unknown
+  private static HttpBodyInputStream responseBody(HttpHeaders headers, HttpInputBuffer in) {
+    Long contentLength = ObjectUtils.asLong(headers.getHeader("Content-Length"));
+    if((contentLength != null) && (contentLength > 0)) {
+      log.debug("read content-length '{}' bytes from stream ...", contentLength);
+      return new ContentLengthInputStream(in, contentLength);
+    } else if(isTransferEncodingChunked(headers)) {
+      log.debug("transfer encoding chunked");
+      // the chunks are streamed through the relay buffer, no matter how large they are
+      return new ChunkedInputStream(in);
+    } else {
+      return null;
     }
-    String chunkSizeString = new String(chunkSizeBytes);
-    try {
-      int chunkSize = Integer.parseInt(chunkSizeString, 16);
-      log.trace("next chunk size hex '{}', '{}' bytes", chunkSizeString, chunkSize);
-      return chunkSize;
-    } catch (Exception e) {
-      throw new ReverseProxyException("failed to convert hex chunk size '{}' to decimal", chunkSizeString);
+  }
+
+  private static long transfer(InputStream in, OutputStream out, byte[] buf) throws IOException {
+    long total = 0;
+    for(;;) {
+      int read = in.read(buf);
+      if(read == -1) {
+        return total;
+      }
+      total += read;
+      out.write(buf, 0, read);
+      log.trace("written '{}' bytes to client, total '{}'", read, total);
+    }
+  }
+
+  // pass trailer fields on to the client if the server announced them, the servlet container asks for the
+  // trailers once the body is complete. Only works if the client connection supports trailers.
+  static void setTrailerFields(
+      HttpServletResponse response,
+      HttpHeaders headers,
+      Supplier<Map<String, String>> trailers) {
+    if(headers.getHeaders("trailer") != null) {
+      try {
+        response.setTrailerFields(trailers);
+      } catch(IllegalStateException e) {
+        log.debug("trailer fields not supported on client response", e);
+      }
     }
   }
 
-  private static Socket getSocket(URL remote) {
+  private static Socket getSocket(Origin origin, Duration connectTimeout, Duration readTimeout, Trace trace) {
     try {
-      String protocol = remote.getProtocol();
-      String host = remote.getHost();
-      int port = remote.getPort();
-      if ("https".equalsIgnoreCase(protocol)) {
-        SSLContext sc = SSLContext.getInstance("TLS");
-        // TODO make it configurable if the remote can be trusted
-        // X509AllTrustManager might be required when the remote is e.g. using self signed certificates
-        sc.init(null, new TrustManager[] { new X509AllTrustManager() }, null);
-        SSLSocketFactory ssf = sc.getSocketFactory();
-        SSLSocket s = (SSLSocket) ssf.createSocket(host, (port == -1 ? 443 : port));
-        s.setSoTimeout(30000);
-        s.setKeepAlive(false);
-        s.startHandshake();
-        return s;
-      } else if ("http".equalsIgnoreCase(protocol)) {
-        Socket s = new Socket(host, (port == -1 ? 80 : port));
+      String host = origin.host();
+      int port = origin.port();
+      if(!origin.isSecure() && !"http".equals(origin.scheme())) {
+        throw new BadGatewayException("failed to open socket, protocol in '{}' not supported", origin);
+      }
+      long start = System.nanoTime();
+      Socket s = new Socket();
+      try {
+        s.connect(new InetSocketAddress(host, port), ForwardTimeouts.millis(connectTimeout));
+        long connected = System.nanoTime();
+        if(trace != null) {
+          trace.upstreamSpan("connect", start, connected, "upstream", origin.toString());
+        }
+        if (origin.isSecure()) {
+          // the handshake is part of the connect
+          s.setSoTimeout(ForwardTimeouts.millis(connectTimeout));
+          // the tls client (and its session cache) is shared so sessions can be resumed
+          s = TlsClientSupport.getTlsClient(origin).handshake(s, host, port);
+          if(trace != null) {
+            trace.upstreamSpan("tls_handshake", connected, System.nanoTime(), "upstream", origin.toString());
+          }
+        }
+        s.setSoTimeout(ForwardTimeouts.millis(readTimeout));
+        MetricsSupport.getMetrics().timer(Metrics.UPSTREAM_CONNECT, "upstream", origin.toString())
+            .record(System.nanoTime() - start);
         return s;
-      } else {
-        throw new BadGatewayException("failed to open socket, protocol in '{}' not supported", remote);
+      } catch(Exception e) {
+        s.close();
+        throw e;
       }
+    } catch (BadGatewayException e) {
+      throw e;
+    } catch (SocketTimeoutException e) {
+      throw new GatewayTimeoutException("timeout on connecting to '{}' ('{}')", origin, connectTimeout, e);
     } catch (Exception e) {
-      throw new BadGatewayException("failed to open socket to '{}'", remote, e);
+      throw new BadGatewayException("failed to open socket to '{}'", origin, e);
     }
   }
 
+
 }
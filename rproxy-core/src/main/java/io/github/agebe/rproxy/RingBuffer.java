@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// bounded lock-free queue for many producers and a single consumer, based on Dmitry Vyukov's bounded MPMC queue.
+// every slot has a sequence number that tells producers and the consumer whose turn it is, so producers
+// only contend on the tail counter and never wait for each other or the consumer. offer fails if the buffer is full.
+public class RingBuffer<T> {
+
+  private final int mask;
+
+  private final AtomicReferenceArray<T> slots;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  // only touched by the consumer
+  private long head;
+
+  // the capacity is rounded up to the next power of two
+  public RingBuffer(int capacity) {
+    super();
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.mask = size - 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for(int i=0;i<size;i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  public boolean offer(T e) {
+    long pos = tail.get();
+    for(;;) {
+      int idx = (int)(pos & mask);
+      long diff = sequences.getAcquire(idx) - pos;
+      if(diff == 0) {
+        if(tail.compareAndSet(pos, pos + 1)) {
+          slots.setPlain(idx, e);
+          // publishes the element to the consumer
+          sequences.setRelease(idx, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if(diff < 0) {
+        // the consumer has not taken the element of the previous round yet
+        return false;
+      } else {
+        // another producer claimed the slot
+        pos = tail.get();
+      }
+    }
+  }
+
+  // consumer only
+  public T poll() {
+    int idx = (int)(head & mask);
+    if(sequences.getAcquire(idx) != (head + 1)) {
+      return null;
+    }
+    T e = slots.getPlain(idx);
+    slots.setPlain(idx, null);
+    // hands the slot to the producers of the next round
+    sequences.setRelease(idx, head + mask + 1);
+    head++;
+    return e;
+  }
+
+  // consumer only, returns the number of elements taken
+  public int drain(Consumer<T> consumer, int max) {
+    int count = 0;
+    while(count < max) {
+      T e = poll();
+      if(e == null) {
+        break;
+      }
+      consumer.accept(e);
+      count++;
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+public enum ScopeType {
+  // a new handler instance for every request
+  REQUEST,
+  // a single handler instance created on first use and shared by all requests, must be thread safe
+  SINGLETON,
+  // handler instances are reused, an instance only handles a single request at a time
+  POOLED,
+  ;
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// the proxy is out of capacity (e.g. all request body upload threads are busy), mapped to 503
+public class ServiceUnavailableException extends ReverseProxyException {
+
+  private static final long serialVersionUID = 2841170952718431263L;
+
+  public ServiceUnavailableException() {
+    super();
+  }
+
+  public ServiceUnavailableException(String messagePattern, Object... args) {
+    super(messagePattern, args);
+  }
+
+  public ServiceUnavailableException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public ServiceUnavailableException(String message) {
+    super(message);
+  }
+
+  public ServiceUnavailableException(Throwable cause) {
+    super(cause);
+  }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// in-process metrics registry that keeps all meters in memory, e.g. for tests or to expose them on an
+// endpoint of the application. Timers keep count, total and max plus a histogram with power of two buckets
+// (in microseconds) for approximate percentiles.
+public class SimpleMetrics implements Metrics {
+
+  public record Id(String name, List<String> tags) {
+
+    @Override
+    public String toString() {
+      if(tags.isEmpty()) {
+        return name;
+      }
+      StringBuilder b = new StringBuilder(name).append('{');
+      for(int i=0;i<tags.size();i+=2) {
+        if(i > 0) {
+          b.append(',');
+        }
+        b.append(tags.get(i)).append('=').append(tags.get(i + 1));
+      }
+      return b.append('}').toString();
+    }
+
+  }
+
+  public static class SimpleCounter implements Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void increment(long amount) {
+      count.add(amount);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    @Override
+    public String toString() {
+      return Long.toString(getCount());
+    }
+
+  }
+
+  public static class SimpleGauge implements Gauge {
+
+    private final AtomicLong value = new AtomicLong();
+
+    @Override
+    public void add(long delta) {
+      value.addAndGet(delta);
+    }
+
+    @Override
+    public void set(long value) {
+      this.value.set(value);
+    }
+
+    public long getValue() {
+      return value.get();
+    }
+
+    @Override
+    public String toString() {
+      return Long.toString(getValue());
+    }
+
+  }
+
+  public static class SimpleTimer implements Timer {
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // bucket i counts durations below 2^i microseconds (and at least 2^(i-1))
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    @Override
+    public void record(long nanos) {
+      if(nanos < 0) {
+        return;
+      }
+      count.increment();
+      total.add(nanos);
+      max.accumulate(nanos);
+      buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotalNanos() {
+      return total.sum();
+    }
+
+    public long getMaxNanos() {
+      return max.get();
+    }
+
+    public double getMeanNanos() {
+      long count = getCount();
+      return count > 0 ? (double)getTotalNanos() / count : 0;
+    }
+
+    // upper bound of the bucket the percentile (0 - 100) falls into, at most max
+    public long getPercentileNanos(double percentile) {
+      long[] counts = new long[buckets.length()];
+      long count = 0;
+      for(int i=0;i<counts.length;i++) {
+        counts[i] = buckets.get(i);
+        count += counts[i];
+      }
+      long rank = (long)Math.ceil((percentile / 100) * count);
+      long seen = 0;
+      for(int i=0;i<counts.length;i++) {
+        seen += counts[i];
+        if((seen >= rank) && (seen > 0)) {
+          return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << Math.min(i, 62)), getMaxNanos());
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public String toString() {
+      return "count=%s mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms".formatted(
+          getCount(),
+          getMeanNanos() / 1e6,
+          getPercentileNanos(50) / 1e6,
+          getPercentileNanos(99) / 1e6,
+          getMaxNanos() / 1e6);
+    }
+
+  }
+
+  private final Map<Id, Object> meters = new ConcurrentHashMap<>();
+
+  private static Id id(String name, String... tags) {
+    if((tags.length % 2) != 0) {
+      throw new ReverseProxyException("tags of meter '{}' are not key value pairs, '{}'", name, Arrays.toString(tags));
+    }
+    return new Id(name, List.of(tags));
+  }
+
+  private <T> T meter(Id id, Class<T> type, Function<Id, Object> factory) {
+    Object meter = meters.get(id);
+    if(meter == null) {
+      meter = meters.computeIfAbsent(id, factory);
+    }
+    if(!type.isInstance(meter)) {
+      throw new ReverseProxyException("meter '{}' is a '{}', not a '{}'",
+          id, meter.getClass().getSimpleName(), type.getSimpleName());
+    }
+    return type.cast(meter);
+  }
+
+  @Override
+  public SimpleCounter counter(String name, String... tags) {
+    return meter(id(name, tags), SimpleCounter.class, id -> new SimpleCounter());
+  }
+
+  @Override
+  public SimpleTimer timer(String name, String... tags) {
+    return meter(id(name, tags), SimpleTimer.class, id -> new SimpleTimer());
+  }
+
+  @Override
+  public SimpleGauge gauge(String name, String... tags) {
+    return meter(id(name, tags), SimpleGauge.class, id -> new SimpleGauge());
+  }
+
+  // all meters sorted by id
+  public Map<Id, Object> getMeters() {
+    Map<Id, Object> sorted = new TreeMap<>((id1, id2) -> id1.toString().compareTo(id2.toString()));
+    sorted.putAll(meters);
+    return sorted;
+  }
+
+  // one line per meter
+  public String report() {
+    StringBuilder b = new StringBuilder();
+    getMeters().forEach((id, meter) -> b.append(id).append(' ').append(meter).append('\n'));
+    return b.toString();
+  }
+
+}
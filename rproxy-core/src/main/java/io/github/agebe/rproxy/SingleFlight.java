@@ -0,0 +1,389 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// one upstream request shared by identical concurrent requests, see Coalescing.
+// the first request (the leader) goes upstream and publishes the response headers. the body goes into a growing
+// buffer, the first maxMemoryBytes in memory and the rest in a spool file. the leader and the requests arriving
+// while the flight is running (the followers) each read the buffer at their own pace. whoever runs out of bytes
+// first reads the next ones from upstream, so a slow client does not hold up the others.
+// if the leader's client fails while followers are still reading, the leader keeps reading upstream for them.
+// the flight ends once the upstream response is done, later requests start a new one. the buffer is released
+// when the last reader is done.
+public class SingleFlight {
+
+  private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private static final ConcurrentHashMap<String, SingleFlight> flights = new ConcurrentHashMap<>();
+
+  private final String key;
+
+  private final long maxMemoryBytes;
+
+  private final List<byte[]> chunks = new ArrayList<>();
+
+  private HttpHeaders headers;
+
+  // false if the response is not for sharing, followers go upstream on their own
+  private boolean shared;
+
+  // the upstream response body, null if there is none or it is not shared
+  private HttpBodyInputStream upstream;
+
+  // bytes of the body read so far, and the part of it in memory
+  private long length;
+
+  private long memory;
+
+  // created once the body gets larger than maxMemoryBytes
+  private FileChannel spool;
+
+  private byte[] spoolBuffer;
+
+  // a reader is reading from upstream
+  private boolean pumping;
+
+  // the leader and the followers that are not done yet
+  private int readers = 1;
+
+  private boolean ended;
+
+  private boolean complete;
+
+  private SingleFlight(String key, long maxMemoryBytes) {
+    super();
+    this.key = key;
+    this.maxMemoryBytes = maxMemoryBytes;
+  }
+
+  // starts a new flight with the caller as the leader, null if there is one for the key already
+  public static SingleFlight lead(String key, long maxMemoryBytes) {
+    SingleFlight flight = new SingleFlight(key, maxMemoryBytes);
+    return flights.putIfAbsent(key, flight) == null ? flight : null;
+  }
+
+  // the running flight for the key or null. followers call leave() when they are done.
+  public static SingleFlight follow(String key) {
+    SingleFlight flight = flights.get(key);
+    return (flight != null) && flight.join() ? flight : null;
+  }
+
+  private synchronized boolean join() {
+    if(ended) {
+      return false;
+    }
+    readers++;
+    return true;
+  }
+
+  // called by the leader once the response headers have been received, body is null if the response has none.
+  // returns the stream the leader reads the body from.
+  public HttpBodyInputStream headers(HttpHeaders headers, boolean shared, HttpBodyInputStream body) {
+    synchronized(this) {
+      this.headers = headers;
+      this.shared = shared;
+      if(!shared) {
+        flights.remove(key, this);
+      } else {
+        upstream = body;
+      }
+      notifyAll();
+    }
+    if(!shared || (body == null)) {
+      return body;
+    }
+    Reader in = new Reader(Duration.ZERO);
+    return new HttpBodyInputStream() {
+
+      @Override
+      public int read() throws IOException {
+        return in.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return in.read(b, off, len);
+      }
+
+      @Override
+      public int available() throws IOException {
+        return in.available();
+      }
+
+      @Override
+      public boolean isComplete() {
+        synchronized(SingleFlight.this) {
+          return ended && complete && (in.position == length);
+        }
+      }
+
+    };
+  }
+
+  // called by the leader when it is done, complete is true if the whole upstream response went through.
+  // if followers are still reading the leader reads the rest of the body from upstream for them first.
+  public void finish(boolean complete) {
+    boolean drain;
+    synchronized(this) {
+      drain = !ended && (upstream != null) && (readers > 1);
+    }
+    if(drain) {
+      log.debug("reading the rest of '{}' for the followers", key);
+      try {
+        for(long position = 0;;) {
+          await(position, Duration.ZERO);
+          synchronized(this) {
+            if(ended) {
+              break;
+            }
+            position = length;
+          }
+        }
+      } catch(IOException e) {
+        log.debug("failed to read the rest of '{}'", key, e);
+      }
+    }
+    end(complete);
+    leave();
+  }
+
+  // followers still waiting for the headers or reading the body get an error if the flight did not complete
+  private synchronized void end(boolean complete) {
+    if(ended) {
+      return;
+    }
+    ended = true;
+    this.complete = complete;
+    flights.remove(key, this);
+    notifyAll();
+    release();
+  }
+
+  // called by followers that are done
+  public synchronized void leave() {
+    readers--;
+    release();
+  }
+
+  private void release() {
+    if(ended && (readers == 0) && (spool != null)) {
+      try {
+        spool.close();
+      } catch(IOException e) {
+        log.debug("failed to close spool file of '{}'", key, e);
+      }
+    }
+  }
+
+  // waits for the leader's response headers. returns null if the response is not shared.
+  // a zero timeout waits until the leader is done, the leader's own timeouts apply.
+  public synchronized HttpHeaders awaitHeaders(Duration timeout) {
+    long until = timeout.isZero() ? Long.MAX_VALUE : System.currentTimeMillis() + timeout.toMillis();
+    try {
+      while((headers == null) && !ended) {
+        long wait = until - System.currentTimeMillis();
+        if(wait <= 0) {
+          throw new GatewayTimeoutException("no response on coalesced request '{}' within '{}'", key, timeout);
+        }
+        wait(Math.min(wait, Integer.MAX_VALUE));
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ReverseProxyException("interrupted while waiting on coalesced request '{}'", key, e);
+    }
+    if(headers == null) {
+      throw new BadGatewayException("coalesced request '{}' failed", key);
+    }
+    return shared ? headers : null;
+  }
+
+  public synchronized boolean hasBody() {
+    return upstream != null;
+  }
+
+  // the body from the start, each reader opens its own stream. idleTimeout is the max time to wait for the next
+  // bytes while another reader reads from upstream (zero to wait until the flight ends).
+  public InputStream open(Duration idleTimeout) {
+    return new Reader(idleTimeout);
+  }
+
+  private class Reader extends InputStream {
+
+    private final Duration idleTimeout;
+
+    private long position;
+
+    private Reader(Duration idleTimeout) {
+      super();
+      this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if(len == 0) {
+        return 0;
+      }
+      await(position, idleTimeout);
+      byte[] chunk;
+      int n;
+      synchronized(SingleFlight.this) {
+        if(position >= length) {
+          if(complete) {
+            return -1;
+          }
+          throw new IOException("coalesced request '%s' did not complete".formatted(key));
+        }
+        if(position < memory) {
+          chunk = chunks.get((int)(position / CHUNK_SIZE));
+          n = (int)Math.min(len, Math.min(CHUNK_SIZE - (position % CHUNK_SIZE), memory - position));
+        } else {
+          chunk = null;
+          n = (int)Math.min(len, length - position);
+        }
+      }
+      // the bytes before length do not change anymore, read them outside of the lock
+      if(chunk != null) {
+        System.arraycopy(chunk, (int)(position % CHUNK_SIZE), b, off, n);
+      } else {
+        n = spool.read(ByteBuffer.wrap(b, off, n), position - memory);
+      }
+      position += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      synchronized(SingleFlight.this) {
+        return (int)Math.min(length - position, Integer.MAX_VALUE);
+      }
+    }
+
+  }
+
+  // returns once there are bytes after position or the flight ended. reads the next bytes from upstream
+  // unless another reader does already.
+  private void await(long position, Duration idleTimeout) throws IOException {
+    for(;;) {
+      synchronized(this) {
+        if((position < length) || ended) {
+          return;
+        }
+        if(pumping) {
+          awaitData(idleTimeout);
+          continue;
+        }
+        pumping = true;
+      }
+      pump();
+    }
+  }
+
+  private void pump() throws IOException {
+    byte[] target;
+    int off;
+    boolean toMemory;
+    synchronized(this) {
+      toMemory = (memory == length) && (memory < maxMemoryBytes);
+      if(toMemory) {
+        off = (int)(memory % CHUNK_SIZE);
+        if(off == 0) {
+          chunks.add(new byte[CHUNK_SIZE]);
+        }
+        target = chunks.get(chunks.size() - 1);
+      } else {
+        if(spoolBuffer == null) {
+          spoolBuffer = new byte[CHUNK_SIZE];
+        }
+        off = 0;
+        target = spoolBuffer;
+      }
+    }
+    int read = 0;
+    boolean done = false;
+    try {
+      // only this reader writes past length, the others do not look there
+      read = upstream.read(target, off, CHUNK_SIZE - off);
+      if(!toMemory && (read > 0)) {
+        spool(target, read);
+      }
+      done = true;
+    } finally {
+      synchronized(this) {
+        pumping = false;
+        if(!done) {
+          end(false);
+        } else if(read == -1) {
+          end(upstream.isComplete());
+        } else {
+          length += read;
+          if(toMemory) {
+            memory += read;
+          }
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  private void spool(byte[] b, int len) throws IOException {
+    if(spool == null) {
+      log.debug("response body of '{}' exceeds '{}' bytes, spooling to file", key, maxMemoryBytes);
+      spool = FileChannel.open(Files.createTempFile("rproxy-flight-", ".tmp"),
+          StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+    ByteBuffer buf = ByteBuffer.wrap(b, 0, len);
+    for(long position = length - memory;buf.hasRemaining();) {
+      position += spool.write(buf, position);
+    }
+  }
+
+  private void awaitData(Duration idleTimeout) throws IOException {
+    try {
+      long filled = length;
+      long start = System.currentTimeMillis();
+      wait(idleTimeout.toMillis());
+      if(!idleTimeout.isZero() && (filled == length) && !ended
+          && (System.currentTimeMillis() - start >= idleTimeout.toMillis())) {
+        throw new SocketTimeoutException("no data on coalesced request '%s' within '%s'".formatted(key, idleTimeout));
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while reading coalesced request '%s'".formatted(key), e);
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.Map;
+
+// a finished span, see Trace
+// - parentSpanId: null for the root span of a trace
+// - startMicros: epoch microseconds
+// - attributes: e.g. route, upstream or status
+public record Span(
+    String traceId,
+    String spanId,
+    String parentSpanId,
+    String name,
+    long startMicros,
+    long durationNanos,
+    Map<String, String> attributes) {
+
+  // appends the span as json line
+  public void appendTo(StringBuilder b) {
+    b.append("{\"trace_id\":\"").append(traceId).append('"');
+    Json.field(b, "span_id", spanId);
+    Json.field(b, "parent_span_id", parentSpanId);
+    Json.field(b, "name", name);
+    b.append(",\"start_us\":").append(startMicros);
+    b.append(",\"duration_us\":").append(durationNanos / 1000);
+    b.append(",\"attributes\":{");
+    boolean first = true;
+    for(Map.Entry<String, String> me : attributes.entrySet()) {
+      if(!first) {
+        b.append(',');
+      }
+      first = false;
+      Json.string(b, me.getKey());
+      b.append(':');
+      Json.string(b, me.getValue());
+    }
+    b.append("}}\n");
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.ByteArrayOutputStream;
+
+// collects a body of unknown length in memory and spills it to the disk tier once it gets larger than the
+// memory tier takes
+public class TieredCacheWriter implements CacheWriter {
+
+  private final DiskResponseCache disk;
+
+  private final String key;
+
+  private final long threshold;
+
+  private ByteArrayOutputStream buf = new ByteArrayOutputStream(1024);
+
+  private CacheWriter spill;
+
+  private boolean aborted;
+
+  public TieredCacheWriter(DiskResponseCache disk, String key, long threshold) {
+    super();
+    this.disk = disk;
+    this.key = key;
+    this.threshold = threshold;
+  }
+
+  @Override
+  public boolean write(byte[] b, int off, int len) {
+    if(aborted) {
+      return false;
+    }
+    if(spill == null) {
+      if(buf.size() + len <= threshold) {
+        buf.write(b, off, len);
+        return true;
+      }
+      spill = disk.writer(key, -1);
+      if((spill == null) || !spill.write(buf.toByteArray(), 0, buf.size())) {
+        abort();
+        return false;
+      }
+      buf = null;
+    }
+    if(!spill.write(b, off, len)) {
+      abort();
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public CacheBody finish() {
+    if(aborted) {
+      throw new ReverseProxyException("cache writer aborted");
+    }
+    return spill != null ? spill.finish() : CacheBody.of(buf.toByteArray());
+  }
+
+  @Override
+  public void abort() {
+    aborted = true;
+    buf = null;
+    if(spill != null) {
+      spill.abort();
+    }
+  }
+
+}
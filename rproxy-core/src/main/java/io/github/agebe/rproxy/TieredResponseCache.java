@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// small responses are kept in memory, large ones in memory mapped files on disk. bodies of known length go
+// straight to their tier, bodies of unknown length (chunked) are buffered in memory and spill to disk
+// once they get larger than the memory tier takes.
+public class TieredResponseCache implements ResponseCache {
+
+  private final MemoryResponseCache memory;
+
+  private final DiskResponseCache disk;
+
+  public TieredResponseCache(MemoryResponseCache memory, DiskResponseCache disk) {
+    super();
+    this.memory = memory;
+    this.disk = disk;
+  }
+
+  // a variant can briefly be in both tiers while it moves from one to the other, the newer response wins
+  @Override
+  public CachedResponse get(String key, HttpRequestHeader request) {
+    CachedResponse m = memory.get(key, request);
+    CachedResponse d = disk.get(key, request);
+    if((m == null) || (d == null)) {
+      return m != null ? m : d;
+    }
+    return m.responseTime() >= d.responseTime() ? m : d;
+  }
+
+  @Override
+  public CacheWriter writer(String key, long contentLength) {
+    if(contentLength < 0) {
+      return new TieredCacheWriter(disk, key, memory.getMaxEntryBytes());
+    } else if(contentLength <= memory.getMaxEntryBytes()) {
+      return memory.writer(key, contentLength);
+    } else {
+      return disk.writer(key, contentLength);
+    }
+  }
+
+  @Override
+  public void put(String key, CachedResponse response) {
+    // the body might fit the memory tier but not the whole response, disk copies the body to a file
+    // an older copy in the other tier would take space and, on disk, come back after a restart
+    if((response.body() instanceof MappedCacheBody) || (response.size() > memory.getMaxEntryBytes())) {
+      memory.remove(key);
+      disk.put(key, response);
+    } else {
+      disk.remove(key);
+      memory.put(key, response);
+    }
+  }
+
+  @Override
+  public void remove(String key) {
+    memory.remove(key);
+    disk.remove(key);
+  }
+
+  public MemoryResponseCache getMemory() {
+    return memory;
+  }
+
+  public DiskResponseCache getDisk() {
+    return disk;
+  }
+
+}
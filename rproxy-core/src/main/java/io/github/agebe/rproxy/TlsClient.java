@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// holds the SSLContext built from a TlsClientConfig. The context (and with it the client session cache)
+// is reused for all connections so TLS sessions can be resumed instead of doing a full handshake every time.
+public class TlsClient {
+
+  private static final Logger log = LoggerFactory.getLogger(TlsClient.class);
+
+  private final TlsClientConfig config;
+
+  private final SSLSocketFactory socketFactory;
+
+  public TlsClient(TlsClientConfig config) {
+    super();
+    this.config = config;
+    this.socketFactory = createSslContext(config).getSocketFactory();
+  }
+
+  private static SSLContext createSslContext(TlsClientConfig config) {
+    try {
+      SSLContext sc = SSLContext.getInstance("TLS");
+      sc.init(keyManagers(config), trustManagers(config), null);
+      SSLSessionContext sessionContext = sc.getClientSessionContext();
+      if(config.sessionCacheSize() > 0) {
+        sessionContext.setSessionCacheSize(config.sessionCacheSize());
+      }
+      if(config.sessionTimeoutSeconds() > 0) {
+        sessionContext.setSessionTimeout(config.sessionTimeoutSeconds());
+      }
+      return sc;
+    } catch(Exception e) {
+      throw new ReverseProxyException("failed to initialize tls client", e);
+    }
+  }
+
+  private static KeyManager[] keyManagers(TlsClientConfig config) throws Exception {
+    if(config.keyStore() == null) {
+      return null;
+    }
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(config.keyStore(), config.keyPassword());
+    return kmf.getKeyManagers();
+  }
+
+  private static TrustManager[] trustManagers(TlsClientConfig config) throws Exception {
+    if(config.trustAll()) {
+      // X509AllTrustManager might be required when the remote is e.g. using self signed certificates
+      return new TrustManager[] { new X509AllTrustManager() };
+    } else if(config.trustStore() != null) {
+      TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      tmf.init(config.trustStore());
+      return tmf.getTrustManagers();
+    } else {
+      return null;
+    }
+  }
+
+  public TlsClientConfig getConfig() {
+    return config;
+  }
+
+  // layers TLS over the already connected socket and does the handshake.
+  // host and port are passed on so the session can be found in the cache for resumption and for SNI.
+  public SSLSocket handshake(Socket socket, String host, int port) throws IOException {
+    SSLSocket s = (SSLSocket) socketFactory.createSocket(socket, host, port, true);
+    try {
+      SSLParameters params = s.getSSLParameters();
+      if(config.protocols() != null) {
+        params.setProtocols(config.protocols().toArray(new String[0]));
+      }
+      if(config.cipherSuites() != null) {
+        params.setCipherSuites(config.cipherSuites().toArray(new String[0]));
+      }
+      if(config.verifyHostname()) {
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+      }
+      s.setSSLParameters(params);
+      s.startHandshake();
+      log.debug("tls handshake with '{}:{}' done, protocol '{}', cipher suite '{}'",
+          host, port, s.getSession().getProtocol(), s.getSession().getCipherSuite());
+      return s;
+    } catch(IOException | RuntimeException e) {
+      s.close();
+      throw e;
+    }
+  }
+
+}
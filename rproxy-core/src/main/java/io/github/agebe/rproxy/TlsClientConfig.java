@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+// TLS settings for connections to an upstream server.
+// trustStore: certificates to trust, null uses the JVM default trust store (ignored if trustAll is set)
+// trustAll: trust any server certificate, e.g. for self signed certificates
+// keyStore, keyPassword: optional client certificate for mutual TLS
+// protocols, cipherSuites: null uses the JVM defaults
+// verifyHostname: check the server certificate matches the host name
+// sessionCacheSize, sessionTimeoutSeconds: TLS session cache for resumption, 0 uses the JVM defaults
+public record TlsClientConfig(
+    KeyStore trustStore,
+    boolean trustAll,
+    KeyStore keyStore,
+    char[] keyPassword,
+    List<String> protocols,
+    List<String> cipherSuites,
+    boolean verifyHostname,
+    int sessionCacheSize,
+    int sessionTimeoutSeconds) {
+
+  public TlsClientConfig {
+    // defensive copies, the caller might clear the password or reuse the array
+    keyPassword = keyPassword != null ? keyPassword.clone() : null;
+    protocols = protocols != null ? List.copyOf(protocols) : null;
+    cipherSuites = cipherSuites != null ? List.copyOf(cipherSuites) : null;
+  }
+
+  // this is how the reverse proxy connected to https servers before the tls config was added
+  public static final TlsClientConfig TRUST_ALL = new TlsClientConfig(
+      null, true, null, null, null, null, false, 0, 0);
+
+  public static final TlsClientConfig JVM_DEFAULT = new TlsClientConfig(
+      null, false, null, null, null, null, true, 0, 0);
+
+  public static TlsClientConfig trustStore(KeyStore trustStore) {
+    return new TlsClientConfig(trustStore, false, null, null, null, null, true, 0, 0);
+  }
+
+  public static TlsClientConfig mutualTls(KeyStore trustStore, KeyStore keyStore, char[] keyPassword) {
+    return new TlsClientConfig(trustStore, false, keyStore, keyPassword, null, null, true, 0, 0);
+  }
+
+  @Override
+  public char[] keyPassword() {
+    return keyPassword != null ? keyPassword.clone() : null;
+  }
+
+  // the generated methods would compare the password array by identity and print it
+  @Override
+  public boolean equals(Object o) {
+    return (o instanceof TlsClientConfig c)
+        && Objects.equals(trustStore, c.trustStore)
+        && (trustAll == c.trustAll)
+        && Objects.equals(keyStore, c.keyStore)
+        && Arrays.equals(keyPassword, c.keyPassword)
+        && Objects.equals(protocols, c.protocols)
+        && Objects.equals(cipherSuites, c.cipherSuites)
+        && (verifyHostname == c.verifyHostname)
+        && (sessionCacheSize == c.sessionCacheSize)
+        && (sessionTimeoutSeconds == c.sessionTimeoutSeconds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(trustStore, trustAll, keyStore, Arrays.hashCode(keyPassword), protocols, cipherSuites,
+        verifyHostname, sessionCacheSize, sessionTimeoutSeconds);
+  }
+
+  @Override
+  public String toString() {
+    return "TlsClientConfig[trustStore=%s, trustAll=%s, keyStore=%s, keyPassword=%s, protocols=%s, cipherSuites=%s,"
+        .formatted(trustStore, trustAll, keyStore, keyPassword != null ? "***" : null, protocols, cipherSuites)
+        + " verifyHostname=%s, sessionCacheSize=%s, sessionTimeoutSeconds=%s]"
+        .formatted(verifyHostname, sessionCacheSize, sessionTimeoutSeconds);
+  }
+
+  public static KeyStore loadKeyStore(Path path, String type, char[] password) {
+    try(InputStream in = Files.newInputStream(path)) {
+      KeyStore ks = KeyStore.getInstance(type);
+      ks.load(in, password);
+      return ks;
+    } catch(Exception e) {
+      throw new ReverseProxyException("failed to load key store '{}'", path, e);
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// TLS client configuration per upstream (origin), upstreams without their own configuration use the default
+public class TlsClientSupport {
+
+  private static volatile TlsClient defaultClient = new TlsClient(TlsClientConfig.TRUST_ALL);
+
+  private static final Map<Origin, TlsClient> clients = new ConcurrentHashMap<>();
+
+  public static TlsClient getTlsClient(Origin origin) {
+    TlsClient client = clients.get(origin);
+    return client != null ? client : defaultClient;
+  }
+
+  public static void setDefaultConfig(TlsClientConfig config) {
+    defaultClient = new TlsClient(config);
+  }
+
+  public static void setConfig(Origin origin, TlsClientConfig config) {
+    clients.put(origin, new TlsClient(config));
+  }
+
+  public static void setConfig(String baseUrl, TlsClientConfig config) {
+    try {
+      setConfig(Origin.of(new URL(baseUrl)), config);
+    } catch(MalformedURLException e) {
+      throw new ReverseProxyException(e);
+    }
+  }
+
+  public static void removeConfig(Origin origin) {
+    clients.remove(origin);
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// the spans of a request going through the proxy, stored as request attribute.
+// - proxy: the whole request, child of the incoming traceparent or the root of a new trace
+//   - route: route matching (GatewayFilter)
+//   - upstream: the forwarded request, its id is sent upstream in the traceparent header
+//     - connect, tls_handshake: only if a new connection had to be opened
+//     - write_header, first_byte, relay_body
+// spans are exported as they finish, the proxy span is finished by GatewayFilter.
+public class Trace {
+
+  public static final String ATTRIBUTE = Trace.class.getName();
+
+  // the incoming context, null if the trace has been started here
+  private final TraceContext parent;
+
+  private final TraceContext proxy;
+
+  private final TraceContext upstream;
+
+  private final SpanExporter exporter;
+
+  // microsecond precision where the platform clock has it
+  private final long startMicros = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+
+  private final long startNanos = System.nanoTime();
+
+  private final AtomicBoolean ended = new AtomicBoolean();
+
+  private volatile long headerSentNanos;
+
+  private Trace(TraceContext parent, SpanExporter exporter) {
+    super();
+    this.parent = parent;
+    this.proxy = parent != null ? parent.child() : TraceContext.root();
+    this.upstream = proxy.child();
+    this.exporter = exporter;
+  }
+
+  public static Trace get(HttpServletRequest request) {
+    Object o = request.getAttribute(ATTRIBUTE);
+    return (o instanceof Trace t) ? t : null;
+  }
+
+  // continues the trace of the incoming traceparent header or starts a new one.
+  // returns the already started trace of the request, null if tracing is disabled.
+  public static Trace start(HttpServletRequest request) {
+    Trace trace = get(request);
+    if(trace != null) {
+      return trace;
+    }
+    SpanExporter exporter = TracingSupport.getExporter();
+    if(exporter == null) {
+      return null;
+    }
+    trace = new Trace(TraceContext.parse(request.getHeader("traceparent"), request.getHeader("tracestate")), exporter);
+    request.setAttribute(ATTRIBUTE, trace);
+    return trace;
+  }
+
+  public TraceContext getParent() {
+    return parent;
+  }
+
+  public TraceContext getProxy() {
+    return proxy;
+  }
+
+  // the context sent upstream
+  public TraceContext getUpstream() {
+    return upstream;
+  }
+
+  public long getHeaderSentNanos() {
+    return headerSentNanos;
+  }
+
+  public void setHeaderSentNanos(long headerSentNanos) {
+    this.headerSentNanos = headerSentNanos;
+  }
+
+  // exports a child span of the proxy span, attributes are name value pairs
+  public void proxySpan(String name, long startNanos, long endNanos, String... attributes) {
+    export(proxy.child(), proxy.spanId(), name, startNanos, endNanos, attributes);
+  }
+
+  // exports a child span of the upstream span
+  public void upstreamSpan(String name, long startNanos, long endNanos, String... attributes) {
+    export(upstream.child(), upstream.spanId(), name, startNanos, endNanos, attributes);
+  }
+
+  // exports the upstream span
+  public void upstream(long startNanos, long endNanos, String... attributes) {
+    export(upstream, proxy.spanId(), "upstream", startNanos, endNanos, attributes);
+  }
+
+  // exports the proxy span, only once
+  public void end(String... attributes) {
+    if(ended.compareAndSet(false, true)) {
+      export(proxy, parent != null ? parent.spanId() : null, "proxy", startNanos, System.nanoTime(), attributes);
+    }
+  }
+
+  private void export(TraceContext context, String parentSpanId, String name,
+      long startNanos, long endNanos, String... attributes) {
+    if(!proxy.sampled()) {
+      return;
+    }
+    Map<String, String> attrs = new LinkedHashMap<>();
+    for(int i=0;i+1<attributes.length;i+=2) {
+      if(attributes[i + 1] != null) {
+        attrs.put(attributes[i], attributes[i + 1]);
+      }
+    }
+    exporter.export(new Span(context.traceId(), context.spanId(), parentSpanId, name,
+        this.startMicros + ((startNanos - this.startNanos) / 1000), endNanos - startNanos, attrs));
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// w3c trace context, https://www.w3.org/TR/trace-context/
+// - traceId: 32 lower case hex chars
+// - spanId: 16 lower case hex chars, the span the context refers to
+// - sampled: the sampled trace flag, spans of unsampled traces are propagated but not exported
+// - traceState: the vendor specific tracestate header, passed on unchanged
+public record TraceContext(
+    String traceId,
+    String spanId,
+    boolean sampled,
+    String traceState) {
+
+  private static final String INVALID_TRACE_ID = "0".repeat(32);
+
+  private static final String INVALID_SPAN_ID = "0".repeat(16);
+
+  // starts a new trace
+  public static TraceContext root() {
+    ThreadLocalRandom r = ThreadLocalRandom.current();
+    return new TraceContext(hex(r.nextLong()) + hex(r.nextLong()), newSpanId(), true, null);
+  }
+
+  // the context of a new span within the same trace
+  public TraceContext child() {
+    return new TraceContext(traceId, newSpanId(), sampled, traceState);
+  }
+
+  // version-traceid-parentid-flags, e.g. '00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01'
+  public String traceparent() {
+    return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+  }
+
+  // returns null if the traceparent header is missing or invalid
+  public static TraceContext parse(String traceparent, String tracestate) {
+    if(traceparent == null) {
+      return null;
+    }
+    String s = traceparent.strip();
+    // later versions may append fields, they are parsed like version 00
+    if((s.length() < 55) || (s.charAt(2) != '-') || (s.charAt(35) != '-') || (s.charAt(52) != '-')
+        || ((s.length() > 55) && (s.startsWith("00") || (s.charAt(55) != '-')))) {
+      return null;
+    }
+    String version = s.substring(0, 2);
+    String traceId = s.substring(3, 35);
+    String spanId = s.substring(36, 52);
+    String flags = s.substring(53, 55);
+    if(!isHex(version) || "ff".equals(version) || !isHex(traceId) || !isHex(spanId) || !isHex(flags)
+        || INVALID_TRACE_ID.equals(traceId) || INVALID_SPAN_ID.equals(spanId)) {
+      return null;
+    }
+    boolean sampled = (Integer.parseInt(flags, 16) & 1) != 0;
+    return new TraceContext(traceId, spanId, sampled, tracestate);
+  }
+
+  private static boolean isHex(String s) {
+    for(int i=0;i<s.length();i++) {
+      char c = s.charAt(i);
+      if(!(((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'f')))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String newSpanId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while(id == 0);
+    return hex(id);
+  }
+
+  private static String hex(long l) {
+    String s = Long.toHexString(l);
+    return s.length() < 16 ? "0".repeat(16 - s.length()) + s : s;
+  }
+
+}
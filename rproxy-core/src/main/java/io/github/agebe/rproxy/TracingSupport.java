@@ -0,0 +1,34 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+// the exporter spans are sent to, null (the default) disables tracing.
+// with tracing disabled traceparent and tracestate headers are passed on unchanged.
+public class TracingSupport {
+
+  private static volatile SpanExporter exporter;
+
+  public static SpanExporter getExporter() {
+    return exporter;
+  }
+
+  public static void setExporter(SpanExporter exporter) {
+    TracingSupport.exporter = exporter;
+  }
+
+  public static boolean isEnabled() {
+    return exporter != null;
+  }
+
+}
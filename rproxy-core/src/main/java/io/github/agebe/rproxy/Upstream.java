@@ -0,0 +1,227 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a single upstream instance of an UpstreamGroup with the live stats the load balancers work on
+public class Upstream {
+
+  // request and failure counts of the recent past in time buckets, the buckets are reused round robin
+  private static class FailureWindow {
+
+    private static final int BUCKETS = 10;
+
+    private final long[] slots = new long[BUCKETS];
+
+    private final int[] requests = new int[BUCKETS];
+
+    private final int[] failures = new int[BUCKETS];
+
+    // returns the failure rate in percent, -1 if there are less than minRequests in the window
+    private synchronized int add(boolean failed, long now, long intervalNanos, int minRequests) {
+      long bucketNanos = Math.max(1, intervalNanos / BUCKETS);
+      long slot = Math.floorDiv(now, bucketNanos);
+      int i = Math.floorMod(slot, BUCKETS);
+      if(slots[i] != slot) {
+        slots[i] = slot;
+        requests[i] = 0;
+        failures[i] = 0;
+      }
+      requests[i]++;
+      if(failed) {
+        failures[i]++;
+      }
+      long totalRequests = 0;
+      long totalFailures = 0;
+      for(int b=0;b<BUCKETS;b++) {
+        if(slot - slots[b] < BUCKETS) {
+          totalRequests += requests[b];
+          totalFailures += failures[b];
+        }
+      }
+      return totalRequests >= Math.max(1, minRequests) ? (int)((totalFailures * 100) / totalRequests) : -1;
+    }
+
+    private synchronized void clear() {
+      Arrays.fill(requests, 0);
+      Arrays.fill(failures, 0);
+    }
+
+  }
+
+  // weight of the latest sample in the moving average
+  private static final double ALPHA = 0.2;
+
+  private final String baseUrl;
+
+  private final Origin origin;
+
+  private final AtomicInteger outstanding = new AtomicInteger();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  // exponentially weighted moving average of the response time in nanos, as double bits
+  private final AtomicLong ewma = new AtomicLong(Double.doubleToLongBits(0));
+
+  // passive health, see OutlierDetection
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+  private final FailureWindow failureWindow = new FailureWindow();
+
+  private int ejections;
+
+  private volatile boolean ejected;
+
+  private volatile long ejectedUntil;
+
+  // active health, see HealthChecker
+  private volatile boolean healthy = true;
+
+  private int probeSuccesses;
+
+  private int probeFailures;
+
+  public Upstream(String baseUrl) {
+    super();
+    this.baseUrl = baseUrl;
+    try {
+      this.origin = Origin.of(new URL(baseUrl));
+    } catch(MalformedURLException e) {
+      throw new ReverseProxyException(e);
+    }
+  }
+
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  public Origin getOrigin() {
+    return origin;
+  }
+
+  public int getOutstanding() {
+    return outstanding.get();
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  // moving average of the response time in nanos, 0 until the first request completed
+  public double getLatencyEwma() {
+    return Double.longBitsToDouble(ewma.get());
+  }
+
+  // call on sending a request to the upstream, returns the start time for end()
+  public long start() {
+    outstanding.incrementAndGet();
+    requests.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  public void end(long start, boolean success) {
+    outstanding.decrementAndGet();
+    if(!success) {
+      failures.incrementAndGet();
+    }
+    double sample = System.nanoTime() - start;
+    ewma.updateAndGet(bits -> {
+      double current = Double.longBitsToDouble(bits);
+      return Double.doubleToLongBits(current == 0 ? sample : current + ALPHA * (sample - current));
+    });
+  }
+
+  public boolean isHealthy() {
+    return healthy;
+  }
+
+  public boolean isEjected() {
+    return ejected && (System.nanoTime() - ejectedUntil < 0);
+  }
+
+  // true if the upstream takes part in the load balancing
+  public boolean isAvailable() {
+    return healthy && !isEjected();
+  }
+
+  public int getConsecutiveFailures() {
+    return consecutiveFailures.get();
+  }
+
+  // returns the number of failures in a row
+  int failed() {
+    return consecutiveFailures.incrementAndGet();
+  }
+
+  void succeeded() {
+    if(consecutiveFailures.get() != 0) {
+      consecutiveFailures.set(0);
+    }
+  }
+
+  // adds the request outcome to the failure rate window, returns the failure rate in percent
+  // or -1 if there have not been enough requests within the interval
+  int failureRate(boolean failed, OutlierDetection config) {
+    return failureWindow.add(failed, System.nanoTime(),
+        config.failureRateInterval().toNanos(), config.failureRateMinRequests());
+  }
+
+  // returns the ejection time
+  synchronized Duration eject(OutlierDetection config) {
+    ejections++;
+    Duration d = config.ejectionTime(ejections);
+    ejectedUntil = System.nanoTime() + d.toNanos();
+    ejected = true;
+    consecutiveFailures.set(0);
+    failureWindow.clear();
+    return d;
+  }
+
+  synchronized void probed(boolean success, HealthCheckConfig config) {
+    if(success) {
+      probeFailures = 0;
+      probeSuccesses++;
+      if(!healthy && (probeSuccesses >= config.healthyThreshold())) {
+        healthy = true;
+        // a healthy probe clears the ejection backoff too
+        ejected = false;
+        ejections = 0;
+      }
+    } else {
+      probeSuccesses = 0;
+      probeFailures++;
+      if(healthy && (probeFailures >= config.unhealthyThreshold())) {
+        healthy = false;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return baseUrl;
+  }
+
+}
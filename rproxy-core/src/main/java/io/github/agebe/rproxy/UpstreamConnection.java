@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// a (possibly pooled) connection to an upstream server.
+// the input stream is buffered per connection (not per request) as the buffer might already hold
+// bytes of the next response when the connection is reused.
+public class UpstreamConnection implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(UpstreamConnection.class);
+
+  private static final int BUF_SIZE = 64 * 1024;
+
+  private final Origin origin;
+
+  private final Socket socket;
+
+  private final HttpInputBuffer in;
+
+  private final OutputStream out;
+
+  private final AtomicBoolean leased = new AtomicBoolean();
+
+  private volatile long lastUsed = System.nanoTime();
+
+  // keep-alive timeout as announced by the server in the 'Keep-Alive' response header
+  private volatile long keepAliveNanos = -1;
+
+  private int requests;
+
+  public UpstreamConnection(Origin origin, Socket socket) {
+    super();
+    this.origin = origin;
+    this.socket = socket;
+    try {
+      this.in = new HttpInputBuffer(socket.getInputStream(), BUF_SIZE);
+      this.out = socket.getOutputStream();
+    } catch(IOException e) {
+      close();
+      throw new BadGatewayException("failed to open streams on connection to '{}'", origin, e);
+    }
+  }
+
+  public Origin getOrigin() {
+    return origin;
+  }
+
+  public Socket getSocket() {
+    return socket;
+  }
+
+  public HttpInputBuffer getInputStream() {
+    return in;
+  }
+
+  public OutputStream getOutputStream() {
+    return out;
+  }
+
+  // number of requests executed on this connection (including the current one)
+  public int getRequests() {
+    return requests;
+  }
+
+  public boolean isReused() {
+    return requests > 1;
+  }
+
+  public void setKeepAliveTimeoutSeconds(long seconds) {
+    this.keepAliveNanos = seconds * 1_000_000_000L;
+  }
+
+  long idleNanos(long now) {
+    return now - lastUsed;
+  }
+
+  boolean isExpired(long now, long idleTimeoutNanos) {
+    long idle = idleNanos(now);
+    if(idle >= idleTimeoutNanos) {
+      return true;
+    }
+    // give the server a second head start, it might close the connection just as we are about to use it
+    return (keepAliveNanos > 0) && (idle >= (keepAliveNanos - 1_000_000_000L));
+  }
+
+  boolean lease() {
+    if(leased.compareAndSet(false, true)) {
+      requests++;
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  boolean unlease() {
+    if(leased.compareAndSet(true, false)) {
+      lastUsed = System.nanoTime();
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  // timeout on blocking reads, zero means no timeout
+  public void setReadTimeout(Duration timeout) {
+    try {
+      socket.setSoTimeout(ForwardTimeouts.millis(timeout));
+    } catch(SocketException e) {
+      throw new BadGatewayException("failed to set read timeout on connection to '{}'", origin, e);
+    }
+  }
+
+  // blocks until the first response byte is available, throws if the server closed the connection
+  // which is what happens when we are sending a request on a connection the server has already given up on.
+  public void awaitResponse() throws IOException {
+    if(in.peek() == -1) {
+      throw new IOException("connection closed by server before sending a response");
+    }
+  }
+
+  // checks if the server closed the connection or sent unexpected data while the connection was idle
+  public boolean isStale() {
+    if(socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+      return true;
+    }
+    try {
+      if(in.available() > 0) {
+        log.debug("connection to '{}' has unexpected data while idle", origin);
+        return true;
+      }
+      int soTimeout = socket.getSoTimeout();
+      try {
+        socket.setSoTimeout(1);
+        int i = in.peek();
+        if(i == -1) {
+          return true;
+        }
+        log.debug("connection to '{}' has unexpected data while idle", origin);
+        return true;
+      } catch(SocketTimeoutException e) {
+        // nothing to read, the connection is still open
+        return false;
+      } finally {
+        socket.setSoTimeout(soTimeout);
+      }
+    } catch(IOException e) {
+      return true;
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      socket.close();
+    } catch(Exception e) {
+      log.debug("failed to close connection to '{}'", origin, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "%s (requests %s)".formatted(origin, requests);
+  }
+
+}
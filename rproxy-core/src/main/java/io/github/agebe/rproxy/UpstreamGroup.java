@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// a named set of upstream instances serving the same content, the load balancer picks one per request.
+// upstreams that failed their health checks or have been ejected by the outlier detection are skipped.
+// if that leaves nothing to pick from all upstreams are used (panic mode), some might have recovered.
+public class UpstreamGroup implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(UpstreamGroup.class);
+
+  private final String name;
+
+  private final List<Upstream> upstreams;
+
+  private final LoadBalancer balancer;
+
+  private volatile OutlierDetection outlierDetection = OutlierDetection.DEFAULT;
+
+  private HealthChecker healthChecker;
+
+  public UpstreamGroup(String name, LoadBalancer balancer, List<String> baseUrls) {
+    super();
+    if((baseUrls == null) || baseUrls.isEmpty()) {
+      throw new ReverseProxyException("upstream group '{}' without upstreams", name);
+    }
+    this.name = name;
+    this.balancer = balancer;
+    this.upstreams = baseUrls.stream().map(Upstream::new).toList();
+  }
+
+  public UpstreamGroup(String name, LoadBalancer balancer, String... baseUrls) {
+    this(name, balancer, List.of(baseUrls));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<Upstream> getUpstreams() {
+    return upstreams;
+  }
+
+  public LoadBalancer getBalancer() {
+    return balancer;
+  }
+
+  public OutlierDetection getOutlierDetection() {
+    return outlierDetection;
+  }
+
+  public void setOutlierDetection(OutlierDetection outlierDetection) {
+    this.outlierDetection = outlierDetection;
+  }
+
+  // starts probing the upstreams in the background, replaces previous health checks
+  public synchronized void startHealthChecks(HealthCheckConfig config) {
+    stopHealthChecks();
+    healthChecker = new HealthChecker(name, config, upstreams);
+  }
+
+  public synchronized void stopHealthChecks() {
+    if(healthChecker != null) {
+      healthChecker.close();
+      healthChecker = null;
+    }
+  }
+
+  public Upstream select(HttpServletRequest request) {
+    return balancer.select(available(), request);
+  }
+
+  // the upstreams list itself if all are available so balancers can cache on it
+  private List<Upstream> available() {
+    int available = 0;
+    for(Upstream u : upstreams) {
+      if(u.isAvailable()) {
+        available++;
+      }
+    }
+    if(available == upstreams.size()) {
+      return upstreams;
+    } else if(available == 0) {
+      log.debug("no upstream available in group '{}', using all", name);
+      return upstreams;
+    }
+    List<Upstream> l = new ArrayList<>(available);
+    for(Upstream u : upstreams) {
+      if(u.isAvailable()) {
+        l.add(u);
+      }
+    }
+    return l;
+  }
+
+  // outcome of a request for the outlier detection, failed on bad gateway or a 5xx response
+  public void report(Upstream upstream, boolean failed) {
+    OutlierDetection config = outlierDetection;
+    if(!config.isEnabled()) {
+      return;
+    }
+    String reason = null;
+    if(!failed) {
+      upstream.succeeded();
+    } else if(config.consecutiveFailures() > 0) {
+      int consecutive = upstream.failed();
+      if(consecutive >= config.consecutiveFailures()) {
+        reason = "%s consecutive failures".formatted(consecutive);
+      }
+    }
+    if(config.isFailureRateEnabled()) {
+      int rate = upstream.failureRate(failed, config);
+      if(failed && (reason == null) && (rate >= config.failureRatePercent())) {
+        reason = "%s%% failure rate".formatted(rate);
+      }
+    }
+    if((reason != null) && canEject(config)) {
+      Duration d = upstream.eject(config);
+      log.warn("ejecting upstream '{}' of group '{}' for '{}', {}", upstream, name, d, reason);
+    }
+  }
+
+  private boolean canEject(OutlierDetection config) {
+    int ejected = 0;
+    for(Upstream u : upstreams) {
+      if(u.isEjected()) {
+        ejected++;
+      }
+    }
+    return ((ejected + 1) * 100) <= (upstreams.size() * config.maxEjectionPercent());
+  }
+
+  @Override
+  public void close() {
+    stopHealthChecks();
+  }
+
+  @Override
+  public String toString() {
+    return "%s %s".formatted(name, upstreams);
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// named upstream groups so handlers can forward to a group by name
+public class UpstreamGroupSupport {
+
+  private static final Map<String, UpstreamGroup> groups = new ConcurrentHashMap<>();
+
+  public static void register(UpstreamGroup group) {
+    groups.put(group.getName(), group);
+  }
+
+  public static UpstreamGroup remove(String name) {
+    return groups.remove(name);
+  }
+
+  public static UpstreamGroup getGroup(String name) {
+    UpstreamGroup group = groups.get(name);
+    if(group == null) {
+      throw new ReverseProxyException("upstream group '{}' not found", name);
+    }
+    return group;
+  }
+
+}
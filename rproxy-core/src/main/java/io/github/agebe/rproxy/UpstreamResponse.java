@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.Closeable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// the response of an upstream server, the headers have been read and the body (if any) is read from the connection.
+// close returns the connection to the pool. it is only reused if both the request and the response body went
+// through completely, otherwise there might be leftovers on the connection that would mess up the next request.
+public class UpstreamResponse implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(UpstreamResponse.class);
+
+  private static final long REQUEST_BODY_TIMEOUT_MS = 1000;
+
+  private final ConnectionPool pool;
+
+  private final UpstreamConnection connection;
+
+  private final HttpHeaders headers;
+
+  private final HttpBodyInputStream body;
+
+  // complete without reading, no body or content-length: 0
+  private final boolean noBody;
+
+  private final Future<Boolean> requestBodyUpload;
+
+  private boolean closed;
+
+  public UpstreamResponse(
+      ConnectionPool pool,
+      UpstreamConnection connection,
+      HttpHeaders headers,
+      HttpBodyInputStream body,
+      boolean noBody,
+      Future<Boolean> requestBodyUpload) {
+    super();
+    this.pool = pool;
+    this.connection = connection;
+    this.headers = headers;
+    this.body = body;
+    this.noBody = noBody;
+    this.requestBodyUpload = requestBodyUpload;
+  }
+
+  public HttpHeaders headers() {
+    return headers;
+  }
+
+  // null if there is no body or the body is delimited by the server closing the connection
+  public HttpBodyInputStream body() {
+    return body;
+  }
+
+  // true if the response body has been read completely (as announced by the message framing)
+  public boolean isComplete() {
+    return body != null ? body.isComplete() : noBody;
+  }
+
+  public Origin getOrigin() {
+    return connection.getOrigin();
+  }
+
+  @Override
+  public void close() {
+    if(closed) {
+      return;
+    }
+    closed = true;
+    boolean requestBodyComplete = (requestBodyUpload == null) || awaitRequestBody(requestBodyUpload);
+    boolean reusable = isComplete() && requestBodyComplete && ReverseProxy.isKeepAlive(headers);
+    if(reusable) {
+      Long keepAliveTimeout = ReverseProxy.keepAliveTimeoutSeconds(headers);
+      if(keepAliveTimeout != null) {
+        connection.setKeepAliveTimeoutSeconds(keepAliveTimeout);
+      }
+    }
+    pool.release(connection, reusable);
+  }
+
+  // the server usually reads the whole request body before it finishes the response. if it did not (e.g. it
+  // rejected the request early) give the upload a moment and cancel it, the connection is not reused in that case.
+  static boolean awaitRequestBody(Future<Boolean> upload) {
+    try {
+      return upload.get(REQUEST_BODY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch(TimeoutException e) {
+      log.debug("request body upload not finished after response, cancel");
+      upload.cancel(true);
+      return false;
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      upload.cancel(true);
+      return false;
+    } catch(Exception e) {
+      log.debug("request body upload failed", e);
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+// open loop load generator: requests are sent at a fixed rate no matter how long earlier requests take.
+// latency is measured from the time a request was scheduled to be sent, not from when it actually was,
+// so a stalled proxy shows up in the percentiles instead of just slowing the generator down
+// (coordinated omission). values are recorded in microseconds.
+// requests dropped because too many are in flight are recorded as taking until the end of the drain timeout,
+// the longest a request could take in this run, so dropping does not hide the stall from the percentiles.
+// the same goes for requests still in flight when the drain timeout ends.
+class LoadGenerator {
+
+  record Result(
+      long sent,
+      long completed,
+      long completedInWindow,
+      long dropped,
+      long errors,
+      long[] statusClasses,
+      Histogram latency,
+      double seconds) {
+
+    // requests completed within the generation window per second of it, the drain after it is not included
+    double throughput() {
+      return completedInWindow / seconds;
+    }
+
+  }
+
+  private final HttpClient client;
+
+  private final HttpRequest request;
+
+  private final int rate;
+
+  private final int maxInFlight;
+
+  LoadGenerator(HttpClient client, HttpRequest request, int rate, int maxInFlight) {
+    super();
+    this.client = client;
+    this.request = request;
+    this.rate = rate;
+    this.maxInFlight = maxInFlight;
+  }
+
+  // progress is printed once a second if out is not null
+  Result run(Duration duration, PrintStream out) {
+    Recorder recorder = new Recorder(3);
+    Histogram total = new Histogram(3);
+    AtomicLong inFlight = new AtomicLong();
+    AtomicLong completed = new AtomicLong();
+    AtomicLong completedInWindow = new AtomicLong();
+    // the scheduled times of the requests in flight, whoever removes one records it
+    Set<Long> pending = ConcurrentHashMap.newKeySet();
+    AtomicLong errors = new AtomicLong();
+    AtomicLongArray statusClasses = new AtomicLongArray(6);
+    long sent = 0;
+    long dropped = 0;
+    // the scheduled times of the dropped requests, recorded once the drain timeout is known
+    long[] droppedScheduled = new long[1024];
+    long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime();
+    long end = start + duration.toNanos();
+    long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+    for(long i=0;;i++) {
+      long scheduled = start + (i * interval);
+      if(scheduled >= end) {
+        break;
+      }
+      for(long wait;(wait = scheduled - System.nanoTime()) > 0;) {
+        LockSupport.parkNanos(wait);
+      }
+      if(scheduled >= nextReport) {
+        Histogram h = recorder.getIntervalHistogram();
+        total.add(h);
+        if(out != null) {
+          out.printf("%3ds sent %d completed %d in flight %d dropped %d errors %d p50 %.3fms p99 %.3fms max %.3fms%n",
+              TimeUnit.NANOSECONDS.toSeconds(scheduled - start), sent, completed.get(), inFlight.get(),
+              dropped, errors.get(), ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)),
+              ms(h.getMaxValue()));
+        }
+        nextReport += TimeUnit.SECONDS.toNanos(1);
+      }
+      if(inFlight.get() >= maxInFlight) {
+        if(dropped == droppedScheduled.length) {
+          droppedScheduled = Arrays.copyOf(droppedScheduled, droppedScheduled.length * 2);
+        }
+        droppedScheduled[(int) dropped++] = scheduled;
+        continue;
+      }
+      inFlight.incrementAndGet();
+      sent++;
+      pending.add(scheduled);
+      client.sendAsync(request, BodyHandlers.discarding()).whenComplete((HttpResponse<Void> response, Throwable e) -> {
+        inFlight.decrementAndGet();
+        if(!pending.remove(scheduled)) {
+          // completed after the drain timeout, already recorded as unfinished
+          return;
+        }
+        long now = System.nanoTime();
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(now - scheduled));
+        if(now < end) {
+          completedInWindow.incrementAndGet();
+        }
+        if(e != null) {
+          errors.incrementAndGet();
+        } else {
+          statusClasses.incrementAndGet(Math.min(response.statusCode() / 100, 5));
+        }
+        completed.incrementAndGet();
+      });
+    }
+    // give the outstanding requests some time to complete, they are part of the result
+    long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while((inFlight.get() > 0) && (System.nanoTime() < drainUntil)) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    for(int i=0;i<dropped;i++) {
+      recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(drainUntil - droppedScheduled[i]));
+    }
+    for(Long scheduled : pending) {
+      if(pending.remove(scheduled)) {
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(drainUntil - scheduled));
+      }
+    }
+    total.add(recorder.getIntervalHistogram());
+    long[] classes = new long[statusClasses.length()];
+    for(int i=0;i<classes.length;i++) {
+      classes[i] = statusClasses.get(i);
+    }
+    return new Result(sent, completed.get(), completedInWindow.get(), dropped, errors.get(), classes, total, duration.toNanos() / 1e9);
+  }
+
+  static double ms(long micros) {
+    return micros / 1000.0;
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.HdrHistogram.Histogram;
+
+// runs the stub backend, the proxy and the load generator in one jvm on the loopback interface and prints
+// throughput and latency percentiles, see LoadTestConfig for the options.
+// all three compete for the same cpus, compare runs made on the same box with the same options.
+public class LoadTest {
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+  public static void main(String[] args) throws Exception {
+    LoadTestConfig config = LoadTestConfig.parse(args);
+    PrintStream out = System.out;
+    StubBackend backend = new StubBackend(config.backendThreads());
+    LoadTestProxy proxy = config.direct() ? null : new LoadTestProxy(backend.getBaseUrl(), config.proxyThreads());
+    ExecutorService clientExecutor = Executors.newFixedThreadPool(config.clientThreads());
+    try {
+      String target = proxy != null ? proxy.getBaseUrl() : backend.getBaseUrl();
+      HttpClient client = HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_1_1)
+          .executor(clientExecutor)
+          .connectTimeout(Duration.ofSeconds(10))
+          .build();
+      HttpRequest request = config.scenario().request(target, config);
+      out.printf("%s %s, %s req/s for %ss (warmup %ss), target %s%n", config.scenario(), request.uri(),
+          config.rate(), config.duration().toSeconds(), config.warmup().toSeconds(), proxy != null ? "proxy" : "direct");
+      LoadGenerator generator = new LoadGenerator(client, request, config.rate(), config.maxInFlight());
+      if(!config.warmup().isZero()) {
+        out.println("warmup ...");
+        generator.run(config.warmup(), null);
+      }
+      LoadGenerator.Result result = generator.run(config.duration(), out);
+      report(config, result, out);
+    } finally {
+      clientExecutor.shutdownNow();
+      if(proxy != null) {
+        proxy.stop();
+      }
+      backend.stop();
+    }
+    System.exit(0);
+  }
+
+  private static void report(LoadTestConfig config, LoadGenerator.Result result, PrintStream out) throws Exception {
+    Histogram latency = result.latency();
+    out.printf("sent %d completed %d dropped %d errors %d%n",
+        result.sent(), result.completed(), result.dropped(), result.errors());
+    StringBuilder statuses = new StringBuilder();
+    for(int i=1;i<result.statusClasses().length;i++) {
+      statuses.append(" %sxx %s".formatted(i, result.statusClasses()[i]));
+    }
+    out.println("status" + statuses);
+    out.printf("throughput %.1f req/s%n", result.throughput());
+    StringBuilder percentiles = new StringBuilder();
+    for(double p : PERCENTILES) {
+      percentiles.append(" p%s %.3f".formatted(label(p), LoadGenerator.ms(latency.getValueAtPercentile(p))));
+    }
+    out.printf("latency ms mean %.3f%s max %.3f%n",
+        latency.getMean() / 1000, percentiles, LoadGenerator.ms(latency.getMaxValue()));
+    if(config.hgrm() != null) {
+      try(PrintStream hgrm = new PrintStream(Files.newOutputStream(config.hgrm()))) {
+        // scaled to milliseconds
+        latency.outputPercentileDistribution(hgrm, 1000.0);
+      }
+    }
+    if(config.csv() != null) {
+      boolean header = !Files.exists(config.csv());
+      StringBuilder line = new StringBuilder();
+      if(header) {
+        line.append("label,scenario,size,rate,direct,sent,completed,dropped,errors,throughput,mean");
+        for(double p : PERCENTILES) {
+          line.append(",p" + label(p));
+        }
+        line.append(",max\n");
+      }
+      line.append("%s,%s,%s,%s,%s,%s,%s,%s,%s,%.1f,%.3f".formatted(config.label(), config.scenario(), config.size(),
+          config.rate(), config.direct(), result.sent(), result.completed(), result.dropped(), result.errors(),
+          result.throughput(), latency.getMean() / 1000));
+      for(double p : PERCENTILES) {
+        line.append(",%.3f".formatted(LoadGenerator.ms(latency.getValueAtPercentile(p))));
+      }
+      line.append(",%.3f\n".formatted(LoadGenerator.ms(latency.getMaxValue())));
+      Files.writeString(config.csv(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+  }
+
+  // 50 -> "50", 99.9 -> "99.9"
+  private static String label(double percentile) {
+    return (percentile == Math.rint(percentile)) ? Long.toString((long)percentile) : Double.toString(percentile);
+  }
+
+}
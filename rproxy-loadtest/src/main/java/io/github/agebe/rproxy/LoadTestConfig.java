@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// load test options, given on the command line as --name=value:
+// - scenario: the request sent, see Scenario (fixed)
+// - size: body size in bytes for fixed, chunked and upload (1024)
+// - rate: requests per second, sent on schedule whether earlier requests have completed or not (1000)
+// - duration, warmup: seconds to measure and to run before measuring (30, 10)
+// - max-in-flight: requests beyond this many outstanding are counted as dropped instead of sent,
+//   dropped requests are part of the latency as timed out (1000)
+// - direct: true to send the requests to the backend without the proxy, as baseline (false)
+// - proxy-threads, backend-threads, client-threads: worker threads of tomcat, the backend and the client (200, 64, 8)
+// - drip-chunks, drip-delay-ms: the drip response (10, 20)
+// - hgrm: file to write the latency percentile distribution to, for the HdrHistogram plotter
+// - csv: file to append a summary line to, for comparing runs
+// - label: free text in the summary, e.g. the proxy version or the settings under test
+record LoadTestConfig(
+    Scenario scenario,
+    int size,
+    int rate,
+    Duration duration,
+    Duration warmup,
+    int maxInFlight,
+    boolean direct,
+    int proxyThreads,
+    int backendThreads,
+    int clientThreads,
+    int dripChunks,
+    long dripDelayMs,
+    Path hgrm,
+    Path csv,
+    String label) {
+
+  static LoadTestConfig parse(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for(String arg : args) {
+      if(!arg.startsWith("--")) {
+        throw new IllegalArgumentException("unexpected argument '%s', options are --name=value".formatted(arg));
+      }
+      int eq = arg.indexOf('=');
+      if(eq == -1) {
+        options.put(arg.substring(2), "true");
+      } else {
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      }
+    }
+    LoadTestConfig config = new LoadTestConfig(
+        Scenario.valueOf(options.getOrDefault("scenario", "fixed").toUpperCase().replace('-', '_')),
+        Integer.parseInt(options.getOrDefault("size", "1024")),
+        Integer.parseInt(options.getOrDefault("rate", "1000")),
+        Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30"))),
+        Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10"))),
+        Integer.parseInt(options.getOrDefault("max-in-flight", "1000")),
+        Boolean.parseBoolean(options.getOrDefault("direct", "false")),
+        Integer.parseInt(options.getOrDefault("proxy-threads", "200")),
+        Integer.parseInt(options.getOrDefault("backend-threads", "64")),
+        Integer.parseInt(options.getOrDefault("client-threads", "8")),
+        Integer.parseInt(options.getOrDefault("drip-chunks", "10")),
+        Long.parseLong(options.getOrDefault("drip-delay-ms", "20")),
+        options.containsKey("hgrm") ? Path.of(options.get("hgrm")) : null,
+        options.containsKey("csv") ? Path.of(options.get("csv")) : null,
+        options.getOrDefault("label", ""));
+    if(config.rate() <= 0) {
+      throw new IllegalArgumentException("rate must be > 0");
+    }
+    return config;
+  }
+
+}
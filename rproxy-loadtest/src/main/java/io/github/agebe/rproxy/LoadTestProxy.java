@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// the proxy under test, GatewayFilter in an embedded tomcat on the loopback interface that forwards
+// every request to the backend
+class LoadTestProxy {
+
+  // no @ProxyPath, handles all requests
+  @HandlerScope(ScopeType.SINGLETON)
+  public static class ForwardHandler extends AbstractHttpRequestHandler {
+
+    @Override
+    public RequestStatus handle(HttpServletRequest request, HttpServletResponse response) {
+      return forwardStreamResult(backendUrl, request, response);
+    }
+
+  }
+
+  // requests no handler takes care of end up here
+  private static class NotFoundServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+
+  }
+
+  private static volatile String backendUrl;
+
+  private final Tomcat tomcat = new Tomcat();
+
+  private final Connector connector;
+
+  LoadTestProxy(String backendUrl, int maxThreads) throws IOException, LifecycleException {
+    super();
+    LoadTestProxy.backendUrl = backendUrl;
+    HandlerRegister.instance().addHandler(ForwardHandler.class);
+    tomcat.setBaseDir(Files.createTempDirectory("rproxy-loadtest").toString());
+    connector = new Connector();
+    connector.setPort(0);
+    connector.setProperty("address", "127.0.0.1");
+    connector.setProperty("maxThreads", Integer.toString(maxThreads));
+    connector.setProperty("maxConnections", "-1");
+    connector.setProperty("acceptCount", "4096");
+    tomcat.setConnector(connector);
+    Context context = tomcat.addContext("", null);
+    FilterDef filterDef = new FilterDef();
+    filterDef.setFilterName("gateway");
+    filterDef.setFilter(new GatewayFilter());
+    context.addFilterDef(filterDef);
+    FilterMap filterMap = new FilterMap();
+    filterMap.setFilterName("gateway");
+    filterMap.addURLPattern("/*");
+    context.addFilterMap(filterMap);
+    Tomcat.addServlet(context, "notfound", new NotFoundServlet());
+    context.addServletMappingDecoded("/", "notfound");
+    tomcat.start();
+  }
+
+  String getBaseUrl() {
+    return "http://127.0.0.1:%s".formatted(connector.getLocalPort());
+  }
+
+  void stop() throws LifecycleException {
+    tomcat.stop();
+    tomcat.destroy();
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+
+// the request the load generator sends over and over, see StubBackend for the responses
+enum Scenario {
+  // response of size bytes with content-length
+  FIXED,
+  // response of size bytes, chunked
+  CHUNKED,
+  // slow response, dripChunks chunks of 1k every dripDelayMs
+  DRIP,
+  // request body of size bytes
+  UPLOAD,
+  // 204 no content
+  EMPTY,
+  // 304 not modified on a conditional request
+  NOT_MODIFIED,
+  ;
+
+  HttpRequest request(String baseUrl, LoadTestConfig config) {
+    HttpRequest.Builder b = switch(this) {
+    case FIXED -> get(baseUrl, "/fixed/%s".formatted(config.size()));
+    case CHUNKED -> get(baseUrl, "/chunked/%s".formatted(config.size()));
+    case DRIP -> get(baseUrl, "/drip/%s/%s".formatted(config.dripChunks(), config.dripDelayMs()));
+    case UPLOAD -> HttpRequest.newBuilder(URI.create(baseUrl + "/upload"))
+        .POST(BodyPublishers.ofByteArray(new byte[config.size()]))
+        .header("Content-Type", "application/octet-stream");
+    case EMPTY -> get(baseUrl, "/empty");
+    case NOT_MODIFIED -> get(baseUrl, "/etag").header("If-None-Match", StubBackend.ETAG);
+    };
+    return b.build();
+  }
+
+  private static HttpRequest.Builder get(String baseUrl, String path) {
+    return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+  }
+
+}
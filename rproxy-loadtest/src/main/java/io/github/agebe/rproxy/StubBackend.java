@@ -0,0 +1,179 @@
+/*
+ * Copyright 2024 Andre Gebers
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.agebe.rproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// upstream server for the load test on the loopback interface, based on EchoServer without the console output:
+// /fixed/<n>            n bytes with content-length
+// /chunked/<n>          n bytes chunked in 8k pieces
+// /drip/<n>/<delayMs>   n chunks of 1k with a delay before each chunk
+// /upload               reads the request body and responds with the number of bytes received
+// /empty                204 no content
+// /etag                 a small body with an etag, 304 if the request has a matching If-None-Match
+class StubBackend {
+
+  static {
+    // the jdk server writes headers and body separately, with nagle small responses wait for the delayed ack
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  static final String ETAG = "\"v1\"";
+
+  private final HttpServer server;
+
+  private final ExecutorService executor;
+
+  private final Map<Integer, byte[]> bodies = new ConcurrentHashMap<>();
+
+  StubBackend(int threads) throws IOException {
+    super();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+    executor = Executors.newFixedThreadPool(threads);
+    server.createContext("/fixed/", he -> fixed(he, false));
+    server.createContext("/chunked/", he -> fixed(he, true));
+    server.createContext("/drip/", this::drip);
+    server.createContext("/upload", this::upload);
+    server.createContext("/empty", this::empty);
+    server.createContext("/etag", this::etag);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  private byte[] body(int size) {
+    return bodies.computeIfAbsent(size, k -> {
+      byte[] b = new byte[k];
+      for(int i=0;i<b.length;i++) {
+        b[i] = (byte)('a' + (i % 26));
+      }
+      return b;
+    });
+  }
+
+  private static String[] params(HttpExchange he) {
+    return he.getRequestURI().getPath().split("/");
+  }
+
+  private void fixed(HttpExchange he, boolean chunked) throws IOException {
+    he.getRequestBody().readAllBytes();
+    byte[] body = body(Integer.parseInt(params(he)[2]));
+    he.getResponseHeaders().add("Content-Type", "text/plain");
+    if(body.length == 0) {
+      he.sendResponseHeaders(200, -1);
+      he.close();
+      return;
+    }
+    he.sendResponseHeaders(200, chunked ? 0 : body.length);
+    try(OutputStream out = he.getResponseBody()) {
+      if(chunked) {
+        for(int i=0;i<body.length;i+=8192) {
+          out.write(body, i, Math.min(8192, body.length - i));
+          out.flush();
+        }
+      } else {
+        out.write(body);
+      }
+    }
+  }
+
+  private void drip(HttpExchange he) throws IOException {
+    he.getRequestBody().readAllBytes();
+    String[] params = params(he);
+    int chunks = Integer.parseInt(params[2]);
+    long delayMs = Long.parseLong(params[3]);
+    byte[] chunk = body(1024);
+    he.getResponseHeaders().add("Content-Type", "text/plain");
+    he.sendResponseHeaders(200, 0);
+    try(OutputStream out = he.getResponseBody()) {
+      for(int i=0;i<chunks;i++) {
+        sleep(delayMs);
+        out.write(chunk);
+        out.flush();
+      }
+    }
+  }
+
+  private void upload(HttpExchange he) throws IOException {
+    byte[] buf = new byte[64 * 1024];
+    long total = 0;
+    try(InputStream in = he.getRequestBody()) {
+      for(int read;(read = in.read(buf)) != -1;) {
+        total += read;
+      }
+    }
+    byte[] body = Long.toString(total).getBytes();
+    he.getResponseHeaders().add("Content-Type", "text/plain");
+    he.sendResponseHeaders(200, body.length);
+    try(OutputStream out = he.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private void empty(HttpExchange he) throws IOException {
+    he.getRequestBody().readAllBytes();
+    he.sendResponseHeaders(204, -1);
+    he.close();
+  }
+
+  private void etag(HttpExchange he) throws IOException {
+    he.getRequestBody().readAllBytes();
+    he.getResponseHeaders().add("ETag", ETAG);
+    he.getResponseHeaders().add("Cache-Control", "no-cache");
+    if(ETAG.equals(he.getRequestHeaders().getFirst("If-None-Match"))) {
+      he.sendResponseHeaders(304, -1);
+      he.close();
+      return;
+    }
+    byte[] body = body(1024);
+    he.getResponseHeaders().add("Content-Type", "text/plain");
+    he.sendResponseHeaders(200, body.length);
+    try(OutputStream out = he.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  String getBaseUrl() {
+    return "http://127.0.0.1:%s".formatted(server.getAddress().getPort());
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}